@@ -16,6 +16,7 @@
 from java.io import File
 import sys
 from de.csbdresden.csbdeep.commands import GenericNetwork
+from de.csbdresden.csbdeep.commands import BatchNetwork
 from ij import IJ
 from ij.plugin import Duplicator
 import os
@@ -79,11 +80,17 @@ elif input.isDirectory():
 		print("ERROR: please provide an output directory that is not the same as the input directory")
 		sys.exit()
 
-	listOfFilesInFolder = input.listFiles();
-	for file in listOfFilesInFolder:
-		if file.getName().endswith(".tif"):
-			impSource = IJ.openImage(file.toString()) 
-			runNetwork(os.path.join(outputPath, file.getName()), impSource)
+	# keeps the model loaded and reads / writes images in the background
+	command.run(BatchNetwork, False,
+		"input", input,
+		"output", output,
+		"modelFile", modelFile,
+		"nTiles", nTiles,
+		"overlap", overlap,
+		"normalizeInput", normalizeInput,
+		"percentileBottom", percentileBottom,
+		"percentileTop", percentileTop,
+		"clip", clip).get()
 
 else: # input is not a directory but not a .tif file either
 	print("ERROR: please provide a .tif file or directory for input")
@@ -0,0 +1,90 @@
+
+package de.csbdresden.csbdeep.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import de.csbdresden.csbdeep.task.DefaultTask;
+import de.csbdresden.csbdeep.task.Task;
+import de.csbdresden.csbdeep.tiling.Tiling;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.Cursor;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Test images shared by the benchmarks. 2D images are size x size, 3D images
+ * additionally have {@link #DEPTH} slices.
+ */
+class BenchmarkImages {
+
+	static final int DEPTH = 16;
+
+	private static final AxisType[] AXES = { Axes.X, Axes.Y, Axes.Z };
+
+	static long[] dimensions(final int size, final int dims) {
+		final long[] res = new long[dims];
+		Arrays.fill(res, size);
+		if (dims > 2) res[2] = DEPTH;
+		return res;
+	}
+
+	static AxisType[] axes(final int dims) {
+		return Arrays.copyOf(AXES, dims);
+	}
+
+	static Tiling.TilingAction[] tilingActions(final int dims) {
+		final Tiling.TilingAction[] actions = new Tiling.TilingAction[dims];
+		Arrays.fill(actions, Tiling.TilingAction.TILE_WITH_PADDING);
+		return actions;
+	}
+
+	/**
+	 * @param type one of "float", "uint16" or "uint8"
+	 * @return an image filled with random values from a fixed seed
+	 */
+	@SuppressWarnings("unchecked")
+	static <T extends RealType<T>> Img<T> create(final String type,
+		final int size, final int dims)
+	{
+		final long[] dimensions = dimensions(size, dims);
+		final Img<T> img;
+		switch (type) {
+			case "float":
+				img = (Img<T>) ArrayImgs.floats(dimensions);
+				break;
+			case "uint16":
+				img = (Img<T>) ArrayImgs.unsignedShorts(dimensions);
+				break;
+			case "uint8":
+				img = (Img<T>) ArrayImgs.unsignedBytes(dimensions);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown pixel type " + type);
+		}
+		final Random random = new Random(42);
+		final double max = Math.min(img.firstElement().getMaxValue(), 1000);
+		final Cursor<T> cursor = img.cursor();
+		while (cursor.hasNext()) {
+			cursor.next().setReal(random.nextDouble() * max);
+		}
+		return img;
+	}
+
+	/**
+	 * @return a task which does not print its log messages
+	 */
+	static Task quietTask() {
+		return new DefaultTask() {
+
+			@Override
+			public void log(final String msg) {}
+
+			@Override
+			public void debug(final String msg) {}
+		};
+	}
+
+}
@@ -0,0 +1,82 @@
+
+package de.csbdresden.csbdeep.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.csbdresden.csbdeep.imglib2.GridView;
+import de.csbdresden.csbdeep.imglib2.TiledView;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Iterates a {@link GridView} that puts the tiles of an image back together,
+ * like the output tiles are merged without an output sink.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class GridViewBenchmark {
+
+	@Param({ "256", "1024" })
+	public int size;
+
+	@Param({ "2", "3" })
+	public int dims;
+
+	@Param({ "float", "uint16", "uint8" })
+	public String type;
+
+	// raw types, the pixel type is a benchmark parameter
+	private Img input;
+	private GridView gridView;
+
+	@Setup
+	public void setup() {
+		input = BenchmarkImages.create(type, size, dims);
+		final long[] blockSize = BenchmarkImages.dimensions(size / 4, dims);
+		if (dims > 2) blockSize[2] = BenchmarkImages.DEPTH / 2;
+		gridView = new GridView(new TiledView(input, blockSize));
+	}
+
+	@Benchmark
+	public double cursor() {
+		final Cursor<RealType> cursor = gridView.cursor();
+		double sum = 0;
+		while (cursor.hasNext()) {
+			sum += cursor.next().getRealDouble();
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double randomAccess() {
+		final RandomAccess<RealType> ra = gridView.randomAccess();
+		final Cursor<RealType> cursor = input.localizingCursor();
+		double sum = 0;
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			ra.setPosition(cursor);
+			sum += ra.get().getRealDouble();
+		}
+		return sum;
+	}
+
+}
@@ -0,0 +1,82 @@
+
+package de.csbdresden.csbdeep.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.scijava.Context;
+
+import de.csbdresden.csbdeep.normalize.HistogramPercentile;
+import de.csbdresden.csbdeep.normalize.PercentileNormalizer;
+import net.imagej.Dataset;
+import net.imagej.DatasetService;
+import net.imagej.ops.OpService;
+import net.imglib2.img.Img;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class NormalizationBenchmark {
+
+	private static final float[] PERCENTILES = { 3.0f, 99.8f };
+
+	@Param({ "256", "1024" })
+	public int size;
+
+	@Param({ "2", "3" })
+	public int dims;
+
+	@Param({ "float", "uint16", "uint8" })
+	public String type;
+
+	private Context context;
+	private OpService opService;
+	private DatasetService datasetService;
+	// raw types, the pixel type is a benchmark parameter
+	private Img input;
+	private Dataset dataset;
+	private PercentileNormalizer normalizer;
+
+	@Setup
+	public void setup() {
+		context = new Context(OpService.class, DatasetService.class);
+		opService = context.service(OpService.class);
+		datasetService = context.service(DatasetService.class);
+		input = BenchmarkImages.create(type, size, dims);
+		dataset = datasetService.create(input);
+		normalizer = new PercentileNormalizer();
+		normalizer.setup(PERCENTILES, new float[] { 0, 1 }, false);
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Benchmark
+	public float[] computePercentiles() {
+		return new HistogramPercentile().computePercentiles(input, PERCENTILES,
+			opService);
+	}
+
+	@Benchmark
+	public Dataset normalize() {
+		return normalizer.normalize(dataset, opService, datasetService);
+	}
+
+}
@@ -0,0 +1,117 @@
+
+package de.csbdresden.csbdeep.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tensorflow.Tensor;
+
+import de.csbdresden.csbdeep.network.model.tensorflow.DatasetTensorFlowConverter;
+import de.csbdresden.csbdeep.network.model.tensorflow.TensorBufferPool;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.FloatType;
+
+/**
+ * Converts images to tensors and back. This uses the CPU TensorFlow library
+ * from the Maven dependencies, no GPU and no model is needed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class TensorConversionBenchmark {
+
+	@Param({ "256", "1024" })
+	public int size;
+
+	@Param({ "2", "3" })
+	public int dims;
+
+	@Param({ "float", "uint16", "uint8" })
+	public String type;
+
+	/**
+	 * "contiguous" maps the first image dimension to the last tensor
+	 * dimension, "transposed" maps it to the first one, "cell" converts a
+	 * CellImg which is not covered by the array fast path.
+	 */
+	@Param({ "contiguous", "transposed", "cell" })
+	public String layout;
+
+	@Param({ "false", "true" })
+	public boolean pooled;
+
+	// raw types, the pixel type is a benchmark parameter
+	private RandomAccessibleInterval input;
+	private int[] mapping;
+	private TensorBufferPool pool;
+	private Tensor tensor;
+
+	@Setup
+	public void setup() {
+		final Img img = BenchmarkImages.create(type, size, dims);
+		input = layout.equals("cell") ? toCellImg(img) : img;
+		mapping = new int[dims];
+		for (int i = 0; i < dims; i++) {
+			mapping[i] = layout.equals("transposed") ? i : dims - 1 - i;
+		}
+		pool = pooled ? new TensorBufferPool() : null;
+		tensor = DatasetTensorFlowConverter.datasetToTensor(input, mapping);
+	}
+
+	private static Img toCellImg(final Img img) {
+		final NativeType type = (NativeType) img.firstElement();
+		final Img res = new CellImgFactory(type.createVariable(), 64).create(img);
+		// cells and arrays are iterated in different orders
+		final Cursor<RealType> out = res.localizingCursor();
+		final RandomAccess<RealType> in = img.randomAccess();
+		while (out.hasNext()) {
+			out.fwd();
+			in.setPosition(out);
+			out.get().setReal(in.get().getRealDouble());
+		}
+		return res;
+	}
+
+	@TearDown
+	public void tearDown() {
+		tensor.close();
+		if (pool != null) pool.clear();
+	}
+
+	@Benchmark
+	public long[] toTensor() {
+		try (final Tensor res = DatasetTensorFlowConverter.datasetToTensor(input,
+			mapping, pool))
+		{
+			return res.shape();
+		}
+	}
+
+	@Benchmark
+	public RandomAccessibleInterval toImage() {
+		return DatasetTensorFlowConverter.tensorToDataset(tensor, new FloatType(),
+			mapping, false);
+	}
+
+}
@@ -0,0 +1,101 @@
+
+package de.csbdresden.csbdeep.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.csbdresden.csbdeep.task.Task;
+import de.csbdresden.csbdeep.tiling.AdvancedTiledView;
+import de.csbdresden.csbdeep.tiling.DefaultTiling;
+import de.csbdresden.csbdeep.tiling.Tiling;
+import net.imagej.axis.AxisType;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.view.Views;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class TilingBenchmark {
+
+	@Param({ "256", "1024" })
+	public int size;
+
+	@Param({ "2", "3" })
+	public int dims;
+
+	@Param({ "float", "uint16", "uint8" })
+	public String type;
+
+	// raw types, the pixel type is a benchmark parameter
+	private Img input;
+	private AxisType[] axes;
+	private Tiling.TilingAction[] actions;
+	private Tiling tiling;
+	private Task task;
+	private AdvancedTiledView tiledView;
+
+	@Setup
+	public void setup() {
+		input = BenchmarkImages.create(type, size, dims);
+		axes = BenchmarkImages.axes(dims);
+		actions = BenchmarkImages.tilingActions(dims);
+		tiling = new DefaultTiling(8, 1, 32, 32);
+		task = BenchmarkImages.quietTask();
+		tiledView = tiling.preprocess(input, axes, actions, task);
+		// identity network, every tile is its own result
+		final Cursor<RandomAccessibleInterval> cursor = Views.iterable(
+			tiledView).cursor();
+		while (cursor.hasNext()) {
+			tiledView.getProcessedTiles().add(cursor.next());
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		tiledView.dispose();
+	}
+
+	@Benchmark
+	public AdvancedTiledView preprocess() {
+		return tiling.preprocess(input, axes, actions, task);
+	}
+
+	@Benchmark
+	public RandomAccessibleInterval postprocess() {
+		return tiling.postprocess(task, tiledView, axes);
+	}
+
+	@Benchmark
+	public void tiledViewGet(final Blackhole blackhole) {
+		final RandomAccess<RandomAccessibleInterval> ra = tiledView
+			.randomAccess();
+		final Cursor<RandomAccessibleInterval> cursor = Views.iterable(
+			tiledView).localizingCursor();
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			ra.setPosition(cursor);
+			blackhole.consume(ra.get());
+		}
+	}
+
+}
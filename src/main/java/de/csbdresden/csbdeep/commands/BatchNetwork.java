@@ -0,0 +1,489 @@
+
+package de.csbdresden.csbdeep.commands;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+
+import org.scijava.Cancelable;
+import org.scijava.ItemIO;
+import org.scijava.command.Command;
+import org.scijava.command.CommandModule;
+import org.scijava.command.CommandService;
+import org.scijava.log.LogService;
+import org.scijava.module.ModuleItem;
+import org.scijava.module.ModuleRunner;
+import org.scijava.module.ModuleService;
+import org.scijava.module.process.PostprocessorPlugin;
+import org.scijava.module.process.PreprocessorPlugin;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.plugin.PluginService;
+import org.scijava.service.Service;
+import org.scijava.thread.ThreadService;
+import org.scijava.widget.FileWidget;
+
+import de.csbdresden.csbdeep.thread.PoolService;
+import io.scif.services.DatasetIOService;
+import net.imagej.Dataset;
+import net.imagej.ImageJ;
+
+/**
+ * Runs {@link GenericNetwork} headless on a folder or a list of images. The
+ * next images are read while the current ones are processed and results are
+ * written in the background. The model stays loaded in the
+ * {@link de.csbdresden.csbdeep.network.model.tensorflow.ModelRegistryService}
+ * between images, so it is only read from disk once.
+ */
+@Plugin(type = Command.class, menuPath = "Plugins>CSBDeep>Batch run your network",
+	headless = true)
+public class BatchNetwork implements Command, Cancelable {
+
+	@Parameter(label = "Input (.tif, folder with .tifs or text file listing images)",
+		style = FileWidget.OPEN_STYLE)
+	protected File input;
+
+	@Parameter(label = "Output folder", style = FileWidget.DIRECTORY_STYLE)
+	protected File output;
+
+	@Parameter(label = "Import model (.zip)", required = false)
+	protected File modelFile;
+
+	@Parameter(label = "Import model (.zip) from URL", required = false)
+	protected String modelUrl;
+
+	@Parameter
+	protected boolean normalizeInput = true;
+	@Parameter
+	protected float percentileBottom = 3.0f;
+	@Parameter
+	protected float percentileTop = 99.8f;
+
+	@Parameter(label = "Clip normalization")
+	protected boolean clip = false;
+
+	@Parameter(label = "Number of tiles", min = "1")
+	protected int nTiles = 8;
+
+	@Parameter(label = "Tile size has to be multiple of", min = "1")
+	protected int blockMultiple = 32;
+
+	@Parameter(label = "Overlap between tiles", min = "0", stepSize = "16")
+	protected int overlap = 32;
+
+	@Parameter(label = "Batch size", min = "1")
+	protected int batchSize = 1;
+
+	@Parameter(label = "Images processed at the same time", min = "1")
+	protected int concurrentImages = 1;
+
+	@Parameter(label = "Images read ahead", min = "0")
+	protected int readAhead = 1;
+
+	@Parameter(type = ItemIO.OUTPUT)
+	protected int processedImages;
+
+	@Parameter
+	protected LogService log;
+
+	@Parameter
+	protected CommandService commandService;
+
+	@Parameter
+	protected ModuleService moduleService;
+
+	@Parameter
+	protected PluginService pluginService;
+
+	@Parameter
+	protected ThreadService threadService;
+
+	@Parameter
+	protected DatasetIOService datasetIOService;
+
+	@Parameter
+	protected PoolService poolService;
+
+	private static final List<String> EXTENSIONS = Arrays.asList(".tif",
+		".tiff");
+
+	private volatile boolean canceled = false;
+	private String cancelReason;
+	// reads, network runs and writes in flight, canceled with the batch
+	private final List<Future<?>> futures = Collections.synchronizedList(
+		new ArrayList<>());
+	// released whenever a read, network run or write finishes
+	private final Semaphore finished = new Semaphore(0);
+	private int done;
+	private int failed;
+
+	@Override
+	public void run() {
+
+		final long startTime = System.currentTimeMillis();
+
+		if (output.getAbsoluteFile().equals(input.getAbsoluteFile())) {
+			log.error("Please provide an output folder that is not the input folder");
+			return;
+		}
+		final List<File> files;
+		try {
+			files = listInputFiles(input);
+		}
+		catch (IOException e) {
+			log.error("Could not read input " + input + ": " + e.getMessage());
+			return;
+		}
+		if (files.isEmpty()) {
+			log.error("No images found in " + input);
+			return;
+		}
+		if (!output.exists() && !output.mkdirs()) {
+			log.error("Could not create output folder " + output);
+			return;
+		}
+
+		done = 0;
+		failed = 0;
+		// every running image needs its own command thread
+		try (PoolService.Reservation reservation = poolService.reserve(
+			PoolService.Pool.COMMAND, concurrentImages))
+		{
+			process(files);
+		}
+		catch (final InterruptedException e) {
+			log.warn("Batch run interrupted");
+			cancel("Interrupted");
+		}
+		if (canceled) log.info("Batch run canceled");
+
+		processedImages = done;
+		log.info("Batch run finished: " + done + " of " + files.size() +
+			" images processed, " + failed + " failed (took " + (System
+				.currentTimeMillis() - startTime) + " milliseconds)");
+	}
+
+	/**
+	 * Reads the next images while the current ones are processed and writes
+	 * results in the background. Networks are started in the order of the
+	 * files, at most {@link #concurrentImages} at a time. An image takes one of
+	 * {@code concurrentImages + readAhead} slots from being read until its
+	 * result is written. If nothing changed, the loop waits until one of them
+	 * finishes.
+	 */
+	private void process(final List<File> files) throws InterruptedException {
+		final ExecutorService io = poolService.getPool(PoolService.Pool.IO);
+		final Deque<Pending<Dataset>> reads = new ArrayDeque<>();
+		final List<Pending<Dataset>> networks = new ArrayList<>();
+		final List<Pending<File>> writes = new ArrayList<>();
+		final int slots = concurrentImages + readAhead;
+		int next = 0;
+		while (!canceled && (next < files.size() || !reads.isEmpty() ||
+			!networks.isEmpty() || !writes.isEmpty()))
+		{
+			boolean changed = false;
+			while (next < files.size() && reads.size() + networks.size() + writes
+				.size() < slots)
+			{
+				final File file = files.get(next++);
+				reads.add(track(file, submit(io, () -> read(file))));
+				changed = true;
+			}
+			while (networks.size() < concurrentImages && !reads.isEmpty() && reads
+				.peek().future.isDone())
+			{
+				final Pending<Dataset> read = reads.poll();
+				final Dataset image = get(read, "read");
+				changed = true;
+				if (image == null) continue;
+				try {
+					networks.add(track(read.file, startNetwork(image,
+						finished::release)));
+				}
+				catch (final RuntimeException e) {
+					failed++;
+					log.error("Could not process " + read.file + ": " + e.getMessage());
+				}
+			}
+			for (final Iterator<Pending<Dataset>> iterator = networks
+				.iterator(); iterator.hasNext();)
+			{
+				final Pending<Dataset> network = iterator.next();
+				if (!network.future.isDone()) continue;
+				iterator.remove();
+				changed = true;
+				final Dataset result = get(network, "process");
+				if (result == null) continue;
+				final File target = new File(output, network.file.getName());
+				writes.add(track(network.file, submit(io, () -> {
+					write(result, target);
+					return target;
+				})));
+			}
+			for (final Iterator<Pending<File>> iterator = writes.iterator(); iterator
+				.hasNext();)
+			{
+				final Pending<File> write = iterator.next();
+				if (!write.future.isDone()) continue;
+				iterator.remove();
+				changed = true;
+				if (get(write, "write") == null) continue;
+				done++;
+				log.info("Processed " + write.file.getName() + " (" + done + "/" +
+					files.size() + ")");
+			}
+			// permits of tasks finished meanwhile are left, so none is missed
+			if (!changed) finished.acquire();
+			finished.drainPermits();
+		}
+	}
+
+	private <R> Future<R> submit(final ExecutorService executor,
+		final Callable<R> task)
+	{
+		final FutureTask<R> res = new FutureTask<R>(task) {
+
+			@Override
+			protected void done() {
+				finished.release();
+			}
+		};
+		executor.execute(res);
+		return res;
+	}
+
+	protected Dataset read(final File file) throws IOException {
+		return datasetIOService.open(file.getAbsolutePath());
+	}
+
+	protected void write(final Dataset result, final File target)
+		throws IOException
+	{
+		datasetIOService.save(result, target.getAbsolutePath());
+	}
+
+	/**
+	 * Starts {@link GenericNetwork} on the image. Parameters which are not set
+	 * by the batch keep their default values, so no dialog is shown for them.
+	 * Canceling the returned future also cancels the running command.
+	 *
+	 * @param done run when the network finished, failed or was canceled
+	 */
+	protected Future<Dataset> startNetwork(final Dataset image,
+		final Runnable done)
+	{
+		final Map<String, Object> inputs = new HashMap<>();
+		inputs.put("input", image);
+		inputs.put("modelFile", modelFile);
+		inputs.put("modelUrl", modelUrl);
+		inputs.put("normalizeInput", normalizeInput);
+		inputs.put("percentileBottom", percentileBottom);
+		inputs.put("percentileTop", percentileTop);
+		inputs.put("clip", clip);
+		inputs.put("nTiles", nTiles);
+		inputs.put("blockMultiple", blockMultiple);
+		inputs.put("overlap", overlap);
+		inputs.put("batchSize", batchSize);
+		inputs.put("showProgressDialog", false);
+		final CommandModule module = (CommandModule) moduleService.createModule(
+			commandService.getCommand(GenericNetwork.class));
+		for (final ModuleItem<?> item : module.getInfo().inputs()) {
+			final String name = item.getName();
+			if (inputs.containsKey(name)) {
+				module.setInput(name, inputs.get(name));
+				module.resolveInput(name);
+			}
+			// services are still injected by the preprocessors
+			else if (!Service.class.isAssignableFrom(item.getType())) {
+				module.resolveInput(name);
+			}
+		}
+		final NetworkFuture res = new NetworkFuture(module, done);
+		threadService.run(res);
+		return res;
+	}
+
+	private <R> Pending<R> track(final File file, final Future<R> future) {
+		futures.add(future);
+		// canceled while the future was created
+		if (canceled) future.cancel(true);
+		return new Pending<>(file, future);
+	}
+
+	/**
+	 * @return the result of the finished future, null if it failed or was
+	 *         canceled
+	 */
+	private <R> R get(final Pending<R> pending, final String action)
+		throws InterruptedException
+	{
+		futures.remove(pending.future);
+		String error = "no result";
+		try {
+			final R res = pending.future.get();
+			if (res != null) return res;
+		}
+		catch (final CancellationException e) {
+			return null;
+		}
+		catch (final ExecutionException e) {
+			error = (e.getCause() == null ? e : e.getCause()).getMessage();
+		}
+		failed++;
+		log.error("Could not " + action + " " + pending.file + ": " + error);
+		return null;
+	}
+
+	/**
+	 * @param input a single image, a folder of images or a text file with one
+	 *          image path per line, relative paths are resolved against the
+	 *          folder of the text file
+	 */
+	public static List<File> listInputFiles(final File input) throws IOException {
+		final List<File> res = new ArrayList<>();
+		if (input == null) return res;
+		if (input.isDirectory()) {
+			final File[] files = input.listFiles();
+			if (files == null) return res;
+			Arrays.sort(files);
+			for (final File file : files) {
+				if (file.isFile() && isImage(file)) res.add(file);
+			}
+		}
+		else if (isImage(input)) {
+			res.add(input);
+		}
+		else if (input.isFile()) {
+			for (final String line : Files.readAllLines(input.toPath(),
+				StandardCharsets.UTF_8))
+			{
+				final String path = line.trim();
+				if (path.isEmpty() || path.startsWith("#")) continue;
+				final File file = new File(path);
+				res.add(file.isAbsolute() ? file : new File(input
+					.getAbsoluteFile().getParentFile(), path));
+			}
+		}
+		return res;
+	}
+
+	private static boolean isImage(final File file) {
+		final String name = file.getName().toLowerCase();
+		for (final String extension : EXTENSIONS) {
+			if (name.endsWith(extension)) return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean isCanceled() {
+		return canceled;
+	}
+
+	@Override
+	public void cancel(final String reason) {
+		cancelReason = reason;
+		canceled = true;
+		synchronized (futures) {
+			for (final Future<?> future : futures) {
+				future.cancel(true);
+			}
+		}
+		finished.release();
+	}
+
+	@Override
+	public String getCancelReason() {
+		return cancelReason;
+	}
+
+	private static class Pending<R> {
+
+		final File file;
+		final Future<R> future;
+
+		Pending(final File file, final Future<R> future) {
+			this.file = file;
+			this.future = future;
+		}
+	}
+
+	/**
+	 * Runs a {@link GenericNetwork} command like the module service does, with
+	 * all pre- and postprocessors, and notifies the batch once it is done.
+	 * Canceling it cancels the command instead of only the thread running it.
+	 */
+	private class NetworkFuture extends FutureTask<Dataset> {
+
+		private final CommandModule module;
+		private final Runnable done;
+
+		NetworkFuture(final CommandModule module, final Runnable done) {
+			super(() -> {
+				new ModuleRunner(moduleService.context(), module, pluginService
+					.createInstancesOfType(PreprocessorPlugin.class), pluginService
+						.createInstancesOfType(PostprocessorPlugin.class)).run();
+				if (module.isCanceled()) {
+					throw new CancellationException(module.getCancelReason());
+				}
+				return (Dataset) module.getOutput("output");
+			});
+			this.module = module;
+			this.done = done;
+		}
+
+		@Override
+		public boolean cancel(final boolean mayInterruptIfRunning) {
+			module.cancel("Batch run canceled");
+			return super.cancel(mayInterruptIfRunning);
+		}
+
+		@Override
+		protected void done() {
+			done.run();
+		}
+	}
+
+	/**
+	 * Runs the batch headless, e.g.
+	 * {@code input=/data/raw output=/data/restored modelFile=/models/care.zip}.
+	 * Every argument is a parameter name and value separated by '='.
+	 */
+	public static void main(final String... args) throws Exception {
+		final ImageJ ij = new ImageJ();
+		final Map<String, Object> inputs = new HashMap<>();
+		for (final String arg : args) {
+			final int index = arg.indexOf('=');
+			if (index < 0) {
+				System.out.println("Ignoring argument " + arg +
+					", expected name=value");
+				continue;
+			}
+			inputs.put(arg.substring(0, index), arg.substring(index + 1));
+		}
+		try {
+			ij.command().run(BatchNetwork.class, true, inputs).get();
+		}
+		finally {
+			ij.context().dispose();
+		}
+	}
+
+}
@@ -36,7 +36,6 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.stream.IntStream;
 
@@ -51,6 +50,7 @@ import de.csbdresden.csbdeep.io.InputProcessor;
 import de.csbdresden.csbdeep.io.OutputProcessor;
 import de.csbdresden.csbdeep.network.model.ImageTensor;
 import de.csbdresden.csbdeep.network.model.Network;
+import de.csbdresden.csbdeep.thread.PoolService;
 import de.csbdresden.csbdeep.tiling.DefaultTiling;
 import de.csbdresden.csbdeep.util.DatasetHelper;
 import net.imagej.Dataset;
@@ -85,14 +85,19 @@ public class GenericIsotropicNetwork<T extends RealType<T>> extends GenericNetwo
 	@Parameter(label = "Scale factor of Z-Axis", min = "1")
 	protected float scale = 10.2f;
 
-	final ExecutorService pool = Executors.newWorkStealingPool();
+	private static final int BATCH_MULTIPLE = 4;
 
 	@Override
 	protected void initTiling() {
-		int batchMultiple = 4;
-		batchSize = (int) Math.ceil((float) batchSize / (float) batchMultiple) *
-			batchMultiple;
-		tiling = new DefaultTiling(nTiles, batchSize, blockMultiple, overlap);
+		batchSize = (int) Math.ceil((float) batchSize / (float) BATCH_MULTIPLE) *
+			BATCH_MULTIPLE;
+		super.initTiling();
+	}
+
+	@Override
+	protected DefaultTiling createTiling(final int tilesNum, final int batchSize) {
+		return super.createTiling(tilesNum, (int) Math.ceil((float) batchSize /
+			(float) BATCH_MULTIPLE) * BATCH_MULTIPLE);
 	}
 
 	@Override
@@ -161,12 +166,6 @@ public class GenericIsotropicNetwork<T extends RealType<T>> extends GenericNetwo
 
 	}
 
-	@Override
-	public void dispose() {
-		super.dispose();
-		pool.shutdown();
-	}
-
 	private class IsoOutputProcessor<T extends RealType<T> & NativeType<T>>
 		extends DefaultOutputProcessor<T>
 	{
@@ -279,7 +278,7 @@ public class GenericIsotropicNetwork<T extends RealType<T>> extends GenericNetwo
 		final TiledView<V> tiledViewIn2 = new TiledView<>(in2, blockSize);
 		final TiledView<W> tiledViewOut = new TiledView<>(out, blockSize);
 
-		// final ExecutorService pool = Executors.newWorkStealingPool();
+		final ExecutorService pool = poolService.getPool(PoolService.Pool.COMPUTE);
 		final List<Future<?>> futures = new ArrayList<>();
 
 		futures.clear();
@@ -300,7 +299,6 @@ public class GenericIsotropicNetwork<T extends RealType<T>> extends GenericNetwo
 				e.printStackTrace();
 			}
 		}
-		// pool.shutdown();
 	}
 
 	private long[] computeBlockSize(final RandomAccessibleInterval<?> in) {
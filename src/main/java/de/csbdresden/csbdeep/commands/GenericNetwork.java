@@ -33,10 +33,13 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import javax.swing.*;
@@ -54,29 +57,41 @@ import org.scijava.prefs.PrefService;
 import org.scijava.thread.ThreadService;
 import org.scijava.ui.UIService;
 import org.scijava.widget.Button;
+import org.scijava.widget.FileWidget;
 
 import de.csbdresden.csbdeep.io.DefaultInputProcessor;
 import de.csbdresden.csbdeep.io.DefaultOutputProcessor;
 import de.csbdresden.csbdeep.io.InputProcessor;
+import de.csbdresden.csbdeep.io.N5Container;
 import de.csbdresden.csbdeep.io.OutputProcessor;
 import de.csbdresden.csbdeep.network.*;
+import de.csbdresden.csbdeep.network.model.DefaultNetwork;
 import de.csbdresden.csbdeep.network.model.Network;
+import de.csbdresden.csbdeep.network.model.tensorflow.ModelRegistryService;
 import de.csbdresden.csbdeep.network.model.tensorflow.TensorFlowNetwork;
 import de.csbdresden.csbdeep.normalize.DefaultInputNormalizer;
 import de.csbdresden.csbdeep.normalize.InputNormalizer;
+import de.csbdresden.csbdeep.normalize.NormalizationCacheService;
+import de.csbdresden.csbdeep.normalize.Normalizer;
+import de.csbdresden.csbdeep.normalize.PercentileNormalizer;
+import de.csbdresden.csbdeep.task.MetricsReport;
 import de.csbdresden.csbdeep.task.Task;
 import de.csbdresden.csbdeep.task.TaskForceManager;
 import de.csbdresden.csbdeep.task.TaskManager;
+import de.csbdresden.csbdeep.task.TaskMetrics;
+import de.csbdresden.csbdeep.thread.PoolService;
 import de.csbdresden.csbdeep.tiling.*;
 import de.csbdresden.csbdeep.ui.MappingDialog;
 import de.csbdresden.csbdeep.util.IOHelper;
 import net.imagej.Dataset;
 import net.imagej.DatasetService;
 import net.imagej.ImageJ;
+import net.imagej.axis.Axes;
 import net.imagej.axis.AxisType;
 import net.imagej.ops.OpService;
 import net.imagej.tensorflow.TensorFlowService;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.converter.Converter;
 import net.imglib2.exception.IncompatibleTypeException;
 import net.imglib2.type.numeric.real.FloatType;
 
@@ -101,6 +116,33 @@ public class GenericNetwork implements
 	@Parameter(label = "Clip normalization")
 	protected boolean clip = false;
 
+	@Parameter(label = "Percentile rank error for float images (%, 0 = exact)",
+			min = "0", max = "10", stepSize = "0.05", required = false)
+	protected float percentileRankError = 0;
+
+	@Parameter(label = "Normalize tiles on the fly (saves memory)")
+	protected boolean normalizeLazily = false;
+
+	static final String NORMALIZE_WHOLE_IMAGE = "whole image";
+	static final String NORMALIZE_PER_CHANNEL = "per channel";
+	static final String NORMALIZE_PER_TIME_POINT = "per time point";
+	static final String NORMALIZE_PER_CHANNEL_AND_TIME_POINT =
+		"per channel and time point";
+
+	@Parameter(label = "Normalization percentiles of", choices = {
+		NORMALIZE_WHOLE_IMAGE, NORMALIZE_PER_CHANNEL, NORMALIZE_PER_TIME_POINT,
+		NORMALIZE_PER_CHANNEL_AND_TIME_POINT }, required = false)
+	protected String normalizationStatistics = NORMALIZE_WHOLE_IMAGE;
+
+	@Parameter(label = "Reuse normalization statistics of the same input")
+	protected boolean cacheNormalizationStatistics = true;
+
+	@Parameter(label = "Keep normalization statistics on disk")
+	protected boolean persistNormalizationStatistics = false;
+
+	@Parameter(label = "Identify the input of cached statistics by all its values (reads it completely)")
+	protected boolean hashNormalizationInput = false;
+
 	@Parameter(label = "Number of tiles", min = "1")
 	protected int nTiles = 8;
 
@@ -114,6 +156,39 @@ public class GenericNetwork implements
 	@Parameter(label = "Batch size", min = "1")
 	protected int batchSize = 1;
 
+	@Parameter(label = "Number of tiles per network run", min = "1")
+	protected int tileBatchSize = 1;
+
+	@Parameter(label = "Choose tiling from available memory")
+	protected boolean planTiling = false;
+
+	@Parameter(label = "Memory for TensorFlow in MB (0 = free system memory)",
+			min = "0", required = false)
+	protected int networkMemory = 0;
+
+	@Parameter(label = "Network activations per voxel (tiling estimate)",
+			min = "1", required = false)
+	protected int activationsPerVoxel =
+		TilingPlanner.DEFAULT_ACTIVATIONS_PER_VOXEL;
+
+	@Parameter(label = "TensorFlow intra-op threads (0 = automatic, TensorFlow 1.13+)",
+			min = "0", initializer = "sessionThreadsInitialized", persist = false)
+	protected int intraOpThreads = 0;
+
+	@Parameter(label = "TensorFlow inter-op threads (0 = automatic, TensorFlow 1.13+)",
+			min = "0", persist = false)
+	protected int interOpThreads = 0;
+
+	@Parameter(label = "Separate TensorFlow thread pools per model (TensorFlow 1.13+)",
+			persist = false)
+	protected boolean perSessionThreads = false;
+
+	@Parameter(label = "Parallel TensorFlow sessions", min = "1", persist = false)
+	protected int sessionCount = 1;
+
+	@Parameter(label = "Warm up model after loading")
+	protected boolean warmUp = false;
+
 	private boolean modelNeedsInitialization = false;
 	private boolean networkInitialized;
 	private boolean networkAndInputCompatible;
@@ -137,6 +212,22 @@ public class GenericNetwork implements
 	@Parameter(label="Show progress dialog")
 	protected boolean showProgressDialog = true;
 
+	@Parameter(label = "Write run report (.json)", style = FileWidget.SAVE_STYLE,
+			persist = false, required = false)
+	protected File runReport;
+
+	@Parameter(label = "Write result to N5 container (float32 only, no Zarr, optional)",
+			style = FileWidget.DIRECTORY_STYLE, persist = false, required = false)
+	protected File outputContainer;
+
+	@Parameter(label = "Scratch directory for tiles (optional)",
+			style = FileWidget.DIRECTORY_STYLE, persist = false, required = false)
+	protected File scratchDirectory;
+
+	@Parameter(label = "Move tiles to scratch directory above heap usage (%)",
+			min = "10", max = "100")
+	protected int spillThreshold = 70;
+
 	@Parameter(type = ItemIO.OUTPUT)
 	protected Dataset output;
 
@@ -164,6 +255,15 @@ public class GenericNetwork implements
 	@Parameter
 	private ThreadService threadService;
 
+	@Parameter
+	protected PoolService poolService;
+
+	@Parameter
+	protected ModelRegistryService modelRegistry;
+
+	@Parameter(required = false)
+	protected NormalizationCacheService normalizationCache;
+
 	protected String modelName;
 
 	protected TaskManager taskManager;
@@ -185,13 +285,21 @@ public class GenericNetwork implements
 
 	private ExecutorService pool = null;
 	private Future<?> future;
+	private volatile boolean canceled = false;
+	private String cancelReason;
 
 	protected String cacheName;
 	protected String modelFileKey;
 	private String modelFileUrl = "";
 
+	private static final String INTRA_OP_THREADS_KEY = "intraOpThreads";
+	private static final String INTER_OP_THREADS_KEY = "interOpThreads";
+	private static final String PER_SESSION_THREADS_KEY = "perSessionThreads";
+	private static final String SESSION_COUNT_KEY = "sessionCount";
+
 	private int oldNTiles;
 	private int oldBatchesSize;
+	private int oldTileBatchSize;
 
 	protected void openTFMappingDialog() {
 		threadService.run(() -> {
@@ -217,6 +325,27 @@ public class GenericNetwork implements
 		}
 	}
 
+	/**
+	 * The TensorFlow threading settings are shared by all network commands,
+	 * they describe the core budget of the machine.
+	 */
+	protected void sessionThreadsInitialized() {
+		sessionCount = prefService.getInt(GenericNetwork.class, SESSION_COUNT_KEY, sessionCount);
+		// older TensorFlow versions cannot apply them, they stay disabled
+		if (!TensorFlowNetwork.supportsSessionConfig()) return;
+		intraOpThreads = prefService.getInt(GenericNetwork.class, INTRA_OP_THREADS_KEY, intraOpThreads);
+		interOpThreads = prefService.getInt(GenericNetwork.class, INTER_OP_THREADS_KEY, interOpThreads);
+		perSessionThreads = prefService.getBoolean(GenericNetwork.class, PER_SESSION_THREADS_KEY, perSessionThreads);
+	}
+
+	private void saveSessionThreads() {
+		prefService.put(GenericNetwork.class, SESSION_COUNT_KEY, sessionCount);
+		if (!TensorFlowNetwork.supportsSessionConfig()) return;
+		prefService.put(GenericNetwork.class, INTRA_OP_THREADS_KEY, intraOpThreads);
+		prefService.put(GenericNetwork.class, INTER_OP_THREADS_KEY, interOpThreads);
+		prefService.put(GenericNetwork.class, PER_SESSION_THREADS_KEY, perSessionThreads);
+	}
+
 	private void updateCacheName() {
 		switch(networkInputSourceType) {
 			case UNSET:
@@ -281,6 +410,7 @@ public class GenericNetwork implements
 		modelNeedsInitialization = true;
 		savePreferences();
 		if (networkInitialized) {
+			if (modelLoader != null) modelLoader.awaitWarmUp();
 			network.clear();
 		}
 	}
@@ -317,8 +447,11 @@ public class GenericNetwork implements
 
 	protected boolean initNetwork() {
 		networkInitialized = true;
-		network = new TensorFlowNetwork(tensorFlowService, datasetService,
-			modelExecutor);
+		final TensorFlowNetwork tensorFlowNetwork = new TensorFlowNetwork(
+			tensorFlowService, datasetService, modelExecutor);
+		tensorFlowNetwork.setModelRegistry(modelRegistry);
+		network = tensorFlowNetwork;
+		network.setPoolService(poolService);
 		if(network.libraryLoaded()) {
 			network.testGPUSupport();
 			if(!network.supportsGPU()) taskManager.noGPUFound();
@@ -372,11 +505,11 @@ public class GenericNetwork implements
 	}
 
 	protected ModelLoader initModelLoader() {
-		return new DefaultModelLoader();
+		return new DefaultModelLoader(poolService);
 	}
 
 	protected ModelExecutor initModelExecutor() {
-		return new DefaultModelExecutor();
+		return new DefaultModelExecutor(poolService);
 	}
 
 	protected OutputTiler initOutputTiler() {
@@ -388,7 +521,14 @@ public class GenericNetwork implements
 	}
 
 	protected void initTiling() {
-		tiling = new DefaultTiling(nTiles, batchSize, blockMultiple, overlap);
+		tiling = createTiling(nTiles, batchSize);
+	}
+
+	/**
+	 * Creates the tiling of a run, also used to plan the tiling.
+	 */
+	protected DefaultTiling createTiling(final int tilesNum, final int batchSize) {
+		return new DefaultTiling(tilesNum, batchSize, blockMultiple, overlap);
 	}
 
 	public void run() {
@@ -397,25 +537,53 @@ public class GenericNetwork implements
 
 		if (noInputData()) return;
 
-		pool = Executors.newSingleThreadExecutor();
+		saveSessionThreads();
+
+		pool = poolService.getPool(PoolService.Pool.COMMAND);
+		log("Thread pools: " + poolService.getStatus());
 
 		try {
 
 			future = pool.submit(this::mainThread);
 			if(future != null) future.get();
 
-		} catch (OutOfMemoryError | InterruptedException | ExecutionException e) {
+		} catch (CancellationException e) {
+			log("Canceled");
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof CancellationException) log("Canceled");
+			else e.printStackTrace();
+		} catch (OutOfMemoryError | InterruptedException e) {
 			e.printStackTrace();
 		}
 
+		final long duration = System.currentTimeMillis() - startTime;
+		reportMetrics(duration);
+
 		dispose();
 
-		log("Plugin exit (took " + (System.currentTimeMillis() - startTime) + " milliseconds)");
+		log("Plugin exit (took " + duration + " milliseconds)");
 
 	}
 
 	protected void mainThread() throws OutOfMemoryError {
 
+		if(!prepareNetwork()) return;
+
+		final Dataset normalizedInput = normalize(getInput());
+		if(isCanceled()) return;
+
+		final Dataset result = process(normalizedInput, getInput());
+		if(result != null) this.output = result;
+
+	}
+
+	/**
+	 * Loads the model if needed and maps the current input to it.
+	 *
+	 * @return false if the network and the input are not compatible
+	 */
+	protected boolean prepareNetwork() {
+
 		tryToInitialize();
 		taskManager.finalizeSetup();
 		solveModelSource();
@@ -424,16 +592,46 @@ public class GenericNetwork implements
 		savePreferences();
 
 		initiateModelIfNeeded();
-		if(!networkAndInputCompatible) return;
+		return networkAndInputCompatible;
+
+	}
 
-		final Dataset normalizedInput;
-		if (doInputNormalization()) {
-			setupNormalizer();
-			normalizedInput = inputNormalizer.run(getInput(), opService,
-					datasetService);
-		} else {
-			normalizedInput = getInput();
+	/**
+	 * @return the normalized input or the input itself if normalization is
+	 *         disabled
+	 */
+	protected Dataset normalize(final Dataset input) {
+		setInputConverter(null);
+		if (!doInputNormalization()) return input;
+		setupNormalizer();
+		final Dataset res = inputNormalizer.run(input, opService, datasetService);
+		if (inputNormalizer instanceof DefaultInputNormalizer) {
+			setInputConverter(((DefaultInputNormalizer) inputNormalizer)
+				.getConverter());
+		}
+		return res;
+	}
+
+	/**
+	 * @param converter converts the values of the image passed to
+	 *          {@link #process(Dataset, Dataset)}, e.g. normalizing them lazily,
+	 *          null if they are normalized already
+	 */
+	protected void setInputConverter(final Converter converter) {
+		if (inputProcessor instanceof DefaultInputProcessor) {
+			((DefaultInputProcessor) inputProcessor).setConverter(converter);
 		}
+	}
+
+	/**
+	 * Runs the prepared network on an already normalized image.
+	 *
+	 * @param original the image axes and metadata of the output are taken from
+	 * @return the output or null if the network failed or the run was canceled
+	 */
+	protected Dataset process(final Dataset normalizedInput,
+		final Dataset original) throws OutOfMemoryError
+	{
 
 		final List<RandomAccessibleInterval> processedInput = inputProcessor.run(
 				normalizedInput, network);
@@ -443,34 +641,137 @@ public class GenericNetwork implements
 		log("OUTPUT NODE: ");
 		network.getOutputNode().printMapping(inputProcessor);
 
+		if(planTiling && !processedInput.isEmpty()) {
+			planTiling(processedInput.get(0));
+		}
 		initTiling();
+		modelLoader.awaitWarmUp();
+		if(isCanceled()) return null;
+		TilingPlanner.resetPeakHeapUsage();
 		List<AdvancedTiledView<FloatType>> tiledOutput = null;
 		try {
 			tiledOutput = tryToTileAndRunNetwork(processedInput);
 		} catch (ExecutionException e) {
 			e.printStackTrace();
 		}
-		if(tiledOutput != null) {
-			final List<RandomAccessibleInterval<FloatType>> output = outputTiler.run(
-					tiledOutput, tiling, network.getOutputNode().getFinalAxesArray());
+		if(planTiling) {
+			log("Measured peak heap usage: " + TilingPlanner.toMB(
+				TilingPlanner.getPeakHeapUsage()) + " MB");
+		}
+		if(tiledOutput != null && isCanceled()) {
+			// drop partial results right away instead of waiting for the command
 			for (AdvancedTiledView obj : tiledOutput) {
-				obj.dispose();
+				if(obj != null) obj.dispose();
 			}
-			this.output = outputProcessor.run(output, getInput(),
-					network.getOutputNode(), datasetService);
+			return null;
 		}
+		if(tiledOutput == null) return null;
+		final List<RandomAccessibleInterval<FloatType>> output = outputTiler.run(
+				tiledOutput, tiling, network.getOutputNode().getFinalAxesArray());
+		for (AdvancedTiledView obj : tiledOutput) {
+			obj.dispose();
+		}
+		if(isCanceled()) return null;
+		return outputProcessor.run(output, original, network.getOutputNode(),
+				datasetService);
 
 	}
 
+	protected void reportMetrics(final long durationMillis) {
+		if (taskManager == null) return;
+		final Map<String, TaskMetrics> metrics = taskManager.getMetrics();
+		MetricsReport.summary(metrics).forEach(taskManager::debug);
+		if (runReport == null) return;
+		try {
+			MetricsReport.write(runReport, metrics, durationMillis);
+			log("Run report written to " + runReport.getAbsolutePath());
+		}
+		catch (IOException e) {
+			error("Could not write run report: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return wall time, CPU time, bytes and latencies of each step of the last
+	 *         run, empty if the command did not run yet
+	 */
+	public Map<String, TaskMetrics> getMetrics() {
+		if (taskManager == null) return Collections.emptyMap();
+		return taskManager.getMetrics();
+	}
+
+	protected void planTiling(final RandomAccessibleInterval input) {
+		final TilingPlanner planner = new TilingPlanner(nTiles, batchSize,
+			tileBatchSize, this::createTiling);
+		planner.setNetworkMemory(networkMemory * 1024L * 1024L);
+		planner.setActivationsPerVoxel(activationsPerVoxel);
+		final Long[] outputShape = network.getOutputNode().getNodeShape();
+		final long outputChannels = outputShape.length > 0 ? outputShape[outputShape.length - 1] : 1;
+		int inputBytes = Float.BYTES;
+		int outputBytes = Float.BYTES;
+		if(network instanceof TensorFlowNetwork) {
+			inputBytes = ((TensorFlowNetwork) network).getInputValueBytes();
+			outputBytes = ((TensorFlowNetwork) network).getOutputValueBytes();
+		}
+		if(planner.plan(input, network.getInputNode().getTilingActions(),
+			outputChannels, inputBytes, outputBytes, modelExecutor)) {
+			nTiles = planner.getTilesNum();
+			batchSize = planner.getBatchSize();
+			tileBatchSize = planner.getTileBatchSize();
+		}
+	}
+
 	private void solveModelSource() {
 		if(modelFileUrl.isEmpty()) modelFileChanged();
 		if(modelFileUrl.isEmpty()) modelUrlChanged();
 	}
 
 	protected void setupNormalizer() {
-		((DefaultInputNormalizer) inputNormalizer).getNormalizer().setup(
-				new float[] { percentileBottom, percentileTop }, new float[] { min,
-						max }, clip);
+		((DefaultInputNormalizer) inputNormalizer).setLazy(normalizeLazily);
+		final Normalizer normalizer = ((DefaultInputNormalizer) inputNormalizer)
+			.getNormalizer();
+		final float[] percentiles = { percentileBottom, percentileTop };
+		final float[] destValues = { min, max };
+		if (!(normalizer instanceof PercentileNormalizer)) {
+			normalizer.setup(percentiles, destValues, clip);
+			return;
+		}
+		final PercentileNormalizer percentileNormalizer =
+			(PercentileNormalizer) normalizer;
+		percentileNormalizer.setup(percentiles, destValues, clip,
+			percentileRankError / 100.);
+		percentileNormalizer.setSeparateAxes(getSeparateNormalizationAxes());
+		if (normalizationCache != null && cacheNormalizationStatistics) {
+			percentileNormalizer.setStatisticsCache(normalizationCache,
+				persistNormalizationStatistics);
+			percentileNormalizer.setHashAllValues(hashNormalizationInput);
+		}
+		else {
+			percentileNormalizer.setStatisticsCache(null);
+		}
+		if (poolService != null) {
+			percentileNormalizer.setExecutorService(poolService.getPool(
+				PoolService.Pool.COMPUTE));
+		}
+	}
+
+	/**
+	 * @return the axes along which each hyperslice is normalized with its own
+	 *         percentiles
+	 */
+	protected AxisType[] getSeparateNormalizationAxes() {
+		final List<AxisType> axes = new ArrayList<>();
+		if (NORMALIZE_PER_CHANNEL.equals(normalizationStatistics) ||
+			NORMALIZE_PER_CHANNEL_AND_TIME_POINT.equals(normalizationStatistics))
+		{
+			axes.add(Axes.CHANNEL);
+		}
+		if (NORMALIZE_PER_TIME_POINT.equals(normalizationStatistics) ||
+			NORMALIZE_PER_CHANNEL_AND_TIME_POINT.equals(normalizationStatistics))
+		{
+			axes.add(Axes.TIME);
+		}
+		return axes.toArray(new AxisType[0]);
 	}
 
 	protected boolean doInputNormalization() {
@@ -491,6 +792,19 @@ public class GenericNetwork implements
 		if(modelFileUrl.isEmpty()) {
 			taskManager.logError("Trained model file / URL is missing or unavailable");
 		}
+		if(network instanceof TensorFlowNetwork) {
+			if (TensorFlowNetwork.supportsSessionConfig()) {
+				((TensorFlowNetwork) network).setSessionThreads(intraOpThreads,
+					interOpThreads, perSessionThreads);
+			}
+			else if (intraOpThreads > 0 || interOpThreads > 0 || perSessionThreads) {
+				taskManager.logWarning("This TensorFlow version cannot configure " +
+					"session threads, the TensorFlow thread settings are ignored");
+			}
+			((TensorFlowNetwork) network).setSessionCount(sessionCount);
+		}
+		modelLoader.setWarmUp(warmUp, this::createTiling, nTiles, batchSize,
+			tileBatchSize);
 		modelLoader.run(modelName, network, modelFileUrl, getInput());
 
 		try {
@@ -518,9 +832,6 @@ public class GenericNetwork implements
 		if (network != null) {
 			network.dispose();
 		}
-		if(pool != null) {
-			pool.shutdown();
-		}
 		pool = null;
 	}
 
@@ -556,9 +867,38 @@ public class GenericNetwork implements
 				input, finalInputAxes, tiling, tilingActions);
 		nTiles = tiling.getTilesNum();
 		if(tiledInput == null) return null;
+		network.setTileBatchSize(tileBatchSize);
+		// tiles merged by the output sink are never spilled, so collect them
+		// instead if they should move to the scratch directory
+		final boolean spill = scratchDirectory != null && outputContainer == null;
+		if(scratchDirectory != null && !spill) {
+			log("Not using the scratch directory, the result is written to the N5 container");
+		}
+		if(network instanceof DefaultNetwork) {
+			((DefaultNetwork) network).setSpilling(spill ? scratchDirectory : null,
+				spillThreshold / 100.);
+		}
+		if(modelExecutor instanceof DefaultModelExecutor) {
+			((DefaultModelExecutor) modelExecutor).setUseOutputSink(!spill);
+			((DefaultModelExecutor) modelExecutor).setOutputContainer(
+				openOutputContainer());
+		}
 		return modelExecutor.run(tiledInput, network);
 	}
 
+	private N5Container openOutputContainer() throws ExecutionException {
+		if(outputContainer == null) return null;
+		try {
+			final N5Container container = new N5Container(outputContainer);
+			log("Writing result to N5 container " + outputContainer.getAbsolutePath());
+			return container;
+		}
+		catch (IOException e) {
+			throw new ExecutionException("Could not open N5 container " +
+				outputContainer, e);
+		}
+	}
+
 	public void setMapping(final AxisType[] mapping) {
 		inputMapper.setMapping(mapping);
 	}
@@ -584,19 +924,22 @@ public class GenericNetwork implements
 		// try it again with more tiles or smaller batches.
 		final Task modelExecutorTask = modelExecutor;
 		nTiles = tiling.getTilesNum();
-		if(oldNTiles == nTiles && oldBatchesSize == batchSize) {
+		if(oldNTiles == nTiles && oldBatchesSize == batchSize
+			&& oldTileBatchSize == tileBatchSize) {
 			modelExecutorTask.setFailed();
 			return false;
 		}
 		oldNTiles = nTiles;
 		oldBatchesSize = batchSize;
+		oldTileBatchSize = tileBatchSize;
 
 		handleOutOfMemoryError();
 		initTiling();
 		nTiles = tiling.getTilesNum();
 		modelExecutorTask.logWarning(
 			"Out of memory exception occurred. Trying with " + nTiles +
-				" tiles, batch size " + batchSize + " and overlap " + overlap + "...");
+				" tiles, batch size " + batchSize + ", " + tileBatchSize +
+				" tiles per network run and overlap " + overlap + "...");
 
 		modelExecutorTask.startNewIteration();
 		inputTiler.addIteration();
@@ -604,6 +947,10 @@ public class GenericNetwork implements
 	}
 
 	protected void handleOutOfMemoryError() {
+		if (tileBatchSize > 1) {
+			tileBatchSize /= 2;
+			return;
+		}
 		batchSize /= 2;
 		if (batchSize < 1) {
 			batchSize = 1;
@@ -622,22 +969,28 @@ public class GenericNetwork implements
 
 	@Override
 	public String getCancelReason() {
-		return null;
+		return cancelReason;
 	}
 
 	@Override
 	public boolean isCanceled() {
-		return false;
+		return canceled || (taskManager != null && taskManager.isCanceled());
 	}
 
 	@Override
 	public void cancel(final String reason) {
+		cancelReason = reason;
+		canceled = true;
+		// stop the running stage first so it releases its memory, then interrupt
+		if(taskManager != null) {
+			taskManager.cancel(reason);
+		}
+		if(network != null) {
+			network.cancel(reason);
+		}
 		if(future != null) {
 			future.cancel(true);
 		}
-		if(pool != null) {
-			pool.shutdownNow();
-		}
 		dispose();
 	}
 
@@ -650,6 +1003,15 @@ public class GenericNetwork implements
 		}
 	}
 
+	protected void logWarning(final String msg) {
+		if (taskManager != null) {
+			taskManager.logWarning(msg);
+		}
+		else {
+			System.out.println("[WARNING] " + msg);
+		}
+	}
+
 	protected void error(final String msg) {
 		if (taskManager != null) {
 			taskManager.logError(msg);
@@ -0,0 +1,248 @@
+
+package de.csbdresden.csbdeep.commands;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.scijava.command.Command;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.widget.FileWidget;
+
+import de.csbdresden.csbdeep.normalize.DefaultInputNormalizer;
+import de.csbdresden.csbdeep.normalize.Normalizer;
+import de.csbdresden.csbdeep.normalize.PercentileNormalizer;
+import io.scif.services.DatasetIOService;
+import net.imagej.Dataset;
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imagej.axis.CalibratedAxis;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.ImgView;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Runs the network on a time-lapse in batches of frames and writes the output
+ * of every batch to disk before the next one is read, so memory usage depends
+ * on the batch size and not on the length of the movie. Open large movies as
+ * virtual stacks (or with SCIFIO's cell image mode) so the input is not
+ * loaded completely either. The batches are written as separate TIFF files,
+ * the N5 output container of {@link GenericNetwork} is not used.
+ * <p>
+ * Global normalization statistics are exact percentiles of the whole movie by
+ * default, computed in one streaming pass before the first batch. Sampling
+ * evenly spaced frames is faster, but only approximates them.
+ * </p>
+ */
+@Plugin(type = Command.class,
+	menuPath = "Plugins>CSBDeep>Run your network on a time-lapse",
+	headless = true)
+public class TimeLapseNetwork extends GenericNetwork {
+
+	static final String STATISTICS_GLOBAL = "global (exact)";
+	static final String STATISTICS_SAMPLED =
+		"global (approximate, sampled frames)";
+	static final String STATISTICS_PER_FRAME = "per frame";
+
+	@Parameter(label = "Output folder", style = FileWidget.DIRECTORY_STYLE)
+	protected File outputFolder;
+
+	@Parameter(label = "Frames per batch", min = "1")
+	protected int framesPerBatch = 10;
+
+	@Parameter(label = "Normalization statistics", choices = {
+		STATISTICS_GLOBAL, STATISTICS_SAMPLED, STATISTICS_PER_FRAME })
+	protected String statistics = STATISTICS_GLOBAL;
+
+	@Parameter(label = "Frames sampled for approximate global statistics",
+		min = "1")
+	protected int statisticsFrames = 20;
+
+	@Parameter
+	protected DatasetIOService datasetIOService;
+
+	@Override
+	protected void mainThread() throws OutOfMemoryError {
+
+		final Dataset movie = getInput();
+		final int timeDim = movie.dimensionIndex(Axes.TIME);
+		if (timeDim < 0) {
+			log("Input has no time axis, processing it as a whole");
+			super.mainThread();
+			return;
+		}
+		if (!outputFolder.exists() && !outputFolder.mkdirs()) {
+			error("Could not create output folder " + outputFolder);
+			return;
+		}
+		// every batch would replace the result dataset of the previous one
+		if (outputContainer != null) {
+			logWarning("The N5 output container is not used for time-lapses, " +
+				"the batches are written to " + outputFolder);
+			outputContainer = null;
+		}
+
+		final long frames = movie.dimension(timeDim);
+		try {
+			// the model is set up with the first batch, all batches have the same
+			// axes and only the last one can have less frames
+			input = batch(movie, timeDim, 0, Math.min(frames, framesPerBatch));
+			if (!prepareNetwork()) return;
+
+			float[] globalValues = null;
+			if (doInputNormalization() && STATISTICS_GLOBAL.equals(statistics)) {
+				globalValues = computeGlobalStatistics(movie);
+			}
+			else if (doInputNormalization() && STATISTICS_SAMPLED.equals(
+				statistics))
+			{
+				globalValues = sampleGlobalStatistics(movie, timeDim);
+			}
+
+			for (long start = 0; start < frames; start += framesPerBatch) {
+				if (isCanceled()) return;
+				final long end = Math.min(frames, start + framesPerBatch);
+				log("Processing frames " + start + "-" + (end - 1) + " of " + frames);
+				final Dataset batch = batch(movie, timeDim, start, end);
+				input = batch;
+				final Dataset normalized = normalizeBatch(batch, globalValues);
+				if (isCanceled()) return;
+				final Dataset result = process(normalized, batch);
+				if (result == null) {
+					error("Processing frames " + start + "-" + (end - 1) + " failed");
+					return;
+				}
+				final File file = new File(outputFolder, getOutputName(movie, start,
+					end, frames));
+				try {
+					datasetIOService.save(result, file.getAbsolutePath());
+				}
+				catch (IOException e) {
+					error("Could not write " + file + ": " + e.getMessage());
+					return;
+				}
+			}
+			log("Wrote " + frames + " frames to " + outputFolder);
+		}
+		finally {
+			input = movie;
+		}
+	}
+
+	/**
+	 * Computes the percentiles of the whole movie. Integer movies are counted in
+	 * a histogram, large and cached movies are streamed, so they are not copied
+	 * into memory.
+	 */
+	private float[] computeGlobalStatistics(final Dataset movie) {
+		final PercentileNormalizer normalizer = getPercentileNormalizer();
+		if (normalizer == null) return null;
+		setupNormalizer();
+		final float[] values = normalizer.computePercentileValues(
+			(RandomAccessibleInterval) movie.getImgPlus(), opService);
+		log("Normalization statistics of all " + movie.dimension(movie
+			.dimensionIndex(Axes.TIME)) + " frames: " + Arrays.toString(values));
+		return values;
+	}
+
+	/**
+	 * Estimates the percentiles of the whole movie from evenly spaced frames.
+	 */
+	private float[] sampleGlobalStatistics(final Dataset movie,
+		final int timeDim)
+	{
+		final PercentileNormalizer normalizer = getPercentileNormalizer();
+		if (normalizer == null) return null;
+		setupNormalizer();
+		final long frames = movie.dimension(timeDim);
+		final int samples = (int) Math.min(frames, statisticsFrames);
+		final List<RandomAccessibleInterval> sampled = new ArrayList<>();
+		for (int i = 0; i < samples; i++) {
+			final long t = samples == 1 ? 0 : i * (frames - 1) / (samples - 1);
+			sampled.add(Views.hyperSlice((RandomAccessibleInterval) movie
+				.getImgPlus(), timeDim, t));
+		}
+		final float[] values = normalizer.computePercentileValues(Views.stack(
+			sampled), opService);
+		log("Approximate normalization statistics of " + samples + " frames: " +
+			Arrays.toString(values));
+		return values;
+	}
+
+	/**
+	 * @param globalValues percentile values of the movie or null for per frame
+	 *          statistics, which are collected for all frames of the batch in
+	 *          one pass, see {@link #getSeparateNormalizationAxes()}
+	 */
+	private Dataset normalizeBatch(final Dataset batch,
+		final float[] globalValues)
+	{
+		if (!doInputNormalization()) return batch;
+		final PercentileNormalizer normalizer = getPercentileNormalizer();
+		if (normalizer != null) normalizer.setPercentileValues(globalValues);
+		return normalize(batch);
+	}
+
+	@Override
+	protected AxisType[] getSeparateNormalizationAxes() {
+		final AxisType[] axes = super.getSeparateNormalizationAxes();
+		if (!STATISTICS_PER_FRAME.equals(statistics) || Arrays.asList(axes)
+			.contains(Axes.TIME)) return axes;
+		final AxisType[] res = Arrays.copyOf(axes, axes.length + 1);
+		res[axes.length] = Axes.TIME;
+		return res;
+	}
+
+	private PercentileNormalizer getPercentileNormalizer() {
+		if (!(inputNormalizer instanceof DefaultInputNormalizer)) return null;
+		final Normalizer normalizer = ((DefaultInputNormalizer) inputNormalizer)
+			.getNormalizer();
+		if (!(normalizer instanceof PercentileNormalizer)) return null;
+		return (PercentileNormalizer) normalizer;
+	}
+
+	/**
+	 * @return a view on the frames from start (inclusive) to end (exclusive)
+	 */
+	private <T extends RealType<T> & NativeType<T>> Dataset batch(
+		final Dataset movie, final int timeDim, final long start, final long end)
+	{
+		final ImgPlus<T> img = (ImgPlus<T>) movie.getImgPlus();
+		final long[] min = Intervals.minAsLongArray(img);
+		final long[] max = Intervals.maxAsLongArray(img);
+		min[timeDim] = start;
+		max[timeDim] = end - 1;
+		final RandomAccessibleInterval<T> view = Views.zeroMin(Views.interval(img,
+			min, max));
+		final CalibratedAxis[] axes = new CalibratedAxis[movie.numDimensions()];
+		for (int d = 0; d < axes.length; d++) {
+			axes[d] = movie.axis(d).copy();
+		}
+		final ImgPlus<T> batch = new ImgPlus<>(ImgView.wrap(view,
+			new ArrayImgFactory<>(Util.getTypeFromInterval(view))), movie.getName(),
+			axes);
+		return datasetService.create(batch);
+	}
+
+	static String getOutputName(final Dataset movie, final long start,
+		final long end, final long frames)
+	{
+		String name = movie.getName();
+		if (name == null || name.isEmpty()) name = "output";
+		final int dot = name.lastIndexOf('.');
+		if (dot > 0) name = name.substring(0, dot);
+		final int digits = String.valueOf(Math.max(0, frames - 1)).length();
+		final String format = "%s_t%0" + digits + "d-%0" + digits + "d.tif";
+		return String.format(format, name, start, end - 1);
+	}
+
+}
@@ -0,0 +1,48 @@
+package de.csbdresden.csbdeep.imglib2;
+
+import java.nio.FloatBuffer;
+
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.FloatAccess;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Fraction;
+
+/**
+ * {@link FloatAccess} reading and writing a (direct) {@link FloatBuffer} with
+ * absolute indices.
+ */
+public class FloatBufferAccess implements FloatAccess {
+
+	private final FloatBuffer buffer;
+
+	public FloatBufferAccess(final FloatBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	@Override
+	public float getValue(final int index) {
+		return buffer.get(index);
+	}
+
+	@Override
+	public void setValue(final int index, final float value) {
+		buffer.put(index, value);
+	}
+
+	public FloatBuffer getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * Wraps the buffer into an image without copying it.
+	 */
+	public static ArrayImg<FloatType, FloatBufferAccess> wrap(
+		final FloatBuffer buffer, final long... dims)
+	{
+		final ArrayImg<FloatType, FloatBufferAccess> img = new ArrayImg<>(
+			new FloatBufferAccess(buffer), dims, new Fraction());
+		img.setLinkedType(new FloatType(img));
+		return img;
+	}
+
+}
@@ -0,0 +1,173 @@
+package de.csbdresden.csbdeep.imglib2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imagej.ImgPlus;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.converter.Converter;
+import net.imglib2.converter.read.ConvertedRandomAccessibleInterval;
+import net.imglib2.transform.integer.MixedTransform;
+import net.imglib2.view.ExtendedRandomAccessibleInterval;
+import net.imglib2.view.IntervalView;
+import net.imglib2.view.MixedTransformView;
+
+/**
+ * Follows a chain of ImgLib2 views down to the image holding the data. The
+ * integer transforms of the views are combined into one affine mapping from
+ * view coordinates to source coordinates, converters are collected on the way.
+ */
+public class ViewUnwrapper {
+
+	/**
+	 * An affine, integer valued mapping from view coordinates to coordinates of
+	 * the data source: source = matrix * view + offset.
+	 */
+	public static class UnwrappedView {
+
+		private final RandomAccessible<?> source;
+		private final long[][] matrix;
+		private final long[] offset;
+		private final List<Converter<?, ?>> converters;
+
+		UnwrappedView(final RandomAccessible<?> source, final long[][] matrix,
+			final long[] offset, final List<Converter<?, ?>> converters)
+		{
+			this.source = source;
+			this.matrix = matrix;
+			this.offset = offset;
+			this.converters = converters;
+		}
+
+		public RandomAccessible<?> getSource() {
+			return source;
+		}
+
+		/**
+		 * @return step in source dimension {@code sourceDim} when moving one
+		 *         pixel along view dimension {@code viewDim}
+		 */
+		public long getStep(final int sourceDim, final int viewDim) {
+			return matrix[sourceDim][viewDim];
+		}
+
+		public long getOffset(final int sourceDim) {
+			return offset[sourceDim];
+		}
+
+		public void toSource(final long[] viewPosition, final long[] sourcePosition) {
+			for (int i = 0; i < offset.length; i++) {
+				long res = offset[i];
+				for (int j = 0; j < viewPosition.length; j++) {
+					res += matrix[i][j] * viewPosition[j];
+				}
+				sourcePosition[i] = res;
+			}
+		}
+
+		/**
+		 * @return the converters between source and view, the one applied to the
+		 *         source values first
+		 */
+		public List<Converter<?, ?>> getConverters() {
+			return converters;
+		}
+
+		public int numSourceDimensions() {
+			return offset.length;
+		}
+
+		public int numViewDimensions() {
+			return matrix.length == 0 ? 0 : matrix[0].length;
+		}
+	}
+
+	/**
+	 * @param view the view to unwrap
+	 * @param interval the part of the view which will be accessed, needed to
+	 *          decide if out of bounds extensions can be skipped
+	 */
+	public static UnwrappedView unwrap(final RandomAccessible<?> view,
+		final Interval interval)
+	{
+		final int n = view.numDimensions();
+		long[][] matrix = new long[n][n];
+		long[] offset = new long[n];
+		for (int i = 0; i < n; i++) {
+			matrix[i][i] = 1;
+		}
+		final List<Converter<?, ?>> converters = new ArrayList<>();
+		RandomAccessible<?> current = view;
+		while (true) {
+			if (current instanceof IntervalView) {
+				current = ((IntervalView<?>) current).getSource();
+			}
+			else if (current instanceof MixedTransformView) {
+				final MixedTransformView<?> mixed = (MixedTransformView<?>) current;
+				final MixedTransform transform = mixed.getTransformToSource();
+				final int m = transform.numTargetDimensions();
+				final long[] newOffset = new long[m];
+				transform.apply(offset, newOffset);
+				final long[][] newMatrix = new long[m][n];
+				final long[] shifted = new long[offset.length];
+				final long[] target = new long[m];
+				for (int j = 0; j < n; j++) {
+					for (int i = 0; i < offset.length; i++) {
+						shifted[i] = offset[i] + matrix[i][j];
+					}
+					transform.apply(shifted, target);
+					for (int i = 0; i < m; i++) {
+						newMatrix[i][j] = target[i] - newOffset[i];
+					}
+				}
+				matrix = newMatrix;
+				offset = newOffset;
+				current = mixed.getSource();
+			}
+			else if (current instanceof ExtendedRandomAccessibleInterval) {
+				final ExtendedRandomAccessibleInterval<?, ?> extended =
+					(ExtendedRandomAccessibleInterval<?, ?>) current;
+				if (!isInside(matrix, offset, interval, extended.getSource())) {
+					break;
+				}
+				current = extended.getSource();
+			}
+			else if (current instanceof ConvertedRandomAccessibleInterval) {
+				final ConvertedRandomAccessibleInterval<?, ?> converted =
+					(ConvertedRandomAccessibleInterval<?, ?>) current;
+				converters.add(0, converted.getConverter());
+				current = converted.getSource();
+			}
+			else if (current instanceof ImgPlus) {
+				current = ((ImgPlus<?>) current).getImg();
+			}
+			else {
+				break;
+			}
+		}
+		return new UnwrappedView(current, matrix, offset, converters);
+	}
+
+	/**
+	 * Checks if the bounding box of the interval mapped to the source lies
+	 * within the source interval.
+	 */
+	private static boolean isInside(final long[][] matrix, final long[] offset,
+		final Interval interval, final Interval source)
+	{
+		for (int i = 0; i < offset.length; i++) {
+			long min = offset[i];
+			long max = offset[i];
+			for (int j = 0; j < interval.numDimensions(); j++) {
+				final long a = matrix[i][j] * interval.min(j);
+				final long b = matrix[i][j] * interval.max(j);
+				min += Math.min(a, b);
+				max += Math.max(a, b);
+			}
+			if (min < source.min(i) || max > source.max(i)) return false;
+		}
+		return true;
+	}
+
+}
@@ -9,6 +9,7 @@ import de.csbdresden.csbdeep.task.DefaultTask;
 import de.csbdresden.csbdeep.util.DatasetHelper;
 import net.imagej.Dataset;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.converter.Converter;
 import net.imglib2.converter.Converters;
 import net.imglib2.converter.RealFloatConverter;
 import net.imglib2.type.numeric.RealType;
@@ -19,6 +20,17 @@ public class DefaultInputProcessor<T extends RealType<T>> extends DefaultTask
 	implements InputProcessor
 {
 
+	private Converter<T, FloatType> converter;
+
+	/**
+	 * @param converter converts the input values, e.g. a
+	 *          {@link de.csbdresden.csbdeep.normalize.NormalizationConverter}
+	 *          normalizing them lazily, a plain conversion to float if null
+	 */
+	public void setConverter(final Converter<T, FloatType> converter) {
+		this.converter = converter;
+	}
+
 	@Override
 	public List<RandomAccessibleInterval<FloatType>> run(final Dataset input, Network network) {
 
@@ -26,13 +38,13 @@ public class DefaultInputProcessor<T extends RealType<T>> extends DefaultTask
 
 		setStarted();
 
-		log("Dataset type: " + input.getTypeLabelLong() +
-			", converting to FloatType.");
+		log("Dataset type: " + input.getTypeLabelLong() + (converter == null
+			? ", converting to FloatType." : ", normalizing to FloatType."));
 		DatasetHelper.logDim(this, "Dataset dimensions", input);
 
 		RandomAccessibleInterval<FloatType> rai = Converters.convert(
-			(RandomAccessibleInterval) input.getImgPlus(),
-			new RealFloatConverter<T>(), new FloatType());
+			(RandomAccessibleInterval) input.getImgPlus(), converter != null
+				? converter : new RealFloatConverter<T>(), new FloatType());
 
 		List<Integer> droppedDims = network.dropSingletonDims();
 
@@ -44,6 +56,8 @@ public class DefaultInputProcessor<T extends RealType<T>> extends DefaultTask
 		}
 
 		output.add(rai);
+		metrics.addBytesIn(DatasetHelper.sizeInBytes(input));
+		metrics.addBytesOut(DatasetHelper.sizeInBytes(rai));
 
 		setFinished();
 
@@ -9,10 +9,14 @@ import de.csbdresden.csbdeep.task.DefaultTask;
 import de.csbdresden.csbdeep.util.DatasetHelper;
 import net.imagej.Dataset;
 import net.imagej.DatasetService;
+import net.imagej.ImgPlus;
 import net.imagej.axis.AxisType;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgView;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Util;
 import net.imglib2.view.Views;
 
 public class DefaultOutputProcessor<T extends RealType<T> & NativeType<T>>
@@ -31,6 +35,8 @@ public class DefaultOutputProcessor<T extends RealType<T> & NativeType<T>>
 		final List<Dataset> output = new ArrayList<>();
 		result.forEach(image -> output.addAll(_run(image, node,
 			datasetService)));
+		metrics.addBytesIn(DatasetHelper.sizeInBytes(result));
+		metrics.addBytesOut(DatasetHelper.sizeInBytes(output));
 
 		setFinished();
 
@@ -72,7 +78,10 @@ public class DefaultOutputProcessor<T extends RealType<T> & NativeType<T>>
 		// TODO convert back to original format to be able to save and load it
 		// (float 32 bit does not load in Fiji) /- note i think we do that now
 
-		final Dataset dataset = datasetService.create(img);
+		// wrap instead of copying the result
+		final Img<T> wrapped = img instanceof Img ? (Img<T>) img : ImgView.wrap(
+			img, Util.getSuitableImgFactory(img, Util.getTypeFromInterval(img)));
+		final Dataset dataset = datasetService.create(new ImgPlus<>(wrapped));
 		dataset.setName(name);
 		for (int i = 0; i < dataset.numDimensions(); i++) {
 			dataset.axis(i).setType(axes[i]);
@@ -0,0 +1,215 @@
+
+package de.csbdresden.csbdeep.io;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Minimal reader and writer of float32 datasets in an N5 container on the
+ * local file system, as specified in https://github.com/saalfeldlab/n5. Blocks
+ * are gzip compressed, so the container can be opened with the N5 plugins of
+ * Fiji and BigDataViewer.
+ * <p>
+ * Only gzip compressed float32 datasets are written and read back, in N5
+ * version 2 containers. Other data types, compressions, cloud storage and Zarr
+ * are not supported, convert the result with the n5 tools of Fiji if another
+ * format is needed.
+ * </p>
+ */
+public class N5Container {
+
+	public static final String VERSION = "2.0.0";
+	private static final String ATTRIBUTES = "attributes.json";
+	private static final String DATA_TYPE = "float32";
+
+	private final File root;
+
+	public N5Container(final File root) throws IOException {
+		this.root = root;
+		if (!root.exists() && !root.mkdirs()) {
+			throw new IOException("Could not create N5 container " + root);
+		}
+		final File attributes = new File(root, ATTRIBUTES);
+		if (!attributes.exists()) {
+			try (JsonWriter writer = new JsonWriter(new FileWriter(attributes))) {
+				writer.beginObject();
+				writer.name("n5").value(VERSION);
+				writer.endObject();
+			}
+		}
+	}
+
+	public File getRoot() {
+		return root;
+	}
+
+	/**
+	 * Creates the dataset. A previous dataset with the same name is removed
+	 * first, so none of its blocks show up in the new one.
+	 *
+	 * @param axes labels of the dimensions, stored as additional attribute
+	 */
+	public void createDataset(final String dataset, final long[] dimensions,
+		final int[] blockSize, final String[] axes) throws IOException
+	{
+		removeDataset(dataset);
+		final File folder = new File(root, dataset);
+		if (!folder.mkdirs()) {
+			throw new IOException("Could not create N5 dataset " + folder);
+		}
+		try (Writer out = new FileWriter(new File(folder, ATTRIBUTES));
+				JsonWriter writer = new JsonWriter(out))
+		{
+			writer.beginObject();
+			writer.name("dimensions").beginArray();
+			for (final long dimension : dimensions) {
+				writer.value(dimension);
+			}
+			writer.endArray();
+			writer.name("blockSize").beginArray();
+			for (final int size : blockSize) {
+				writer.value(size);
+			}
+			writer.endArray();
+			writer.name("dataType").value(DATA_TYPE);
+			writer.name("compression").beginObject();
+			writer.name("type").value("gzip");
+			writer.name("level").value(-1);
+			writer.endObject();
+			if (axes != null) {
+				writer.name("axes").beginArray();
+				for (final String axis : axes) {
+					writer.value(axis);
+				}
+				writer.endArray();
+			}
+			writer.endObject();
+		}
+	}
+
+	/**
+	 * Deletes the dataset with all its blocks, does nothing if it does not
+	 * exist.
+	 */
+	public void removeDataset(final String dataset) throws IOException {
+		final Path folder = new File(root, dataset).toPath();
+		if (!Files.exists(folder)) return;
+		try (Stream<Path> paths = Files.walk(folder)) {
+			// children before their folders
+			for (final Path path : (Iterable<Path>) paths.sorted(Comparator
+				.reverseOrder())::iterator)
+			{
+				Files.delete(path);
+			}
+		}
+	}
+
+	/**
+	 * Compresses and writes a block. The file is written next to its final
+	 * location first, readers never see partially written blocks.
+	 *
+	 * @param size size of this block, smaller than the block size of the
+	 *          dataset at the upper border
+	 * @param data values in flat iteration order, first dimension fastest
+	 */
+	public void writeBlock(final String dataset, final long[] gridPosition,
+		final int[] size, final float[] data) throws IOException
+	{
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length *
+			Float.BYTES / 2 + 64);
+		try (DataOutputStream header = new DataOutputStream(bytes)) {
+			// mode 0: default block
+			header.writeShort(0);
+			header.writeShort(size.length);
+			for (final int s : size) {
+				header.writeInt(s);
+			}
+			header.flush();
+			final GZIPOutputStream gzip = new GZIPOutputStream(bytes, 1 << 16);
+			final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+			for (final float value : data) {
+				if (!buffer.hasRemaining()) {
+					gzip.write(buffer.array(), 0, buffer.position());
+					buffer.clear();
+				}
+				buffer.putFloat(value);
+			}
+			gzip.write(buffer.array(), 0, buffer.position());
+			gzip.close();
+		}
+		final File file = getBlockFile(dataset, gridPosition);
+		final File folder = file.getParentFile();
+		if (!folder.exists() && !folder.mkdirs() && !folder.exists()) {
+			throw new IOException("Could not create folder " + folder);
+		}
+		final File tmp = new File(folder, file.getName() + ".tmp");
+		try (BufferedOutputStream out = new BufferedOutputStream(
+			new FileOutputStream(tmp)))
+		{
+			bytes.writeTo(out);
+		}
+		Files.move(tmp.toPath(), file.toPath(),
+			StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * @param size filled with the size of the block
+	 * @return the values of the block or null if it was not written
+	 */
+	public float[] readBlock(final String dataset, final long[] gridPosition,
+		final int[] size) throws IOException
+	{
+		final File file = getBlockFile(dataset, gridPosition);
+		if (!file.exists()) return null;
+		try (InputStream in = new FileInputStream(file);
+				DataInputStream header = new DataInputStream(in))
+		{
+			final short mode = header.readShort();
+			if (mode != 0) throw new IOException("Unsupported block mode " + mode +
+				" in " + file);
+			final int n = header.readShort();
+			int count = 1;
+			for (int i = 0; i < n; i++) {
+				size[i] = header.readInt();
+				count *= size[i];
+			}
+			final float[] res = new float[count];
+			try (DataInputStream data = new DataInputStream(new GZIPInputStream(in,
+				1 << 16)))
+			{
+				final byte[] bytes = new byte[count * Float.BYTES];
+				data.readFully(bytes);
+				ByteBuffer.wrap(bytes).asFloatBuffer().get(res);
+			}
+			return res;
+		}
+	}
+
+	File getBlockFile(final String dataset, final long[] gridPosition) {
+		File file = new File(root, dataset);
+		for (final long position : gridPosition) {
+			file = new File(file, Long.toString(position));
+		}
+		return file;
+	}
+
+}
@@ -5,9 +5,14 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.*;
 
+import de.csbdresden.csbdeep.io.N5Container;
 import de.csbdresden.csbdeep.network.model.Network;
 import de.csbdresden.csbdeep.task.DefaultTask;
+import de.csbdresden.csbdeep.thread.PoolService;
 import de.csbdresden.csbdeep.tiling.AdvancedTiledView;
+import de.csbdresden.csbdeep.tiling.DefaultOutputSink;
+import de.csbdresden.csbdeep.tiling.N5OutputSink;
+import de.csbdresden.csbdeep.tiling.OutputSink;
 import de.csbdresden.csbdeep.util.DatasetHelper;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.type.numeric.RealType;
@@ -17,9 +22,20 @@ public class DefaultModelExecutor<T extends RealType<T>> extends DefaultTask
 {
 
 	private static String PROGRESS_CANCELED = "Canceled";
+	private final PoolService poolService;
 	private ExecutorService pool = null;
+	private Future<?> currentFuture = null;
 	private Network network = null;
-	private boolean canceled = false;
+	private boolean useOutputSink = true;
+	private N5Container outputContainer = null;
+
+	public DefaultModelExecutor() {
+		this(null);
+	}
+
+	public DefaultModelExecutor(final PoolService poolService) {
+		this.poolService = poolService;
+	}
 
 	@Override
 	public List<AdvancedTiledView<T>> run(final List<AdvancedTiledView<T>> input,
@@ -34,21 +50,25 @@ public class DefaultModelExecutor<T extends RealType<T>> extends DefaultTask
 
 			setCurrentStep(0);
 			network.resetTileCount();
+			// the network forgot cancellations of its previous run, not this one
+			if(isCanceled()) network.cancel(getCancelReason());
 			setNumSteps(getSteps(input));
 
-			pool = Executors.newWorkStealingPool();
+			final boolean ownsPool = poolService == null;
+			pool = ownsPool ? Executors.newWorkStealingPool() : poolService.getPool(
+				PoolService.Pool.EXECUTION);
 			final List<AdvancedTiledView<T>> output = new ArrayList<>();
-			for (AdvancedTiledView<T> tile : input) {
-				try {
-					output.add(run(tile, network));
-				} catch (ExecutionException e) {
-					throw e;
+			try {
+				for (AdvancedTiledView<T> tile : input) {
+					output.add(run(tile, network, output.size()));
+					if(isCanceled()) return null;
 				}
-				if(isCanceled()) return null;
 			}
-			pool.shutdown();
+			finally {
+				if(ownsPool) pool.shutdown();
+			}
 			if(isCanceled()) return null;
-			if (output.size() > 0) {
+			if (output.size() > 0 && output.get(0).getProcessedTiles().size() > 0) {
 				DatasetHelper.logDim(this, "Network output size", output.get(0)
 						.getProcessedTiles().get(0));
 			}
@@ -71,13 +91,16 @@ public class DefaultModelExecutor<T extends RealType<T>> extends DefaultTask
 	}
 
 	private AdvancedTiledView<T> run(final AdvancedTiledView<T> input,
-		final Network network) throws OutOfMemoryError, IllegalArgumentException, ExecutionException {
+		final Network network, final int index) throws OutOfMemoryError, IllegalArgumentException, ExecutionException {
 
 		input.getProcessedTiles().clear();
+		input.setOutputSink(createOutputSink(input, network, index));
 
 		try {
 			network.setTiledView(input);
+			network.setOutputSink(input.getOutputSink());
 			Future<List<RandomAccessibleInterval<T>>> resultFuture = pool.submit(network);
+			currentFuture = resultFuture;
 			if(resultFuture != null) {
 				List<RandomAccessibleInterval<T>> result = resultFuture.get();
 				if(result != null) {
@@ -106,29 +129,58 @@ public class DefaultModelExecutor<T extends RealType<T>> extends DefaultTask
 			setFailed();
 			throw exc;
 		}
+		finally {
+			currentFuture = null;
+			network.setOutputSink(null);
+		}
 
 		return input;
 	}
 
-	@Override
-	public boolean isCanceled() {
-		return canceled;
+	private OutputSink<T> createOutputSink(final AdvancedTiledView<T> input,
+		final Network network, final int index)
+	{
+		if (!useOutputSink || network.getOutputNode() == null) return null;
+		if (outputContainer != null) {
+			final String dataset = index == 0 ? "result" : "result" + index;
+			final ExecutorService compressionPool = poolService == null ? ForkJoinPool
+				.commonPool() : poolService.getPool(PoolService.Pool.COMPUTE);
+			return new N5OutputSink<>(input, network.getOutputNode()
+				.getFinalAxesArray(), outputContainer, dataset, compressionPool);
+		}
+		return new DefaultOutputSink<>(input, network.getOutputNode()
+			.getFinalAxesArray());
+	}
+
+	/**
+	 * Set an N5 container to write the output tiles to while the network is
+	 * running, instead of merging them in memory. The result is then read
+	 * lazily from the container. Null to merge in memory (default).
+	 */
+	public void setOutputContainer(final N5Container outputContainer) {
+		this.outputContainer = outputContainer;
+	}
+
+	/**
+	 * Set if output tiles should be merged into the output image as soon as
+	 * they are computed. Otherwise they are collected in
+	 * {@link AdvancedTiledView#getProcessedTiles()}. Default value is true.
+	 */
+	public void setUseOutputSink(final boolean useOutputSink) {
+		this.useOutputSink = useOutputSink;
 	}
 
 	@Override
 	public void cancel(final String reason) {
-		canceled = true;
-		if (pool != null && !pool.isShutdown()) {
-			pool.shutdownNow();
+		super.cancel(reason);
+		// only cancel our own work, the pool might be shared with other runs
+		final Future<?> future = currentFuture;
+		if (future != null) {
+			future.cancel(true);
 		}
 		if(network != null) {
 			network.cancel(reason);
 		}
 	}
 
-	@Override
-	public String getCancelReason() {
-		return null;
-	}
-
 }
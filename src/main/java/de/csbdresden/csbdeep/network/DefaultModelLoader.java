@@ -2,13 +2,44 @@
 package de.csbdresden.csbdeep.network;
 
 import java.io.FileNotFoundException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import de.csbdresden.csbdeep.network.model.Network;
 import de.csbdresden.csbdeep.task.DefaultTask;
+import de.csbdresden.csbdeep.thread.PoolService;
+import de.csbdresden.csbdeep.tiling.DefaultTiling;
+import de.csbdresden.csbdeep.tiling.Tiling;
+import de.csbdresden.csbdeep.tiling.TilingPlanner;
 import net.imagej.Dataset;
+import net.imglib2.FinalDimensions;
+import net.imglib2.type.numeric.real.FloatType;
 
 public class DefaultModelLoader extends DefaultTask implements ModelLoader {
 
+	private final PoolService poolService;
+	private boolean warmUp = false;
+	private TilingPlanner.TilingFactory tilingFactory = (tiles,
+		batch) -> new DefaultTiling<FloatType>(tiles, batch, 1, 0);
+	private int tilesNum = 1;
+	private int batchSize = 1;
+	private int tileBatchSize = 1;
+	private Future<?> warmUpFuture = null;
+
+	public DefaultModelLoader() {
+		this(null);
+	}
+
+	/**
+	 * @param poolService if set, the warm-up runs in the background on the
+	 *          session pool, so it overlaps with whatever happens until the
+	 *          first tile is processed
+	 */
+	public DefaultModelLoader(final PoolService poolService) {
+		this.poolService = poolService;
+	}
+
 	@Override
 	public void run(final String modelName, final Network network,
 		final String modelFileUrl, final Dataset input) throws FileNotFoundException {
@@ -27,12 +58,102 @@ public class DefaultModelLoader extends DefaultTask implements ModelLoader {
 				return;
 			}
 			network.preprocess();
+			if (warmUp) startWarmUp(network);
 		}
 
 		setFinished();
 
 	}
 
+	@Override
+	public void setWarmUp(final boolean warmUp,
+		final TilingPlanner.TilingFactory tilingFactory, final int tilesNum,
+		final int batchSize, final int tileBatchSize)
+	{
+		this.warmUp = warmUp;
+		this.tilingFactory = tilingFactory;
+		this.tilesNum = Math.max(1, tilesNum);
+		this.batchSize = Math.max(1, batchSize);
+		this.tileBatchSize = Math.max(1, tileBatchSize);
+	}
+
+	@Override
+	public void awaitWarmUp() {
+		final Future<?> future = warmUpFuture;
+		if (future == null) return;
+		try {
+			future.get();
+		}
+		catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		catch (final ExecutionException e) {
+			// already logged by the warm-up itself
+		}
+		warmUpFuture = null;
+	}
+
+	private void startWarmUp(final Network network) {
+		awaitWarmUp();
+		final long[] shape = getWarmUpShape(network);
+		if (poolService == null) {
+			warmUp(network, shape);
+		}
+		else {
+			warmUpFuture = poolService.getPool(PoolService.Pool.SESSION).submit(
+				() -> warmUp(network, shape));
+		}
+	}
+
+	/**
+	 * Runs the network twice on a tile of zeros. The first run includes graph
+	 * optimization and allocator setup, the second one shows the latency to
+	 * expect for the actual tiles.
+	 */
+	private void warmUp(final Network network, final long[] shape) {
+		try {
+			final long cold = network.warmUp(shape);
+			if (cold < 0) return;
+			final long warm = network.warmUp(shape);
+			log("Warm-up with tile shape " + Arrays.toString(shape) +
+				": cold run " + toMillis(cold) + " ms, warm run " + toMillis(warm) +
+				" ms");
+		}
+		catch (final Exception | OutOfMemoryError e) {
+			logWarning("Warm-up failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Computes the tile shape in node order with the tiling of the run. Fixed
+	 * node dimensions are kept, the image dimension of the batch dimension is
+	 * tiled by the batch size and tileBatchSize tiles are stacked along it.
+	 */
+	protected long[] getWarmUpShape(final Network network) {
+		final Long[] nodeShape = network.getInputNode().getNodeShape();
+		final long[] dims = new long[nodeShape.length];
+		final Tiling.TilingAction[] actions =
+			new Tiling.TilingAction[nodeShape.length];
+		for (int i = 0; i < nodeShape.length; i++) {
+			dims[i] = nodeShape[i] > 0 ? nodeShape[i] : Math.max(1, network
+				.getInputNode().getDatasetDimSizeByNodeDim(i));
+			// same as ImageTensor.getTilingActions, in node order
+			if (i == 0) actions[i] = Tiling.TilingAction.TILE_WITHOUT_PADDING;
+			else if (i < nodeShape.length - 1 && nodeShape[i] < 0) {
+				actions[i] = Tiling.TilingAction.TILE_WITH_PADDING;
+			}
+			else actions[i] = Tiling.TilingAction.NO_TILING;
+		}
+		final long[] shape = tilingFactory.create(tilesNum, batchSize)
+			.computeTileSize(new FinalDimensions(dims), actions);
+		if (nodeShape.length > 0) shape[0] *= tileBatchSize;
+		return shape;
+	}
+
+	private static long toMillis(final long nanos) {
+		return nanos / 1000000;
+	}
+
 	protected void loadNetwork(final String modelName, final Network network,
 		final String modelFileUrl, final Dataset input) throws FileNotFoundException {
 
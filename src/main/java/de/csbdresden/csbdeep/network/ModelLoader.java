@@ -5,10 +5,25 @@ import java.io.FileNotFoundException;
 
 import de.csbdresden.csbdeep.network.model.Network;
 import de.csbdresden.csbdeep.task.Task;
+import de.csbdresden.csbdeep.tiling.TilingPlanner;
 import net.imagej.Dataset;
 
 public interface ModelLoader extends Task {
 
 	void run(String modelName, Network network, String modelFileUrl, Dataset input) throws FileNotFoundException;
 
+	/**
+	 * Run the network on a dummy tile right after loading the model, so the
+	 * first real tile does not pay for graph optimization and allocator setup.
+	 * The tile shape is computed with the tiling of the run, tileBatchSize tiles
+	 * are stacked along the batch dimension like in the run.
+	 */
+	void setWarmUp(boolean warmUp, TilingPlanner.TilingFactory tilingFactory,
+		int tilesNum, int batchSize, int tileBatchSize);
+
+	/**
+	 * Blocks until a running warm-up is finished.
+	 */
+	void awaitWarmUp();
+
 }
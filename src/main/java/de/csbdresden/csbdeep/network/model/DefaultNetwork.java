@@ -1,23 +1,41 @@
 
 package de.csbdresden.csbdeep.network.model;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.scijava.io.location.Location;
 
 import de.csbdresden.csbdeep.imglib2.TiledView;
 import de.csbdresden.csbdeep.task.Task;
+import de.csbdresden.csbdeep.task.TaskMetrics;
+import de.csbdresden.csbdeep.thread.PoolService;
+import de.csbdresden.csbdeep.tiling.AdvancedTiledView;
+import de.csbdresden.csbdeep.tiling.OutputSink;
+import de.csbdresden.csbdeep.tiling.SpillingTileStore;
+import de.csbdresden.csbdeep.tiling.Tiling;
+import de.csbdresden.csbdeep.util.CancellationHelper;
+import de.csbdresden.csbdeep.util.DatasetHelper;
 import de.csbdresden.csbdeep.util.IOHelper;
 import net.imagej.Dataset;
+import net.imagej.axis.AxisType;
 import net.imglib2.Cursor;
+import net.imglib2.Interval;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
 import net.imglib2.view.Views;
 
 public abstract class DefaultNetwork<T extends RealType<T>> implements
@@ -32,7 +50,36 @@ public abstract class DefaultNetwork<T extends RealType<T>> implements
 	protected Integer doneTileCount;
 	protected boolean dropSingletonDims = false;
 	protected NetworkSettings networkSettings;
+	// written by session threads when they run out of memory
+	protected volatile int tileBatchSize = 1;
+	// how often the remaining tiles are split in half after running out of memory
+	private final AtomicInteger splitLevel = new AtomicInteger();
+	private static final int MAX_SPLIT_LEVEL = 4;
+	protected PoolService poolService;
+	protected OutputSink<T> outputSink;
+	// processed tiles are spilled to this directory if no output sink is used
+	private File spillDirectory = null;
+	private double spillHeapThreshold = 0.7;
+	private long tileIndex = 0;
+	private long submittedTiles = 0;
+	// latency of the first batch is reported separately, it includes session
+	// setup unless the model was warmed up
+	private long callStart;
+	private long firstBatchNanos;
+	private long firstBatchTiles;
 	ExecutorService pool;
+	private boolean ownsPool = false;
+	// grows the shared session pool to the parallelism of this network while
+	// it runs
+	private PoolService.Reservation sessionReservation;
+	private int ownPoolSize = 0;
+	private final List<Future<?>> pendingFutures = Collections.synchronizedList(
+		new ArrayList<>());
+	// results stitched from sub-tiles, their parts are recycled with them
+	private final Map<RandomAccessibleInterval<T>, List<RandomAccessibleInterval<T>>> stitchedParts =
+		new IdentityHashMap<>();
+	private volatile boolean canceled = false;
+	private String cancelReason;
 
 	public DefaultNetwork(Task associatedTask) {
 		this.status = associatedTask;
@@ -61,64 +108,500 @@ public abstract class DefaultNetwork<T extends RealType<T>> implements
 		throws IllegalArgumentException, ExecutionException, OutOfMemoryError
 	{
 
-		pool = Executors.newSingleThreadExecutor();
+		initPool();
+		try {
+			return processTiles();
+		}
+		finally {
+			releasePool();
+		}
+	}
 
-		final boolean multithreading = false;
+	private List<RandomAccessibleInterval<T>> processTiles()
+		throws ExecutionException
+	{
+		splitLevel.set(0);
+		tileIndex = 0;
+		submittedTiles = 0;
+		callStart = System.nanoTime();
+		firstBatchNanos = -1;
+		firstBatchTiles = 0;
+
+		// with several sessions, batches run in parallel and their results are
+		// collected in submission order
+		final int parallelism = getParallelism();
+		final boolean multithreading = parallelism > 1;
 
 		final Cursor<RandomAccessibleInterval<T>> cursor = Views.iterable(tiledView)
 			.cursor();
 
-		// Loop over the tiles and execute the prediction
-		final List<RandomAccessibleInterval<T>> results = new ArrayList<>();
-		final List<Future<RandomAccessibleInterval<T>>> futures = new ArrayList<>();
+		// Loop over the tiles and execute the prediction, stacking up to
+		// tileBatchSize tiles of equal size into one batch
+		final List<RandomAccessibleInterval<T>> results = spillDirectory == null
+			? new ArrayList<>() : new SpillingTileStore<>(spillDirectory,
+				spillHeapThreshold);
+		final List<Future<List<RandomAccessibleInterval<T>>>> futures = new ArrayList<>();
+		final List<RandomAccessibleInterval<T>> batch = new ArrayList<>();
 
 		while (cursor.hasNext()) {
+			if (canceled) {
+				cancelPendingFutures();
+				return null;
+			}
 			final RandomAccessibleInterval<T> tile = cursor.next();
 
-			final Future<RandomAccessibleInterval<T>> future = pool.submit(() -> execute(tile));
-
-			log("Processing tile " + (doneTileCount + 1) + "..");
+			if (!batch.isEmpty() && !equalDimensions(batch.get(0), tile)) {
+				if (!submitBatch(batch, futures, results, multithreading)) return null;
+			}
 
-			futures.add(future);
+			batch.add(tile);
 
-			if (!multithreading) {
-				try {
-					final RandomAccessibleInterval<T> res = future.get();
-					if (res == null) return null;
-					results.add(res);
-					upTileCount();
-				}
-				catch (final IllegalArgumentException exc) {
-					pool.shutdownNow();
-					fail();
-					throw  exc;
-				}
-				catch (final InterruptedException exc) {
-					pool.shutdownNow();
-					fail();
-					return null;
-				}
+			if (batch.size() >= tileBatchSize) {
+				if (!submitBatch(batch, futures, results, multithreading)) return null;
 			}
 		}
+		if (!batch.isEmpty()) {
+			if (!submitBatch(batch, futures, results, multithreading)) return null;
+		}
 		if (multithreading) {
-			for (final Future<RandomAccessibleInterval<T>> future : futures) {
-				try {
-					final RandomAccessibleInterval<T> res = future.get();
-					if (res == null) return null;
-					results.add(res);
-					upTileCount();
+			for (final Future<List<RandomAccessibleInterval<T>>> future : futures) {
+				if (!collectBatch(future, results)) return null;
+			}
+			futures.clear();
+		}
+		logLatency();
+		if (results instanceof SpillingTileStore) {
+			final SpillingTileStore<T> store = (SpillingTileStore<T>) results;
+			if (store.getSpilledTiles() > 0) {
+				log("Spilled " + store.getSpilledTiles() + " of " + store.size() +
+					" tiles (" + store.getSpilledBytes() / 1024 / 1024 + " MB) to " +
+					spillDirectory);
+			}
+		}
+
+		return results;
+	}
+
+	private void logLatency() {
+		final long remainingTiles = tileIndex - firstBatchTiles;
+		if (firstBatchNanos < 0 || remainingTiles <= 0) return;
+		final long remainingNanos = System.nanoTime() - callStart - firstBatchNanos;
+		log("Remaining tiles took " + remainingNanos / remainingTiles / 1000000 +
+			" ms per tile on average");
+	}
+
+	private boolean submitBatch(final List<RandomAccessibleInterval<T>> batch,
+		final List<Future<List<RandomAccessibleInterval<T>>>> futures,
+		final List<RandomAccessibleInterval<T>> results,
+		final boolean multithreading) throws ExecutionException
+	{
+		final List<RandomAccessibleInterval<T>> tiles = new ArrayList<>(batch);
+		batch.clear();
+
+		// batches still in flight are not counted as done yet
+		final int firstTile = doneTileCount + (int) (submittedTiles - tileIndex) +
+			1;
+		submittedTiles += tiles.size();
+		final Future<List<RandomAccessibleInterval<T>>> future = pool.submit(
+			() -> executeBatchMeasured(tiles, firstTile));
+
+		if (tiles.size() > 1) {
+			log("Processing tiles " + firstTile + "-" + (firstTile + tiles.size() -
+				1) + "..");
+		}
+		else {
+			log("Processing tile " + firstTile + "..");
+		}
+
+		futures.add(future);
+		pendingFutures.add(future);
+
+		if (!multithreading) return collectBatch(future, results);
+
+		// limit the number of batches in flight, their inputs and outputs are
+		// kept in memory until they are collected
+		while (futures.size() > 2 * getParallelism()) {
+			if (!collectBatch(futures.remove(0), results)) return false;
+		}
+		return true;
+	}
+
+	private boolean collectBatch(
+		final Future<List<RandomAccessibleInterval<T>>> future,
+		final List<RandomAccessibleInterval<T>> results) throws ExecutionException
+	{
+		try {
+			final List<RandomAccessibleInterval<T>> res = future.get();
+			if (res == null) return false;
+			if (firstBatchNanos < 0) {
+				firstBatchNanos = System.nanoTime() - callStart;
+				firstBatchTiles = res.size();
+				log("First " + (res.size() > 1 ? res.size() + " tiles" : "tile") +
+					" took " + firstBatchNanos / 1000000 + " ms");
+			}
+			for (final RandomAccessibleInterval<T> tileResult : res) {
+				if (outputSink != null) {
+					final long start = System.nanoTime();
+					outputSink.write(tileIndex, tileResult);
+					recordLatency("merge", start);
+					release(tileResult);
 				}
-				catch (final InterruptedException exc) {
-					pool.shutdownNow();
-					fail();
-					return null;
+				else {
+					results.add(tileResult);
+					// the tile was copied to scratch storage
+					if (results.get(results.size() - 1) != tileResult) {
+						release(tileResult);
+					}
 				}
+				tileIndex++;
+				upTileCount();
 			}
+			return true;
+		}
+		catch (final IllegalArgumentException exc) {
+			cancelPendingFutures();
+			fail();
+			throw exc;
+		}
+		catch (final InterruptedException exc) {
+			cancelPendingFutures();
+			fail();
+			return false;
+		}
+		catch (final CancellationException exc) {
+			cancelPendingFutures();
+			return false;
+		}
+		catch (final ExecutionException exc) {
+			if (!(exc.getCause() instanceof CancellationException)) throw exc;
+			cancelPendingFutures();
+			return false;
 		}
+		finally {
+			pendingFutures.remove(future);
+		}
+	}
 
+	private List<RandomAccessibleInterval<T>> executeBatchMeasured(
+		final List<RandomAccessibleInterval<T>> tiles, final int firstTile)
+		throws Exception
+	{
+		final long start = System.nanoTime();
+		final long cpuStart = TaskMetrics.currentThreadCpuNanos();
+		final List<RandomAccessibleInterval<T>> results = executeBatchWithRecovery(
+			tiles, firstTile);
+		if (status == null || results == null) return results;
+		// tiles of a batch are run together, each gets the average latency
+		final long perTile = (System.nanoTime() - start) / Math.max(1, tiles
+			.size());
+		final TaskMetrics metrics = status.getMetrics();
+		for (int i = 0; i < tiles.size(); i++) {
+			metrics.recordLatency("tile", perTile);
+		}
+		if (cpuStart >= 0) {
+			metrics.addCpuNanos(TaskMetrics.currentThreadCpuNanos() - cpuStart);
+		}
+		metrics.addBytesIn(DatasetHelper.sizeInBytes(tiles));
+		metrics.addBytesOut(DatasetHelper.sizeInBytes(results));
+		return results;
+	}
+
+	/**
+	 * Runs a batch of tiles. If the network runs out of memory, the tiles are
+	 * processed one by one and a failing tile is split into smaller sub-tiles
+	 * whose results are stitched back to the shape of the original tile, so
+	 * finished tiles are kept and merging is not affected.
+	 */
+	private List<RandomAccessibleInterval<T>> executeBatchWithRecovery(
+		final List<RandomAccessibleInterval<T>> tiles, final int firstTile)
+		throws Exception
+	{
+		CancellationHelper.checkCanceled(this);
+		if (splitLevel.get() == 0 && tiles.size() > 1) {
+			try {
+				return executeBatch(tiles);
+			}
+			catch (final Exception | OutOfMemoryError e) {
+				if (!isOutOfMemory(e)) throw e;
+				tileBatchSize = 1;
+				logWarning("Out of memory exception occurred. Processing remaining " +
+					"tiles one by one..");
+			}
+		}
+		final List<RandomAccessibleInterval<T>> results = new ArrayList<>();
+		for (final RandomAccessibleInterval<T> tile : tiles) {
+			CancellationHelper.checkCanceled(this);
+			final RandomAccessibleInterval<T> res;
+			try {
+				res = executeTile(tile, 0, firstTile + results.size());
+			}
+			catch (final Exception | OutOfMemoryError e) {
+				results.forEach(this::release);
+				throw e;
+			}
+			if (res == null) {
+				results.forEach(this::release);
+				return null;
+			}
+			results.add(res);
+		}
+		return results;
+	}
+
+	private RandomAccessibleInterval<T> executeTile(
+		final RandomAccessibleInterval<T> tile, final int depth,
+		final int tileNumber) throws Exception
+	{
+		CancellationHelper.checkCanceled(this);
+		if (depth >= splitLevel.get()) {
+			try {
+				return execute(tile);
+			}
+			catch (final Exception | OutOfMemoryError e) {
+				if (!isOutOfMemory(e) || depth >= MAX_SPLIT_LEVEL || getSplitDim(
+					tile) < 0) throw e;
+				// parallel batches may have split further already
+				final int level = splitLevel.accumulateAndGet(depth + 1, Math::max);
+				logWarning("Out of memory exception occurred. Splitting tile " +
+					tileNumber + " and all remaining tiles into " + (1 << level) +
+					" parts..");
+			}
+		}
+		return executeSplit(tile, depth, tileNumber);
+	}
+
+	private RandomAccessibleInterval<T> executeSplit(
+		final RandomAccessibleInterval<T> tile, final int depth,
+		final int tileNumber) throws Exception
+	{
+		final int d = getSplitDim(tile);
+		if (d < 0) return execute(tile);
+		final int outD = getOutputDim(d);
+		final long length = tile.dimension(d);
+		final long cut = length / 2;
+		final long end1 = getSubTileEnd(length, cut);
+		final long start2 = getSubTileStart(length, cut);
+
+		final RandomAccessibleInterval<T> out1 = executeTile(subTile(tile, d, 0,
+			end1), depth + 1, tileNumber);
+		if (out1 == null) return null;
+		final RandomAccessibleInterval<T> out2;
+		try {
+			out2 = executeTile(subTile(tile, d, start2, length), depth + 1,
+				tileNumber);
+		}
+		catch (final Exception | OutOfMemoryError e) {
+			release(out1);
+			throw e;
+		}
+		if (out2 == null) {
+			release(out1);
+			return null;
+		}
+
+		if (out1.dimension(outD) != end1 || out2.dimension(
+			outD) != length - start2)
+		{
+			release(out1);
+			release(out2);
+			// not a memory problem, more tiles would not help
+			throw new IllegalStateException("Cannot stitch sub-tiles of tile " +
+				tileNumber + ", the network changes the output size");
+		}
+		// keep everything left of the cut from the first and everything right of
+		// it from the second sub-tile, each with enough context around the cut
+		final RandomAccessibleInterval<T> res = Views.concatenate(outD, subTile(
+			out1, outD, 0, cut), subTile(out2, outD, cut - start2, length - start2));
+		if (outputSink != null) {
+			synchronized (stitchedParts) {
+				stitchedParts.put(res, Arrays.asList(out1, out2));
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Recycles a tile result or, if it was stitched from sub-tiles, the results
+	 * of the sub-tiles.
+	 */
+	private void release(final RandomAccessibleInterval<T> tileResult) {
+		final List<RandomAccessibleInterval<T>> parts;
+		synchronized (stitchedParts) {
+			parts = stitchedParts.remove(tileResult);
+		}
+		if (parts == null) {
+			recycle(tileResult);
+			return;
+		}
+		for (final RandomAccessibleInterval<T> part : parts) {
+			release(part);
+		}
+	}
+
+	private RandomAccessibleInterval<T> subTile(
+		final RandomAccessibleInterval<T> tile, final int d, final long from,
+		final long to)
+	{
+		final long[] min = Intervals.minAsLongArray(tile);
+		final long[] max = Intervals.maxAsLongArray(tile);
+		min[d] = tile.min(d) + from;
+		max[d] = tile.min(d) + to - 1;
+		return Views.zeroMin(Views.interval(tile, min, max));
+	}
+
+	private long getSubTileEnd(final long length, final long cut) {
+		return Math.min(length, roundUp(cut + getContext(), getBlockMultiple()));
+	}
+
+	private long getSubTileStart(final long length, final long cut) {
+		return Math.max(0, length - roundUp(length - cut + getContext(),
+			getBlockMultiple()));
+	}
+
+	private static long roundUp(final long value, final long multiple) {
+		return (value + multiple - 1) / multiple * multiple;
+	}
+
+	/**
+	 * @return the largest dimension of the tile which is tiled with padding and
+	 *         which gets smaller when it is split, or -1 if there is none
+	 */
+	private int getSplitDim(final RandomAccessibleInterval<T> tile) {
+		if (!(tiledView instanceof AdvancedTiledView)) return -1;
+		final Tiling.TilingAction[] actions = ((AdvancedTiledView<T>) tiledView)
+			.getTilingActions();
+		if (actions == null) return -1;
+		int res = -1;
+		for (int d = 0; d < tile.numDimensions() && d < actions.length; d++) {
+			if (actions[d] != Tiling.TilingAction.TILE_WITH_PADDING) continue;
+			if (getOutputDim(d) < 0) continue;
+			final long length = tile.dimension(d);
+			final long cut = length / 2;
+			if (getSubTileEnd(length, cut) >= length || getSubTileStart(length,
+				cut) <= 0) continue;
+			if (res < 0 || length > tile.dimension(res)) res = d;
+		}
+		return res;
+	}
+
+	private int getOutputDim(final int inputDim) {
+		if (inputNode == null || outputNode == null) return -1;
+		final AxisType[] inputAxes = inputNode.getFinalAxesArray();
+		final AxisType[] outputAxes = outputNode.getFinalAxesArray();
+		if (inputDim >= inputAxes.length) return -1;
+		for (int i = 0; i < outputAxes.length; i++) {
+			if (inputAxes[inputDim].equals(outputAxes[i])) return i;
+		}
+		return -1;
+	}
+
+	private long getContext() {
+		return ((AdvancedTiledView<T>) tiledView).getTilingOverlap();
+	}
+
+	private long getBlockMultiple() {
+		return Math.max(1, ((AdvancedTiledView<T>) tiledView).getBlockMultiple());
+	}
+
+	/**
+	 * @return whether the error is a Java heap or TensorFlow resource exhaustion,
+	 *         TensorFlow reports the latter as "OOM when allocating tensor .."
+	 */
+	private static boolean isOutOfMemory(final Throwable e) {
+		if (e instanceof OutOfMemoryError) return true;
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			if (cause.getClass().getSimpleName().equals(
+				"ResourceExhaustedException")) return true;
+			if (cause.getMessage() != null && cause.getMessage().contains(
+				"OOM when allocating")) return true;
+		}
+		return false;
+	}
+
+	private void initPool() {
+		if (poolService != null) {
+			if (ownsPool && pool != null) pool.shutdown();
+			releasePool();
+			sessionReservation = poolService.reserve(PoolService.Pool.SESSION,
+				getParallelism());
+			pool = poolService.getPool(PoolService.Pool.SESSION);
+			ownsPool = false;
+		}
+		else if (pool == null || pool.isShutdown() ||
+			ownPoolSize != getParallelism())
+		{
+			if (ownsPool && pool != null) pool.shutdown();
+			ownPoolSize = getParallelism();
+			pool = Executors.newFixedThreadPool(ownPoolSize);
+			ownsPool = true;
+		}
+	}
+
+	private void releasePool() {
+		if (sessionReservation != null) {
+			sessionReservation.close();
+			sessionReservation = null;
+		}
+	}
+
+	private void cancelPendingFutures() {
+		synchronized (pendingFutures) {
+			for (final Future<?> future : pendingFutures) {
+				future.cancel(true);
+			}
+			pendingFutures.clear();
+		}
+	}
+
+	private static boolean equalDimensions(final Interval a, final Interval b) {
+		if (a.numDimensions() != b.numDimensions()) return false;
+		for (int d = 0; d < a.numDimensions(); d++) {
+			if (a.dimension(d) != b.dimension(d)) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public List<RandomAccessibleInterval<T>> executeBatch(
+		final List<RandomAccessibleInterval<T>> tiles) throws Exception
+	{
+		final List<RandomAccessibleInterval<T>> results = new ArrayList<>();
+		for (final RandomAccessibleInterval<T> tile : tiles) {
+			final RandomAccessibleInterval<T> res = execute(tile);
+			if (res == null) return null;
+			results.add(res);
+		}
 		return results;
 	}
 
+	@Override
+	public long warmUp(final long[] nodeShape) throws Exception {
+		return -1;
+	}
+
+	/**
+	 * @return how many tile batches can be executed at the same time
+	 */
+	protected int getParallelism() {
+		return 1;
+	}
+
+	/**
+	 * Records how long a stage of processing a tile took since {@code start},
+	 * as returned by {@link System#nanoTime()}.
+	 */
+	protected void recordLatency(final String stage, final long start) {
+		if (status != null) {
+			status.getMetrics().recordLatency(stage, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Called once a tile result has been written to the output sink and is not
+	 * accessed anymore, so its memory can be reused.
+	 */
+	protected void recycle(final RandomAccessibleInterval<T> tileResult) {}
+
 	@Override
 	public abstract RandomAccessibleInterval<T> execute(
 		RandomAccessibleInterval<T> tile) throws Exception;
@@ -159,8 +642,15 @@ public abstract class DefaultNetwork<T extends RealType<T>> implements
 	@Override
 	public abstract boolean isInitialized();
 
+	/**
+	 * Prepares the network for a new run. A cancellation of the previous run is
+	 * reset here and not when the run starts, so a cancellation arriving before
+	 * the run is scheduled is not lost.
+	 */
 	@Override
 	public void resetTileCount() {
+		canceled = false;
+		cancelReason = null;
 		doneTileCount = 0;
 		status.setCurrentStep(doneTileCount);
 	}
@@ -175,6 +665,34 @@ public abstract class DefaultNetwork<T extends RealType<T>> implements
 		this.tiledView = tiledView;
 	}
 
+	@Override
+	public void setPoolService(final PoolService poolService) {
+		this.poolService = poolService;
+	}
+
+	@Override
+	public void setOutputSink(final OutputSink<T> outputSink) {
+		this.outputSink = outputSink;
+	}
+
+	/**
+	 * Processed tiles which are not written to an output sink are moved to
+	 * memory mapped files in the directory once the used heap exceeds the
+	 * threshold.
+	 *
+	 * @param directory scratch directory, null to keep all tiles on the heap
+	 * @param heapThreshold share of the maximum heap
+	 */
+	public void setSpilling(final File directory, final double heapThreshold) {
+		this.spillDirectory = directory;
+		this.spillHeapThreshold = heapThreshold;
+	}
+
+	@Override
+	public void setTileBatchSize(final int tileBatchSize) {
+		this.tileBatchSize = Math.max(1, tileBatchSize);
+	}
+
 	protected void log(final String text) {
 		if (status != null) {
 			status.log(text);
@@ -183,6 +701,14 @@ public abstract class DefaultNetwork<T extends RealType<T>> implements
 		}
 	}
 
+	protected void logWarning(final String text) {
+		if (status != null) {
+			status.logWarning(text);
+		}else {
+			System.out.println("[WARNING] " + text);
+		}
+	}
+
 	protected void logError(final String text) {
 		if (status != null) {
 			status.logError(text);
@@ -197,17 +723,19 @@ public abstract class DefaultNetwork<T extends RealType<T>> implements
 
 	@Override
 	public void cancel(String reason) {
-		pool.shutdownNow();
+		cancelReason = reason;
+		canceled = true;
+		cancelPendingFutures();
 	}
 
 	@Override
 	public boolean isCanceled() {
-		return false;
+		return canceled;
 	}
 
 	@Override
 	public String getCancelReason() {
-		return null;
+		return cancelReason;
 	}
 
 	/**
@@ -235,10 +763,16 @@ public abstract class DefaultNetwork<T extends RealType<T>> implements
 
 	@Override
 	public void dispose() {
-		if (pool != null) {
+		cancelPendingFutures();
+		synchronized (stitchedParts) {
+			stitchedParts.clear();
+		}
+		releasePool();
+		if (pool != null && ownsPool) {
 			pool.shutdown();
 		}
 		pool = null;
+		ownsPool = false;
 	}
 
 	@Override
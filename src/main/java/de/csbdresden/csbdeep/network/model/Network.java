@@ -10,6 +10,8 @@ import org.scijava.Disposable;
 
 import de.csbdresden.csbdeep.imglib2.TiledView;
 import de.csbdresden.csbdeep.task.Task;
+import de.csbdresden.csbdeep.thread.PoolService;
+import de.csbdresden.csbdeep.tiling.OutputSink;
 import net.imagej.Dataset;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.type.numeric.RealType;
@@ -30,6 +32,21 @@ public interface Network<T extends RealType<T>> extends
 	RandomAccessibleInterval<T> execute(RandomAccessibleInterval<T> tile)
 		throws Exception;
 
+	/**
+	 * Executes the network on a list of tiles with equal dimensions and returns
+	 * one result per tile, in the same order.
+	 */
+	List<RandomAccessibleInterval<T>> executeBatch(
+		List<RandomAccessibleInterval<T>> tiles) throws Exception;
+
+	/**
+	 * Runs the loaded model once on a dummy input of the given node shape.
+	 *
+	 * @return duration of the run in nanoseconds, or -1 if warming up is not
+	 *         supported
+	 */
+	long warmUp(long[] nodeShape) throws Exception;
+
 	Task getStatus();
 
 	ImageTensor getInputNode();
@@ -48,6 +65,21 @@ public interface Network<T extends RealType<T>> extends
 
 	void setTiledView(TiledView<T> tiledView);
 
+	/**
+	 * Set how many tiles of equal size should be stacked into the batch
+	 * dimension of the input tensor and processed in one session run. Default
+	 * value is 1.
+	 */
+	void setTileBatchSize(int tileBatchSize);
+
+	void setPoolService(PoolService poolService);
+
+	/**
+	 * If set, processed tiles are written to the sink right away instead of
+	 * being returned by {@link #call()}.
+	 */
+	void setOutputSink(OutputSink<T> outputSink);
+
 	/**
 	 * Set if singleton dimensions of the output image should be dropped. If the
 	 * tile size in one dimension is only one this could remove an important
@@ -0,0 +1,421 @@
+package de.csbdresden.csbdeep.network.model.tensorflow;
+
+import java.nio.FloatBuffer;
+import java.util.List;
+
+import org.tensorflow.Tensor;
+
+import de.csbdresden.csbdeep.imglib2.ViewUnwrapper;
+import de.csbdresden.csbdeep.normalize.NormalizationConverter;
+import de.csbdresden.csbdeep.util.CancellationHelper;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.converter.Converter;
+import net.imglib2.converter.RealFloatConverter;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.GenericByteType;
+import net.imglib2.type.numeric.integer.GenericIntType;
+import net.imglib2.type.numeric.integer.GenericShortType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+
+/**
+ * Fast path for creating float tensors from views on {@link ArrayImg}s and
+ * {@link PlanarImg}s. Instead of copying pixel by pixel through the view
+ * stack, rows are copied straight from the primitive arrays. If the row
+ * direction of the tensor is not contiguous in the source, the copy is done as
+ * a blocked transpose. A {@link NormalizationConverter} in the view is applied
+ * to the copied values, so lazily normalized inputs take the fast path too.
+ */
+class ArrayTensorConverter {
+
+	private static final int BLOCK_SIZE = 32;
+
+	/**
+	 * Reads a row of values from a primitive array and converts them to float.
+	 */
+	private interface RowReader {
+
+		void read(Object array, long offset, long step, int length,
+			FloatBuffer dst, int dstOffset, int dstStep);
+	}
+
+	private final RowReader reader;
+	private final Object[] planes;
+	// per source dimension: step of the array index and of the plane index
+	private final long[] indexSteps;
+	private final long[] planeSteps;
+
+	private ArrayTensorConverter(final RowReader reader, final Object[] planes,
+		final long[] indexSteps, final long[] planeSteps)
+	{
+		this.reader = reader;
+		this.planes = planes;
+		this.indexSteps = indexSteps;
+		this.planeSteps = planeSteps;
+	}
+
+	/**
+	 * @param mapping tensor dimension of each image dimension
+	 * @return the tensor or null if the fast path does not support the image
+	 */
+	static <T extends RealType<T>> Tensor<Float> tensor(
+		final RandomAccessibleInterval<T> image, final int[] mapping)
+	{
+		return tensor(image, mapping, null);
+	}
+
+	/**
+	 * @param mapping tensor dimension of each image dimension
+	 * @param pool provides the buffer the values are collected in, can be null
+	 * @return the tensor or null if the fast path does not support the image
+	 */
+	static <T extends RealType<T>> Tensor<Float> tensor(
+		final RandomAccessibleInterval<T> image, final int[] mapping,
+		final TensorBufferPool pool)
+	{
+		if (!(Util.getTypeFromInterval(image) instanceof FloatType)) return null;
+		if (Intervals.numElements(image) > Integer.MAX_VALUE) return null;
+		final ViewUnwrapper.UnwrappedView view = ViewUnwrapper.unwrap(image,
+			image);
+		if (!supportsConverters(view.getConverters())) return null;
+		final ArrayTensorConverter converter = create(view.getSource());
+		if (converter == null) return null;
+		return converter.copy(image, view, mapping, pool, getNormalization(view
+			.getConverters()));
+	}
+
+	private static boolean supportsConverters(
+		final List<Converter<?, ?>> converters)
+	{
+		// converters not changing the real value are ignored
+		int normalizations = 0;
+		for (final Converter<?, ?> converter : converters) {
+			if (converter instanceof NormalizationConverter) normalizations++;
+			else if (!(converter instanceof RealFloatConverter)) return false;
+		}
+		return normalizations <= 1;
+	}
+
+	private static NormalizationConverter<?> getNormalization(
+		final List<Converter<?, ?>> converters)
+	{
+		for (final Converter<?, ?> converter : converters) {
+			if (converter instanceof NormalizationConverter) {
+				return (NormalizationConverter<?>) converter;
+			}
+		}
+		return null;
+	}
+
+	private static ArrayTensorConverter create(final RandomAccessible<?> source) {
+		if (source instanceof ArrayImg) {
+			final ArrayImg<?, ?> img = (ArrayImg<?, ?>) source;
+			final Object[] planes = { storageArray(img.update(null)) };
+			final RowReader reader = createReader(img.firstElement(), planes);
+			if (reader == null) return null;
+			final long[] indexSteps = new long[img.numDimensions()];
+			long step = 1;
+			for (int d = 0; d < indexSteps.length; d++) {
+				indexSteps[d] = step;
+				step *= img.dimension(d);
+			}
+			return new ArrayTensorConverter(reader, planes, indexSteps,
+				new long[indexSteps.length]);
+		}
+		if (source instanceof PlanarImg) {
+			final PlanarImg<?, ?> img = (PlanarImg<?, ?>) source;
+			final Object[] planes = new Object[img.numSlices()];
+			for (int i = 0; i < planes.length; i++) {
+				planes[i] = storageArray(img.getPlane(i));
+			}
+			final RowReader reader = createReader(img.firstElement(), planes);
+			if (reader == null) return null;
+			final int n = img.numDimensions();
+			final long[] indexSteps = new long[n];
+			final long[] planeSteps = new long[n];
+			if (n > 0) indexSteps[0] = 1;
+			if (n > 1) indexSteps[1] = img.dimension(0);
+			long step = 1;
+			for (int d = 2; d < n; d++) {
+				planeSteps[d] = step;
+				step *= img.dimension(d);
+			}
+			return new ArrayTensorConverter(reader, planes, indexSteps, planeSteps);
+		}
+		return null;
+	}
+
+	private static Object storageArray(final Object access) {
+		return access instanceof ArrayDataAccess ? ((ArrayDataAccess<?>) access)
+			.getCurrentStorageArray() : null;
+	}
+
+	private static boolean allInstances(final Object[] planes,
+		final Class<?> arrayClass)
+	{
+		for (final Object plane : planes) {
+			if (!arrayClass.isInstance(plane)) return false;
+		}
+		return true;
+	}
+
+	private static RowReader createReader(final Object type,
+		final Object[] planes)
+	{
+		if (type instanceof FloatType && allInstances(planes, float[].class)) {
+			return (array, offset, step, length, dst, dstOffset, dstStep) -> {
+				final float[] a = (float[]) array;
+				if (step == 1 && dstStep == 1) {
+					dst.position(dstOffset);
+					dst.put(a, (int) offset, length);
+					return;
+				}
+				for (int i = 0; i < length; i++) {
+					dst.put(dstOffset + i * dstStep, a[(int) (offset + i * step)]);
+				}
+			};
+		}
+		if (type instanceof DoubleType && allInstances(planes,
+			double[].class))
+		{
+			return (array, offset, step, length, dst, dstOffset, dstStep) -> {
+				final double[] a = (double[]) array;
+				for (int i = 0; i < length; i++) {
+					dst.put(dstOffset + i * dstStep, (float) a[(int) (offset + i *
+						step)]);
+				}
+			};
+		}
+		if (type instanceof UnsignedByteType && allInstances(planes,
+			byte[].class))
+		{
+			return (array, offset, step, length, dst, dstOffset, dstStep) -> {
+				final byte[] a = (byte[]) array;
+				for (int i = 0; i < length; i++) {
+					dst.put(dstOffset + i * dstStep, a[(int) (offset + i * step)] &
+						0xff);
+				}
+			};
+		}
+		if (type instanceof GenericByteType && allInstances(planes,
+			byte[].class))
+		{
+			return (array, offset, step, length, dst, dstOffset, dstStep) -> {
+				final byte[] a = (byte[]) array;
+				for (int i = 0; i < length; i++) {
+					dst.put(dstOffset + i * dstStep, a[(int) (offset + i * step)]);
+				}
+			};
+		}
+		if (type instanceof UnsignedShortType && allInstances(planes,
+			short[].class))
+		{
+			return (array, offset, step, length, dst, dstOffset, dstStep) -> {
+				final short[] a = (short[]) array;
+				for (int i = 0; i < length; i++) {
+					dst.put(dstOffset + i * dstStep, a[(int) (offset + i * step)] &
+						0xffff);
+				}
+			};
+		}
+		if (type instanceof GenericShortType && allInstances(planes,
+			short[].class))
+		{
+			return (array, offset, step, length, dst, dstOffset, dstStep) -> {
+				final short[] a = (short[]) array;
+				for (int i = 0; i < length; i++) {
+					dst.put(dstOffset + i * dstStep, a[(int) (offset + i * step)]);
+				}
+			};
+		}
+		if (type instanceof UnsignedIntType && allInstances(planes,
+			int[].class))
+		{
+			return (array, offset, step, length, dst, dstOffset, dstStep) -> {
+				final int[] a = (int[]) array;
+				for (int i = 0; i < length; i++) {
+					dst.put(dstOffset + i * dstStep, a[(int) (offset + i * step)] &
+						0xffffffffL);
+				}
+			};
+		}
+		if (type instanceof GenericIntType && allInstances(planes,
+			int[].class))
+		{
+			return (array, offset, step, length, dst, dstOffset, dstStep) -> {
+				final int[] a = (int[]) array;
+				for (int i = 0; i < length; i++) {
+					dst.put(dstOffset + i * dstStep, a[(int) (offset + i * step)]);
+				}
+			};
+		}
+		return null;
+	}
+
+	private Tensor<Float> copy(final RandomAccessibleInterval<?> image,
+		final ViewUnwrapper.UnwrappedView view, final int[] mapping,
+		final TensorBufferPool pool, final NormalizationConverter<?> normalization)
+	{
+		final int n = image.numDimensions();
+		if (mapping.length != n) return null;
+
+		// tensor shape and steps, the last tensor dimension is contiguous
+		final long[] shape = new long[n];
+		final int[] imageDims = new int[n];
+		for (int d = 0; d < n; d++) {
+			shape[mapping[d]] = image.dimension(d);
+			imageDims[mapping[d]] = d;
+		}
+		final long[] tensorSteps = new long[n];
+		long size = 1;
+		for (int t = n - 1; t >= 0; t--) {
+			tensorSteps[t] = size;
+			size *= shape[t];
+		}
+		FloatBuffer data = pool == null ? null : pool.acquireFloat(shape);
+		if (data == null) data = FloatBuffer.allocate((int) size);
+		if (size == 0) return create(shape, data, pool);
+
+		// steps in the source arrays for each image dimension
+		final long[] indexStep = new long[n];
+		final long[] planeStep = new long[n];
+		for (int d = 0; d < n; d++) {
+			for (int s = 0; s < view.numSourceDimensions(); s++) {
+				indexStep[d] += view.getStep(s, d) * indexSteps[s];
+				planeStep[d] += view.getStep(s, d) * planeSteps[s];
+			}
+		}
+		final long[] min = new long[n];
+		image.min(min);
+		final long[] sourceMin = new long[view.numSourceDimensions()];
+		view.toSource(min, sourceMin);
+		long baseIndex = 0;
+		long basePlane = 0;
+		for (int s = 0; s < sourceMin.length; s++) {
+			baseIndex += sourceMin[s] * indexSteps[s];
+			basePlane += sourceMin[s] * planeSteps[s];
+		}
+
+		// Rows run along the image dimension of the last tensor dimension. If
+		// they are not contiguous in the source but another dimension is, blocks
+		// are read along that dimension and transposed into the tensor.
+		final int rowDim = imageDims[n - 1];
+		int blockDim = -1;
+		if (!isContiguous(indexStep, planeStep, rowDim)) {
+			for (int d = 0; d < n; d++) {
+				if (d != rowDim && image.dimension(d) > 1 && isContiguous(indexStep,
+					planeStep, d))
+				{
+					blockDim = d;
+					break;
+				}
+			}
+		}
+
+		final long[] position = new long[n];
+		do {
+			// stop early if the run is canceled while copying a large tile
+			CancellationHelper.checkCanceled(null);
+			long index = baseIndex;
+			long plane = basePlane;
+			long tensorIndex = 0;
+			for (int d = 0; d < n; d++) {
+				index += position[d] * indexStep[d];
+				plane += position[d] * planeStep[d];
+				tensorIndex += position[d] * tensorSteps[mapping[d]];
+			}
+			if (blockDim < 0) {
+				readLine(index, plane, indexStep[rowDim], planeStep[rowDim],
+					(int) image.dimension(rowDim), data, (int) tensorIndex, 1);
+			}
+			else {
+				readBlocks(index, plane, indexStep, planeStep, tensorSteps[mapping[
+					blockDim]], (int) image.dimension(blockDim), rowDim, (int) image
+						.dimension(rowDim), data, (int) tensorIndex);
+			}
+		}
+		while (next(position, image, rowDim, blockDim));
+
+		if (normalization != null) {
+			for (int i = 0; i < size; i++) {
+				data.put(i, normalization.normalize(data.get(i)));
+			}
+		}
+		return create(shape, data, pool);
+	}
+
+	private static Tensor<Float> create(final long[] shape,
+		final FloatBuffer data, final TensorBufferPool pool)
+	{
+		// the tensor copies the values, the buffer can be reused right away
+		data.clear();
+		final Tensor<Float> tensor = Tensor.create(shape, data);
+		if (pool != null) pool.releaseFloat(shape, data);
+		return tensor;
+	}
+
+	private static boolean isContiguous(final long[] indexStep,
+		final long[] planeStep, final int d)
+	{
+		return indexStep[d] == 1 && planeStep[d] == 0;
+	}
+
+	/**
+	 * Copies a block of lines along the contiguous source dimension, one line
+	 * per row element, so that the writes into the tensor stay close together.
+	 */
+	private void readBlocks(final long index, final long plane,
+		final long[] indexStep, final long[] planeStep, final long tensorStep,
+		final int blockLength, final int rowDim, final int rowLength,
+		final FloatBuffer data, final int tensorIndex)
+	{
+		for (int b = 0; b < blockLength; b += BLOCK_SIZE) {
+			final int length = Math.min(BLOCK_SIZE, blockLength - b);
+			for (int r = 0; r < rowLength; r++) {
+				readLine(index + b + r * indexStep[rowDim], plane + r *
+					planeStep[rowDim], 1, 0, length, data, (int) (tensorIndex + b *
+						tensorStep + r), (int) tensorStep);
+			}
+		}
+	}
+
+	private void readLine(final long index, final long plane, final long step,
+		final long planeStep, final int length, final FloatBuffer data,
+		final int tensorIndex, final int tensorStep)
+	{
+		if (planeStep == 0) {
+			reader.read(planes[(int) plane], index, step, length, data, tensorIndex,
+				tensorStep);
+			return;
+		}
+		for (int i = 0; i < length; i++) {
+			reader.read(planes[(int) (plane + i * planeStep)], index + i * step, 0,
+				1, data, tensorIndex + i * tensorStep, 1);
+		}
+	}
+
+	/**
+	 * Moves to the next line start, skipping the row and block dimension.
+	 */
+	private static boolean next(final long[] position,
+		final RandomAccessibleInterval<?> image, final int rowDim,
+		final int blockDim)
+	{
+		for (int d = 0; d < position.length; d++) {
+			if (d == rowDim || d == blockDim) continue;
+			if (++position[d] < image.dimension(d)) return true;
+			position[d] = 0;
+		}
+		return false;
+	}
+
+}
@@ -29,14 +29,20 @@
 
 package de.csbdresden.csbdeep.network.model.tensorflow;
 
+import java.nio.FloatBuffer;
+
 import org.tensorflow.DataType;
 import org.tensorflow.Tensor;
 
 import de.csbdresden.csbdeep.converter.*;
+import de.csbdresden.csbdeep.imglib2.FloatBufferAccess;
 import net.imagej.tensorflow.Tensors;
+import net.imglib2.FinalInterval;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.converter.Converters;
 import net.imglib2.converter.RealFloatConverter;
+import net.imglib2.img.Img;
+import net.imglib2.transform.integer.MixedTransform;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.integer.ByteType;
 import net.imglib2.type.numeric.integer.IntType;
@@ -44,6 +50,7 @@ import net.imglib2.type.numeric.integer.LongType;
 import net.imglib2.type.numeric.integer.UnsignedShortType;
 import net.imglib2.type.numeric.real.DoubleType;
 import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.MixedTransformView;
 import net.imglib2.view.Views;
 
 public class DatasetTensorFlowConverter {
@@ -52,10 +59,35 @@ public class DatasetTensorFlowConverter {
 		RandomAccessibleInterval<T> tensorToDataset(final Tensor<U> tensor,
 			final T res, final int[] mapping, final boolean dropSingletonDims)
 	{
+		return tensorToDataset(tensor, res, mapping, dropSingletonDims, null);
+	}
+
+	/**
+	 * @param buffer if not null and the tensor holds floats, the values are
+	 *          written into this buffer and the result is a view on it. The
+	 *          buffer needs exactly as many elements as the tensor.
+	 */
+	public static <T extends RealType<T>, U extends RealType<U>>
+		RandomAccessibleInterval<T> tensorToDataset(final Tensor<U> tensor,
+			final T res, final int[] mapping, final boolean dropSingletonDims,
+			final FloatBuffer buffer)
+	{
 
 		final RandomAccessibleInterval<T> outImg;
 
-		if (tensor.dataType().equals(DataType.DOUBLE)) {
+		if (buffer != null && tensor.dataType().equals(DataType.FLOAT) && buffer
+			.capacity() == tensor.numElements())
+		{
+			final RandomAccessibleInterval<FloatType> img = wrapFloats(tensor,
+				buffer, mapping);
+			if (res instanceof FloatType) {
+				outImg = (RandomAccessibleInterval) img;
+			}
+			else {
+				outImg = Converters.convert(img, new FloatRealConverter<T>(), res);
+			}
+		}
+		else if (tensor.dataType().equals(DataType.DOUBLE)) {
 			if (res instanceof DoubleType) {
 				outImg = Tensors.imgDouble((Tensor) tensor, mapping);
 			}
@@ -109,11 +141,54 @@ public class DatasetTensorFlowConverter {
 		return dropSingletonDims ? Views.dropSingletonDimensions(outImg) : outImg;
 	}
 
+	/**
+	 * Copies the tensor values into the buffer and returns an image on it whose
+	 * dimension i is the tensor dimension mapping[i].
+	 */
+	private static RandomAccessibleInterval<FloatType> wrapFloats(
+		final Tensor<?> tensor, final FloatBuffer buffer, final int[] mapping)
+	{
+		buffer.clear();
+		tensor.writeTo(buffer);
+		buffer.clear();
+		final long[] shape = tensor.shape();
+		final int n = shape.length;
+		// the last tensor dimension is the fastest one, i.e. the first image
+		// dimension of the buffer
+		final long[] reversed = new long[n];
+		for (int i = 0; i < n; i++) {
+			reversed[i] = shape[n - 1 - i];
+		}
+		final Img<FloatType> img = FloatBufferAccess.wrap(buffer, reversed);
+		final MixedTransform transform = new MixedTransform(n, n);
+		final int[] component = new int[n];
+		final long[] dims = new long[n];
+		for (int i = 0; i < n; i++) {
+			component[n - 1 - mapping[i]] = i;
+			dims[i] = shape[mapping[i]];
+		}
+		transform.setComponentMapping(component);
+		return Views.interval(new MixedTransformView<>(img, transform),
+			new FinalInterval(dims));
+	}
+
 	public static <T extends RealType<T>> Tensor datasetToTensor(
 		RandomAccessibleInterval<T> image, final int[] mapping)
 	{
+		return datasetToTensor(image, mapping, null);
+	}
+
+	/**
+	 * @param pool provides the buffers for the fast path of
+	 *          {@link ArrayTensorConverter}, can be null
+	 */
+	public static <T extends RealType<T>> Tensor datasetToTensor(
+		RandomAccessibleInterval<T> image, final int[] mapping,
+		final TensorBufferPool pool)
+	{
 
-		Tensor tensor;
+		Tensor tensor = ArrayTensorConverter.tensor(image, mapping, pool);
+		if (tensor != null) return tensor;
 		try {
 			tensor = Tensors.tensor(image, mapping);
 		}
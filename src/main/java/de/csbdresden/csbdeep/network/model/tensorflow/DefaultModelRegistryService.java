@@ -0,0 +1,77 @@
+package de.csbdresden.csbdeep.network.model.tensorflow;
+
+import java.io.IOException;
+
+import org.scijava.log.LogService;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.prefs.PrefService;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+import org.tensorflow.SavedModelBundle;
+
+@Plugin(type = Service.class)
+public class DefaultModelRegistryService extends AbstractService implements
+	ModelRegistryService
+{
+
+	private static final String BUDGET_KEY = "modelRegistryBudget";
+	private static final long DEFAULT_BUDGET = 1024L * 1024L * 1024L;
+
+	@Parameter
+	private PrefService prefService;
+
+	@Parameter
+	private LogService log;
+
+	private ModelCache<SavedModelBundle> cache;
+
+	@Override
+	public void initialize() {
+		cache = new ModelCache<>(this::getMemoryBudget, log);
+	}
+
+	@Override
+	public SavedModelBundle acquire(final String key, final BundleLoader loader,
+		final long estimatedBytes) throws IOException
+	{
+		return cache.acquire(key, loader::load, estimatedBytes);
+	}
+
+	@Override
+	public void release(final String key) {
+		cache.release(key);
+	}
+
+	@Override
+	public boolean contains(final String key) {
+		return cache.contains(key);
+	}
+
+	@Override
+	public void evictUnused() {
+		cache.evictUnused();
+	}
+
+	@Override
+	public void setMemoryBudget(final long bytes) {
+		prefService.put(getClass(), BUDGET_KEY, Math.max(0, bytes));
+		cache.evict();
+	}
+
+	@Override
+	public long getMemoryBudget() {
+		return prefService.getLong(getClass(), BUDGET_KEY, DEFAULT_BUDGET);
+	}
+
+	@Override
+	public long getUsedMemory() {
+		return cache.getUsedMemory();
+	}
+
+	@Override
+	public void dispose() {
+		cache.dispose();
+	}
+
+}
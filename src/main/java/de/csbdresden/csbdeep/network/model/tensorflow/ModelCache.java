@@ -0,0 +1,175 @@
+
+package de.csbdresden.csbdeep.network.model.tensorflow;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.LongSupplier;
+
+import org.scijava.log.LogService;
+
+/**
+ * Reference counted, least recently used cache of loaded models with a memory
+ * budget, see {@link ModelRegistryService}. Models are loaded without holding
+ * the lock of the cache, concurrent requests of the same key wait for the
+ * running load instead of loading the model again.
+ */
+class ModelCache<M extends AutoCloseable> {
+
+	interface Loader<M> {
+
+		M load() throws IOException;
+	}
+
+	private static class Entry<M> {
+
+		final M model;
+		final long bytes;
+		int references = 0;
+
+		Entry(final M model, final long bytes) {
+			this.model = model;
+			this.bytes = bytes;
+		}
+	}
+
+	private final LongSupplier budget;
+	private final LogService log;
+
+	// access order, least recently used entries first
+	private final Map<String, Entry<M>> entries = new LinkedHashMap<>(16, 0.75f,
+		true);
+	private final Map<String, FutureTask<M>> loading = new HashMap<>();
+	private long usedMemory = 0;
+
+	ModelCache(final LongSupplier budget, final LogService log) {
+		this.budget = budget;
+		this.log = log;
+	}
+
+	M acquire(final String key, final Loader<M> loader,
+		final long estimatedBytes) throws IOException
+	{
+		while (true) {
+			final FutureTask<M> load;
+			final boolean owner;
+			synchronized (this) {
+				final Entry<M> entry = entries.get(key);
+				if (entry != null) {
+					log.debug("Reusing loaded model " + key);
+					entry.references++;
+					return entry.model;
+				}
+				final FutureTask<M> running = loading.get(key);
+				owner = running == null;
+				load = owner ? new FutureTask<>(loader::load) : running;
+				if (owner) loading.put(key, load);
+			}
+			if (!owner) {
+				// the entry is published by the loading thread, look it up again
+				if (get(load) == null) return null;
+				continue;
+			}
+			load.run();
+			synchronized (this) {
+				loading.remove(key);
+				final M model = get(load);
+				if (model == null) return null;
+				final Entry<M> entry = new Entry<>(model, Math.max(0,
+					estimatedBytes));
+				entries.put(key, entry);
+				usedMemory += entry.bytes;
+				entry.references++;
+				evict();
+				return model;
+			}
+		}
+	}
+
+	synchronized void release(final String key) {
+		final Entry<M> entry = entries.get(key);
+		if (entry == null) return;
+		entry.references = Math.max(0, entry.references - 1);
+		evict();
+	}
+
+	synchronized boolean contains(final String key) {
+		return entries.containsKey(key);
+	}
+
+	synchronized int getReferences(final String key) {
+		final Entry<M> entry = entries.get(key);
+		return entry == null ? 0 : entry.references;
+	}
+
+	synchronized void evictUnused() {
+		final Iterator<Entry<M>> iterator = entries.values().iterator();
+		while (iterator.hasNext()) {
+			final Entry<M> entry = iterator.next();
+			if (entry.references == 0) {
+				close(entry);
+				iterator.remove();
+			}
+		}
+	}
+
+	synchronized long getUsedMemory() {
+		return usedMemory;
+	}
+
+	synchronized void evict() {
+		final long limit = budget.getAsLong();
+		final Iterator<Map.Entry<String, Entry<M>>> iterator = entries.entrySet()
+			.iterator();
+		while (usedMemory > limit && iterator.hasNext()) {
+			final Map.Entry<String, Entry<M>> next = iterator.next();
+			if (next.getValue().references > 0) continue;
+			log.debug("Closing model " + next.getKey() + " to stay within budget");
+			close(next.getValue());
+			iterator.remove();
+		}
+	}
+
+	synchronized void dispose() {
+		for (final Entry<M> entry : entries.values()) {
+			close(entry);
+		}
+		entries.clear();
+	}
+
+	private void close(final Entry<M> entry) {
+		usedMemory -= entry.bytes;
+		try {
+			entry.model.close();
+		}
+		catch (final Exception e) {
+			log.warn("Could not close model: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return the loaded model, rethrowing exceptions of the loader
+	 */
+	private static <M> M get(final FutureTask<M> load) throws IOException {
+		try {
+			return load.get();
+		}
+		catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while loading model");
+		}
+		catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof IOException) throw (IOException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+
+}
@@ -0,0 +1,45 @@
+package de.csbdresden.csbdeep.network.model.tensorflow;
+
+import java.io.IOException;
+
+import org.tensorflow.SavedModelBundle;
+
+import net.imagej.ImageJService;
+
+/**
+ * Keeps loaded {@link SavedModelBundle}s warm across command invocations.
+ * Bundles are reference counted; unreferenced bundles stay loaded until the
+ * memory budget is exceeded and are then closed in least recently used order.
+ */
+public interface ModelRegistryService extends ImageJService {
+
+	interface BundleLoader {
+
+		SavedModelBundle load() throws IOException;
+	}
+
+	/**
+	 * Returns the bundle registered for the key, loading it with the loader if
+	 * it is not registered yet. Every call has to be paired with a call of
+	 * {@link #release(String)}. Loading does not block calls for other keys,
+	 * concurrent calls for the same key wait for a single load.
+	 */
+	SavedModelBundle acquire(String key, BundleLoader loader,
+		long estimatedBytes) throws IOException;
+
+	void release(String key);
+
+	boolean contains(String key);
+
+	/**
+	 * Closes all bundles which are not in use.
+	 */
+	void evictUnused();
+
+	void setMemoryBudget(long bytes);
+
+	long getMemoryBudget();
+
+	long getUsedMemory();
+
+}
@@ -0,0 +1,120 @@
+package de.csbdresden.csbdeep.network.model.tensorflow;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.tensorflow.DataType;
+
+/**
+ * Recycles direct buffers used to create input tensors and to read output
+ * tensors. All tiles of a run have the same shape, so after the first tiles
+ * no new buffers have to be allocated.
+ */
+public class TensorBufferPool {
+
+	private static final int DEFAULT_MAX_PER_KEY = 4;
+
+	private final Map<Key, Deque<FloatBuffer>> buffers = new HashMap<>();
+	private final int maxPerKey;
+	private long allocations = 0;
+	private long reuses = 0;
+
+	public TensorBufferPool() {
+		this(DEFAULT_MAX_PER_KEY);
+	}
+
+	/**
+	 * @param maxPerKey maximum number of idle buffers kept for each shape
+	 */
+	public TensorBufferPool(final int maxPerKey) {
+		this.maxPerKey = Math.max(1, maxPerKey);
+	}
+
+	/**
+	 * @return a cleared buffer with exactly as many elements as the shape, or
+	 *         null if the shape is too large for a single buffer
+	 */
+	public synchronized FloatBuffer acquireFloat(final long[] shape) {
+		final long size = numElements(shape);
+		if (size < 0 || size > Integer.MAX_VALUE / Float.BYTES) return null;
+		final Deque<FloatBuffer> idle = buffers.get(new Key(DataType.FLOAT,
+			shape));
+		if (idle != null && !idle.isEmpty()) {
+			reuses++;
+			final FloatBuffer buffer = idle.pop();
+			buffer.clear();
+			return buffer;
+		}
+		allocations++;
+		return ByteBuffer.allocateDirect((int) size * Float.BYTES).order(ByteOrder
+			.nativeOrder()).asFloatBuffer();
+	}
+
+	/**
+	 * Returns a buffer acquired for the given shape to the pool.
+	 */
+	public synchronized void releaseFloat(final long[] shape,
+		final FloatBuffer buffer)
+	{
+		if (buffer == null || !buffer.isDirect() || buffer.capacity() != numElements(
+			shape)) return;
+		final Deque<FloatBuffer> idle = buffers.computeIfAbsent(new Key(
+			DataType.FLOAT, shape), key -> new ArrayDeque<>());
+		if (idle.size() < maxPerKey) idle.push(buffer);
+	}
+
+	/**
+	 * Drops all idle buffers, their memory is freed once they are garbage
+	 * collected.
+	 */
+	public synchronized void clear() {
+		buffers.clear();
+	}
+
+	public synchronized long getAllocationCount() {
+		return allocations;
+	}
+
+	public synchronized long getReuseCount() {
+		return reuses;
+	}
+
+	private static long numElements(final long[] shape) {
+		long size = 1;
+		for (final long dim : shape) {
+			if (dim < 0) return -1;
+			size *= dim;
+		}
+		return size;
+	}
+
+	private static class Key {
+
+		private final DataType dataType;
+		private final long[] shape;
+
+		Key(final DataType dataType, final long[] shape) {
+			this.dataType = dataType;
+			this.shape = shape.clone();
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof Key)) return false;
+			final Key other = (Key) o;
+			return dataType == other.dataType && Arrays.equals(shape, other.shape);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * dataType.hashCode() + Arrays.hashCode(shape);
+		}
+	}
+
+}
@@ -4,17 +4,25 @@ package de.csbdresden.csbdeep.network.model.tensorflow;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import org.scijava.io.location.Location;
+import org.tensorflow.DataType;
 import org.tensorflow.SavedModelBundle;
 import org.tensorflow.Tensor;
 import org.tensorflow.TensorFlow;
 import org.tensorflow.TensorFlowException;
+import org.tensorflow.framework.ConfigProto;
 import org.tensorflow.framework.MetaGraphDef;
 import org.tensorflow.framework.SignatureDef;
 import org.tensorflow.framework.TensorInfo;
@@ -36,17 +44,34 @@ import net.imagej.tensorflow.TensorFlowService;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
 
 public class TensorFlowNetwork<T extends RealType<T>> extends
 		DefaultNetwork<T>
 {
 
 	private SavedModelBundle model;
+	// all open sessions of the model, the first one is model
+	private final List<SavedModelBundle> sessions = new ArrayList<>();
+	private final BlockingQueue<SavedModelBundle> freeSessions =
+		new LinkedBlockingQueue<>();
+	private ModelRegistryService modelRegistry;
+	private final List<String> modelKeys = new ArrayList<>();
+	private int intraOpThreads = 0;
+	private int interOpThreads = 0;
+	private boolean perSessionThreads = false;
+	private int sessionCount = 1;
 	private SignatureDef sig;
 	private Map meta;
 	private final TensorFlowService tensorFlowService;
 	private final DatasetService datasetService;
 	private TensorInfo inputTensorInfo, outputTensorInfo;
+	private final TensorBufferPool bufferPool = new TensorBufferPool();
+	// buffers backing tile results which are not written to the sink yet; weak
+	// keys, so results which are never recycled do not pin their buffers
+	private final Map<RandomAccessibleInterval<?>, PooledBuffer> pooledOutputs =
+		new WeakHashMap<>();
 	private boolean foundJNI = true;
 	private boolean gpuSupport = false;
 	protected boolean isDoingDimensionReduction = false;
@@ -135,10 +160,33 @@ public class TensorFlowNetwork<T extends RealType<T>> extends
 		if(!foundJNI) return false;
 		log("Loading TensorFlow model " + modelName + " from source file " + source.getURI());
 		try {
-			if (model != null) {
-				model.close();
+			final List<SavedModelBundle> bundles = new ArrayList<>();
+			if (modelRegistry != null) {
+				releaseModel();
+				// sessions with different threading settings cannot be shared
+				final String key = modelName + getSessionConfigSuffix();
+				final long estimatedBytes = estimateModelSize(source, modelName);
+				// every session loads its own copy of the model, so each one is
+				// registered under its own key and counts against the budget
+				if (sessionCount > 1) {
+					log("Loading " + sessionCount + " sessions of " + modelName +
+						", each one takes about " + estimatedBytes / 1024 / 1024 +
+						" MB of the model registry budget");
+				}
+				for (int i = 0; i < sessionCount; i++) {
+					final String sessionKey = i == 0 ? key : key + "_" + i;
+					bundles.add(modelRegistry.acquire(sessionKey, () -> loadBundle(
+						source, modelName), estimatedBytes));
+					modelKeys.add(sessionKey);
+				}
 			}
-			model = tensorFlowService.loadModel(source, modelName, MODEL_TAG);
+			else {
+				closeSessions();
+				for (int i = 0; i < sessionCount; i++) {
+					bundles.add(loadBundle(source, modelName));
+				}
+			}
+			setSessions(bundles);
 //			loadNetworkSettingsFromJson(tensorFlowService.loadFile(source, modelName, "meta.json"));
 		}
 		catch (TensorFlowException | IOException e) {
@@ -158,6 +206,243 @@ public class TensorFlowNetwork<T extends RealType<T>> extends
 		return true;
 	}
 
+	private SavedModelBundle loadBundle(final Location source,
+		final String modelName) throws IOException
+	{
+		if (!hasSessionConfig()) {
+			return tensorFlowService.loadModel(source, modelName, MODEL_TAG);
+		}
+		final File modelDir = tensorFlowService.loadFile(source, modelName,
+			"saved_model.pb").getParentFile();
+		final SavedModelBundle bundle = loadWithSessionConfig(modelDir);
+		if (bundle == null) {
+			logWarning("TensorFlow " + TensorFlow.version() +
+				" cannot configure session threads, using the defaults");
+			return tensorFlowService.loadModel(source, modelName, MODEL_TAG);
+		}
+		log("TensorFlow threads: intra-op " + getSessionIntraOpThreads() +
+			", inter-op " + getSessionInterOpThreads() + (usesSessionPools()
+				? ", per session" : ", global"));
+		return bundle;
+	}
+
+	/**
+	 * SavedModelBundle.loader only exists since TensorFlow 1.13, it is looked up
+	 * at runtime so that the plugin still runs with the 1.12 natives of the
+	 * update sites.
+	 *
+	 * @return the loaded bundle or null if the TensorFlow version cannot load
+	 *         bundles with a session config
+	 */
+	private SavedModelBundle loadWithSessionConfig(final File modelDir)
+		throws IOException
+	{
+		try {
+			final Object loader = SavedModelBundle.class.getMethod("loader", String.class).invoke(
+				null, modelDir.getAbsolutePath());
+			final Class<?> loaderClass = loader.getClass();
+			loaderClass.getMethod("withTags", String[].class).invoke(loader,
+				(Object) new String[] { MODEL_TAG });
+			loaderClass.getMethod("withConfigProto", byte[].class).invoke(loader,
+				(Object) getSessionConfig().toByteArray());
+			return (SavedModelBundle) loaderClass.getMethod("load").invoke(loader);
+		}
+		catch (final InvocationTargetException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+		catch (final ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return whether the loaded TensorFlow version can configure the threads of
+	 *         a session, otherwise the session thread settings are ignored
+	 */
+	public static boolean supportsSessionConfig() {
+		try {
+			SavedModelBundle.class.getMethod("loader", String.class);
+			return true;
+		}
+		catch (final NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	private boolean hasSessionConfig() {
+		if (!supportsSessionConfig()) return false;
+		return getSessionIntraOpThreads() > 0 || getSessionInterOpThreads() > 0 ||
+			usesSessionPools();
+	}
+
+	private ConfigProto getSessionConfig() {
+		return ConfigProto.newBuilder().setIntraOpParallelismThreads(
+			getSessionIntraOpThreads()).setInterOpParallelismThreads(
+				getSessionInterOpThreads()).setUsePerSessionThreads(
+					usesSessionPools()).build();
+	}
+
+	private String getSessionConfigSuffix() {
+		if (!hasSessionConfig()) return "";
+		return "_intra" + getSessionIntraOpThreads() + "_inter" +
+			getSessionInterOpThreads() + (usesSessionPools() ? "_session" : "");
+	}
+
+	// with several sessions, each one gets its own pools with a slice of the
+	// cores unless the thread counts are set explicitly
+	private int getSessionIntraOpThreads() {
+		if (intraOpThreads > 0 || sessionCount == 1) return intraOpThreads;
+		return Math.max(1, Runtime.getRuntime().availableProcessors() /
+			sessionCount);
+	}
+
+	private int getSessionInterOpThreads() {
+		if (interOpThreads > 0 || sessionCount == 1) return interOpThreads;
+		return Math.min(2, getSessionIntraOpThreads());
+	}
+
+	private boolean usesSessionPools() {
+		return perSessionThreads || sessionCount > 1;
+	}
+
+	/**
+	 * Set the TensorFlow session threading used when the model is loaded. A
+	 * thread count of 0 lets TensorFlow choose. If perSessionThreads is set,
+	 * the session gets its own thread pools instead of the process wide ones.
+	 * TensorFlow versions before 1.13 ignore these settings, see
+	 * {@link #supportsSessionConfig()}.
+	 */
+	public void setSessionThreads(final int intraOpThreads,
+		final int interOpThreads, final boolean perSessionThreads)
+	{
+		if (!supportsSessionConfig() && (intraOpThreads > 0 ||
+			interOpThreads > 0 || perSessionThreads))
+		{
+			logWarning("TensorFlow " + TensorFlow.version() +
+				" cannot configure session threads, the intra-op, inter-op and " +
+				"per session thread settings are ignored");
+		}
+		this.intraOpThreads = Math.max(0, intraOpThreads);
+		this.interOpThreads = Math.max(0, interOpThreads);
+		this.perSessionThreads = perSessionThreads;
+	}
+
+	public int getIntraOpThreads() {
+		return intraOpThreads;
+	}
+
+	public int getInterOpThreads() {
+		return interOpThreads;
+	}
+
+	public boolean usesPerSessionThreads() {
+		return perSessionThreads;
+	}
+
+	/**
+	 * Set how many sessions of the model are opened when it is loaded. Tiles
+	 * are distributed over the sessions and processed in parallel. Every
+	 * session holds its own copy of the model, in memory and in the memory
+	 * budget of the {@link ModelRegistryService}. Default value is 1.
+	 */
+	public void setSessionCount(final int sessionCount) {
+		this.sessionCount = Math.max(1, sessionCount);
+	}
+
+	public int getSessionCount() {
+		return sessionCount;
+	}
+
+	@Override
+	protected int getParallelism() {
+		return Math.max(1, sessions.size());
+	}
+
+	private void setSessions(final List<SavedModelBundle> bundles) {
+		sessions.clear();
+		sessions.addAll(bundles);
+		freeSessions.clear();
+		freeSessions.addAll(bundles);
+		model = bundles.isEmpty() ? null : bundles.get(0);
+	}
+
+	/**
+	 * Runs the graph on one of the free sessions, waiting for one to become
+	 * free if all of them are busy.
+	 */
+	protected Tensor run(final Tensor inputTensor) throws ExecutionException {
+		final SavedModelBundle session;
+		final long waitStart = System.nanoTime();
+		try {
+			session = freeSessions.take();
+		}
+		catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ExecutionException(e);
+		}
+		recordLatency("session wait", waitStart);
+		final long start = System.nanoTime();
+		try {
+			return TensorFlowRunner.executeGraph(session, inputTensor,
+				getInputTensorInfo(), getOutputTensorInfo());
+		}
+		finally {
+			recordLatency("session run", start);
+			freeSessions.offer(session);
+		}
+	}
+
+	private void closeSessions() {
+		for (final SavedModelBundle session : sessions) {
+			session.close();
+		}
+		setSessions(Collections.emptyList());
+	}
+
+	private long estimateModelSize(final Location source,
+		final String modelName)
+	{
+		// the variables dominate the memory footprint of a loaded model
+		try {
+			final File graph = tensorFlowService.loadFile(source, modelName,
+				"saved_model.pb");
+			return directorySize(graph.getParentFile());
+		}
+		catch (final IOException e) {
+			return 0;
+		}
+	}
+
+	private static long directorySize(final File dir) {
+		long size = 0;
+		final File[] files = dir.listFiles();
+		if (files == null) return 0;
+		for (final File file : files) {
+			size += file.isDirectory() ? directorySize(file) : file.length();
+		}
+		return size;
+	}
+
+	private void releaseModel() {
+		if (modelRegistry != null) {
+			for (final String key : modelKeys) {
+				modelRegistry.release(key);
+			}
+		}
+		modelKeys.clear();
+	}
+
+	/**
+	 * Load models through the registry to keep them warm after this network is
+	 * disposed.
+	 */
+	public void setModelRegistry(final ModelRegistryService modelRegistry) {
+		this.modelRegistry = modelRegistry;
+	}
+
 	private void loadNetworkSettingsFromJson(File jsonFile) {
 		networkSettings = new NetworkSettings();
 		try {
@@ -235,7 +520,8 @@ public class TensorFlowNetwork<T extends RealType<T>> extends
 	}
 
 	protected void setModel(final SavedModelBundle model) {
-		this.model = model;
+		setSessions(model == null ? Collections.emptyList() : Collections
+			.singletonList(model));
 	}
 
 	@Override
@@ -338,23 +624,174 @@ public class TensorFlowNetwork<T extends RealType<T>> extends
 
 		long[] tileDims = new long[tile.numDimensions()];
 		tile.dimensions(tileDims);
+		final long start = System.nanoTime();
 		final Tensor inputTensor = DatasetTensorFlowConverter.datasetToTensor(tile,
-			convertNodeMappingToImgMapping(getInputNode().getMappingIndices()));
-		if (inputTensor != null) {
+			convertNodeMappingToImgMapping(getInputNode().getMappingIndices()),
+			bufferPool);
+		recordLatency("input conversion", start);
+		if (inputTensor == null) return null;
+		// native tensor memory is released even if the tile fails or the run is
+		// canceled while converting
+		try {
 			RandomAccessibleInterval<T> output = null;
-			Tensor outputTensor = TensorFlowRunner.executeGraph(model, inputTensor,
-				getInputTensorInfo(), getOutputTensorInfo());
+			final Tensor outputTensor = run(inputTensor);
 
 			if (outputTensor != null) {
-				output = DatasetTensorFlowConverter.tensorToDataset(outputTensor, tile
-					.randomAccess().get(), convertNodeMappingToImgMapping(getOutputNode().getMappingIndices()),
-					dropSingletonDims);
+				final PooledBuffer buffer = acquireOutputBuffer(outputTensor);
+				final long outputStart = System.nanoTime();
+				try {
+					output = DatasetTensorFlowConverter.tensorToDataset(outputTensor, tile
+						.randomAccess().get(), convertNodeMappingToImgMapping(getOutputNode().getMappingIndices()),
+						dropSingletonDims, buffer == null ? null : buffer.buffer);
+				}
+				finally {
+					outputTensor.close();
+				}
+				recordLatency("output conversion", outputStart);
+				registerOutputBuffer(buffer, Collections.singletonList(output));
+			}
+			return output;
+		}
+		finally {
+			inputTensor.close();
+		}
+	}
+
+	@Override
+	public long warmUp(final long[] nodeShape) throws Exception {
+		if (model == null) return -1;
+		final FloatBuffer buffer = bufferPool.acquireFloat(nodeShape);
+		if (buffer == null) return -1;
+		// every session optimizes its graph on its first run
+		long duration = 0;
+		try (final Tensor<Float> inputTensor = Tensor.create(nodeShape, buffer)) {
+			bufferPool.releaseFloat(nodeShape, buffer);
+			for (final SavedModelBundle session : new ArrayList<>(sessions)) {
+				final long start = System.nanoTime();
+				final Tensor outputTensor = TensorFlowRunner.executeGraph(session,
+					inputTensor, getInputTensorInfo(), getOutputTensorInfo());
+				outputTensor.close();
+				duration += System.nanoTime() - start;
+			}
+		}
+		return duration / Math.max(1, sessions.size());
+	}
+
+	@Override
+	public List<RandomAccessibleInterval<T>> executeBatch(
+		final List<RandomAccessibleInterval<T>> tiles) throws Exception
+	{
+		if (tiles.size() < 2 || !supportsBatching()) return super.executeBatch(
+			tiles);
+
+		// stack the tiles along the image dimension mapped to the batch dimension
+		// of the input tensor and run the session only once
+		final int batchDim = getInputNode().getMappingIndices()[0];
+		final RandomAccessibleInterval<T> stacked = Views.concatenate(batchDim,
+			tiles);
+		final long start = System.nanoTime();
+		final Tensor inputTensor = DatasetTensorFlowConverter.datasetToTensor(
+			stacked, convertNodeMappingToImgMapping(getInputNode()
+				.getMappingIndices()), bufferPool);
+		recordLatency("input conversion", start);
+		if (inputTensor == null) return null;
+		final List<RandomAccessibleInterval<T>> results;
+		try {
+			final Tensor outputTensor = run(inputTensor);
+			if (outputTensor == null) return null;
+			final PooledBuffer buffer = acquireOutputBuffer(outputTensor);
+			final long outputStart = System.nanoTime();
+			try {
+				final RandomAccessibleInterval<T> output = DatasetTensorFlowConverter
+					.tensorToDataset(outputTensor, tiles.get(0).randomAccess().get(),
+						convertNodeMappingToImgMapping(getOutputNode()
+							.getMappingIndices()), false, buffer == null ? null
+								: buffer.buffer);
+				results = splitBatch(output, tiles.size());
+			}
+			finally {
 				outputTensor.close();
 			}
+			recordLatency("output conversion", outputStart);
+			registerOutputBuffer(buffer, results);
+		}
+		finally {
 			inputTensor.close();
-			return output;
 		}
-		return null;
+		if (results == null) {
+			// output batch does not match the input batch, process tiles one by one
+			return super.executeBatch(tiles);
+		}
+		return results;
+	}
+
+	/**
+	 * Output buffers are only pooled if results are merged into an output sink,
+	 * otherwise all results are kept until the end of the run anyway.
+	 */
+	private PooledBuffer acquireOutputBuffer(final Tensor outputTensor) {
+		if (outputSink == null || !DataType.FLOAT.equals(outputTensor
+			.dataType())) return null;
+		final long[] shape = outputTensor.shape();
+		final FloatBuffer buffer = bufferPool.acquireFloat(shape);
+		return buffer == null ? null : new PooledBuffer(shape, buffer);
+	}
+
+	private void registerOutputBuffer(final PooledBuffer buffer,
+		final List<RandomAccessibleInterval<T>> outputs)
+	{
+		if (buffer == null) return;
+		if (outputs == null) {
+			bufferPool.releaseFloat(buffer.shape, buffer.buffer);
+			return;
+		}
+		synchronized (pooledOutputs) {
+			for (final RandomAccessibleInterval<T> output : outputs) {
+				buffer.users++;
+				pooledOutputs.put(output, buffer);
+			}
+		}
+	}
+
+	@Override
+	protected void recycle(final RandomAccessibleInterval<T> tileResult) {
+		final PooledBuffer buffer;
+		synchronized (pooledOutputs) {
+			buffer = pooledOutputs.remove(tileResult);
+			if (buffer == null || --buffer.users > 0) return;
+		}
+		bufferPool.releaseFloat(buffer.shape, buffer.buffer);
+	}
+
+	public TensorBufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	private boolean supportsBatching() {
+		final Long[] shape = getInputNode().getNodeShape();
+		return shape.length > 0 && shape[0] < 0;
+	}
+
+	private List<RandomAccessibleInterval<T>> splitBatch(
+		final RandomAccessibleInterval<T> output, final int count)
+	{
+		if (output == null) return null;
+		final int batchDim = getOutputNode().getMappingIndices()[0];
+		final long batchSize = output.dimension(batchDim);
+		if (batchSize % count != 0) return null;
+		final long step = batchSize / count;
+		final long[] min = Intervals.minAsLongArray(output);
+		final long[] max = Intervals.maxAsLongArray(output);
+		final List<RandomAccessibleInterval<T>> results = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			min[batchDim] = output.min(batchDim) + i * step;
+			max[batchDim] = min[batchDim] + step - 1;
+			final RandomAccessibleInterval<T> slice = Views.zeroMin(Views.interval(
+				output, min, max));
+			results.add(dropSingletonDims ? Views.dropSingletonDimensions(slice)
+				: slice);
+		}
+		return results;
 	}
 
 	private static int[] convertNodeMappingToImgMapping(int[] nodeMapping) {
@@ -401,15 +838,73 @@ public class TensorFlowNetwork<T extends RealType<T>> extends
 		return outputTensorInfo;
 	}
 
+	public int getInputValueBytes() {
+		return getValueBytes(inputTensorInfo);
+	}
+
+	public int getOutputValueBytes() {
+		return getValueBytes(outputTensorInfo);
+	}
+
+	private static int getValueBytes(final TensorInfo tensorInfo) {
+		if (tensorInfo == null) return Float.BYTES;
+		switch (tensorInfo.getDtype()) {
+			case DT_UINT8:
+			case DT_INT8:
+				return 1;
+			case DT_HALF:
+			case DT_UINT16:
+			case DT_INT16:
+				return 2;
+			case DT_DOUBLE:
+			case DT_INT64:
+				return 8;
+			default:
+				return Float.BYTES;
+		}
+	}
+
 	@Override
 	public void clear() {
 		super.clear();
 		sig = null;
-		model = null;
+		if (modelRegistry != null) {
+			releaseModel();
+			setSessions(Collections.emptyList());
+		}
+		else {
+			closeSessions();
+		}
 		inputTensorInfo = null;
 		outputTensorInfo = null;
 		isDoingDimensionReduction = false;
 		axisToRemove = null;
+		synchronized (pooledOutputs) {
+			pooledOutputs.clear();
+		}
+		bufferPool.clear();
+	}
+
+	@Override
+	public void cancel(final String reason) {
+		super.cancel(reason);
+		// pooled buffers are only kept to speed up the following tiles
+		synchronized (pooledOutputs) {
+			pooledOutputs.clear();
+		}
+		bufferPool.clear();
+	}
+
+	private static class PooledBuffer {
+
+		private final long[] shape;
+		private final FloatBuffer buffer;
+		private int users = 0;
+
+		PooledBuffer(final long[] shape, final FloatBuffer buffer) {
+			this.shape = shape;
+			this.buffer = buffer;
+		}
 	}
 
 	@Override
@@ -2,17 +2,23 @@
 package de.csbdresden.csbdeep.normalize;
 
 import de.csbdresden.csbdeep.task.DefaultTask;
+import de.csbdresden.csbdeep.util.DatasetHelper;
 import net.imagej.Dataset;
 import net.imagej.DatasetService;
 import net.imagej.ops.OpService;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.converter.Converter;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.FloatType;
 
 public class DefaultInputNormalizer<T extends RealType<T> & NativeType<T>>
 	extends DefaultTask implements InputNormalizer<T>
 {
 
 	private Normalizer normalizer = new PercentileNormalizer<>();
+	private boolean lazy = false;
+	private Converter<T, FloatType> converter;
 
 	@Override
 	public Dataset run(Dataset input, OpService opService,
@@ -22,9 +28,25 @@ public class DefaultInputNormalizer<T extends RealType<T> & NativeType<T>>
 		setStarted();
 
 		log("Normalize .. ");
+		normalizer.setCancelable(this);
+
+		// a single converter cannot apply separate statistics per hyperslice
+		if (lazy && normalizer instanceof PercentileNormalizer &&
+			((PercentileNormalizer<T>) normalizer).getSeparateDimensions(
+				input).length == 0)
+		{
+			converter = ((PercentileNormalizer<T>) normalizer).prepare(
+				(RandomAccessibleInterval<T>) input.getImgPlus(), opService);
+			metrics.addBytesIn(DatasetHelper.sizeInBytes(input));
+			setFinished();
+			return input;
+		}
+		converter = null;
 
 		final Dataset output = normalizer.normalize(input, opService,
 			datasetService);
+		metrics.addBytesIn(DatasetHelper.sizeInBytes(input));
+		metrics.addBytesOut(DatasetHelper.sizeInBytes(output));
 
 		setFinished();
 
@@ -36,4 +58,20 @@ public class DefaultInputNormalizer<T extends RealType<T> & NativeType<T>>
 		return normalizer;
 	}
 
+	/**
+	 * @param lazy if true, {@link #run} only computes the statistics and returns
+	 *          the input, the values are normalized by {@link #getConverter()}
+	 */
+	public void setLazy(final boolean lazy) {
+		this.lazy = lazy;
+	}
+
+	/**
+	 * @return the converter normalizing the values of the dataset returned by
+	 *         the last run or null if it is normalized already
+	 */
+	public Converter<T, FloatType> getConverter() {
+		return converter;
+	}
+
 }
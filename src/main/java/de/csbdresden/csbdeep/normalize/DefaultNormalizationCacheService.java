@@ -0,0 +1,373 @@
+
+package de.csbdresden.csbdeep.normalize;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import org.scijava.app.App;
+import org.scijava.app.AppService;
+import org.scijava.log.LogService;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import de.csbdresden.csbdeep.util.ParallelHelper;
+import net.imagej.ImgPlus;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+@Plugin(type = Service.class)
+public class DefaultNormalizationCacheService extends AbstractService
+	implements NormalizationCacheService
+{
+
+	// models downloaded by imagej-tensorflow are cached in this folder
+	private static final String MODELS_FOLDER = "models";
+	private static final String CACHE_FILE =
+		"csbdeep-normalization-statistics.json";
+	// images, all hyperslices of one image are a single entry
+	private static final int MAX_ENTRIES = 1024;
+	// fixed, so the fingerprint does not depend on the number of cores
+	private static final int FINGERPRINT_CHUNKS = 16;
+	// values sampled for a fingerprint, fewer if the source file is known, each
+	// one can load a cell of a cached image
+	private static final int FINGERPRINT_SAMPLES = 4096;
+	private static final int SOURCE_FINGERPRINT_SAMPLES = 64;
+
+	@Parameter
+	private AppService appService;
+
+	@Parameter
+	private LogService log;
+
+	// access order, least recently used entries first
+	private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f,
+		true);
+	private boolean loaded = false;
+	private File cacheFile;
+
+	@Override
+	public String fingerprint(
+		final RandomAccessibleInterval<? extends RealType<?>> image,
+		final ExecutorService pool, final boolean allValues)
+	{
+		final StringBuilder res = new StringBuilder(Util.getTypeFromInterval(image)
+			.getClass().getSimpleName());
+		for (final long dim : Intervals.dimensionsAsLongArray(image)) {
+			res.append("-").append(dim);
+		}
+		final File source = getSourceFile(image);
+		if (source != null) {
+			res.append("-").append(source.getAbsolutePath()).append("-").append(
+				source.length()).append("-").append(source.lastModified());
+		}
+		if (allValues) {
+			return res.append("-all-").append(Long.toHexString(hashAll(image,
+				pool))).toString();
+		}
+		return res.append("-sampled-").append(Long.toHexString(hashSample(image,
+			source == null ? FINGERPRINT_SAMPLES : SOURCE_FINGERPRINT_SAMPLES)))
+			.toString();
+	}
+
+	/**
+	 * @return the file the image was opened from or null if it is not known
+	 */
+	private static File getSourceFile(final RandomAccessibleInterval<?> image) {
+		if (!(image instanceof ImgPlus)) return null;
+		final String source = ((ImgPlus<?>) image).getSource();
+		if (source == null || source.isEmpty()) return null;
+		final File file = new File(source);
+		return file.isFile() ? file : null;
+	}
+
+	/**
+	 * Hashes evenly spaced values in flat iteration order, all of them if the
+	 * image is not larger than the number of samples.
+	 */
+	private static long hashSample(
+		final RandomAccessibleInterval<? extends RealType<?>> image,
+		final int samples)
+	{
+		final long size = Intervals.numElements(image);
+		final long count = Math.min(size, samples);
+		final long[] dimensions = Intervals.dimensionsAsLongArray(image);
+		final long[] min = Intervals.minAsLongArray(image);
+		final long[] position = new long[image.numDimensions()];
+		final RandomAccess<? extends RealType<?>> access = image.randomAccess();
+		long hash = 0;
+		for (long i = 0; i < count; i++) {
+			final long index = count == 1 ? 0 : i * (size - 1) / (count - 1);
+			IntervalIndexer.indexToPositionWithOffset(index, dimensions, min,
+				position);
+			access.setPosition(position);
+			hash = mix(hash, Double.doubleToLongBits(access.get().getRealDouble()));
+		}
+		return hash;
+	}
+
+	private static long hashAll(
+		final RandomAccessibleInterval<? extends RealType<?>> image,
+		final ExecutorService pool)
+	{
+		// parts are hashed in parallel and combined in their order
+		final List<Long> hashes = ParallelHelper.map(pool, ParallelHelper.split(
+			image, FINGERPRINT_CHUNKS), chunk -> hash(image, chunk));
+		long hash = 0;
+		for (final long part : hashes) {
+			hash = mix(hash, part);
+		}
+		return hash;
+	}
+
+	private static <T extends RealType<?>> long hash(
+		final RandomAccessibleInterval<T> image, final Interval chunk)
+	{
+		long hash = 0;
+		for (final T value : Views.flatIterable(Views.interval(image, chunk))) {
+			hash = mix(hash, Double.doubleToLongBits(value.getRealDouble()));
+		}
+		return hash;
+	}
+
+	private static long mix(final long hash, final long value) {
+		return Long.rotateLeft(hash ^ value * 0x9E3779B97F4A7C15L, 31) *
+			0xBF58476D1CE4E5B9L;
+	}
+
+	@Override
+	public synchronized float[][] get(final String fingerprint,
+		final float[] percentiles, final double rankError,
+		final boolean persistent)
+	{
+		if (persistent) load();
+		final Entry entry = entries.get(key(fingerprint, percentiles, rankError));
+		return entry == null ? null : copy(entry.values);
+	}
+
+	@Override
+	public synchronized void put(final String fingerprint,
+		final float[] percentiles, final double rankError, final float[][] values,
+		final boolean persistent)
+	{
+		if (persistent) load();
+		final String key = key(fingerprint, percentiles, rankError);
+		final Entry previous = entries.get(key);
+		// values of the same image, keep them on disk if they were
+		entries.put(key, new Entry(copy(values), persistent ||
+			previous != null && previous.persistent));
+		final Iterator<Entry> iterator = entries.values().iterator();
+		while (entries.size() > MAX_ENTRIES) {
+			iterator.next();
+			iterator.remove();
+		}
+		if (persistent) save();
+	}
+
+	@Override
+	public synchronized void clear() {
+		entries.clear();
+		loaded = true;
+		final File file = getCacheFile();
+		if (file.exists() && !file.delete()) {
+			log.warn("Could not delete normalization statistics " + file);
+		}
+	}
+
+	@Override
+	public synchronized File getCacheFile() {
+		if (cacheFile == null) {
+			final App app = appService.getApp();
+			final File base = app == null || app.getBaseDirectory() == null
+				? new File(System.getProperty("user.home")) : app.getBaseDirectory();
+			cacheFile = new File(new File(base, MODELS_FOLDER), CACHE_FILE);
+		}
+		return cacheFile;
+	}
+
+	/**
+	 * @param cacheFile file the values are persisted in instead of the default
+	 *          one next to the cached models
+	 */
+	public synchronized void setCacheFile(final File cacheFile) {
+		this.cacheFile = cacheFile;
+		loaded = false;
+	}
+
+	private static float[][] copy(final float[][] values) {
+		final float[][] res = new float[values.length][];
+		for (int i = 0; i < res.length; i++) {
+			res[i] = values[i].clone();
+		}
+		return res;
+	}
+
+	private static String key(final String fingerprint,
+		final float[] percentiles, final double rankError)
+	{
+		return fingerprint + " " + Arrays.toString(percentiles) + " " + rankError;
+	}
+
+	/**
+	 * Adds the entries of the cache file which are not in memory yet.
+	 */
+	private void load() {
+		if (loaded) return;
+		loaded = true;
+		final File file = getCacheFile();
+		if (!file.exists()) return;
+		try (Reader in = new FileReader(file); JsonReader reader = new JsonReader(
+			in))
+		{
+			// values of empty images are NaN
+			reader.setLenient(true);
+			reader.beginObject();
+			while (reader.hasNext()) {
+				if (!reader.nextName().equals("entries")) {
+					reader.skipValue();
+					continue;
+				}
+				reader.beginArray();
+				while (reader.hasNext()) {
+					readEntry(reader);
+				}
+				reader.endArray();
+			}
+			reader.endObject();
+		}
+		catch (final IOException | IllegalStateException e) {
+			log.warn("Could not read normalization statistics from " + file + ": " +
+				e.getMessage());
+		}
+	}
+
+	private void readEntry(final JsonReader reader) throws IOException {
+		String key = null;
+		final List<float[]> values = new ArrayList<>();
+		// earlier entries of sampled fingerprints hold a single row, skip them
+		boolean outdated = false;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			final String name = reader.nextName();
+			if (name.equals("key")) {
+				key = reader.nextString();
+			}
+			else if (name.equals("values")) {
+				reader.beginArray();
+				while (reader.hasNext()) {
+					if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+						values.add(readValues(reader));
+					}
+					else {
+						reader.skipValue();
+						outdated = true;
+					}
+				}
+				reader.endArray();
+			}
+			else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		if (key == null || outdated || entries.containsKey(key)) return;
+		entries.put(key, new Entry(values.toArray(new float[0][]), true));
+	}
+
+	private static float[] readValues(final JsonReader reader)
+		throws IOException
+	{
+		final List<Float> values = new ArrayList<>();
+		reader.beginArray();
+		while (reader.hasNext()) {
+			values.add((float) reader.nextDouble());
+		}
+		reader.endArray();
+		final float[] res = new float[values.size()];
+		for (int i = 0; i < res.length; i++) {
+			res[i] = values.get(i);
+		}
+		return res;
+	}
+
+	/**
+	 * Writes all persistent entries next to the cache file first, readers never
+	 * see a partially written file.
+	 */
+	private void save() {
+		final File file = getCacheFile();
+		final File folder = file.getParentFile();
+		final File tmp = new File(folder, file.getName() + ".tmp");
+		try {
+			if (!folder.exists() && !folder.mkdirs()) {
+				throw new IOException("Could not create folder " + folder);
+			}
+			try (Writer out = new FileWriter(tmp);
+					JsonWriter writer = new JsonWriter(out))
+			{
+				writer.setLenient(true);
+				writer.beginObject();
+				writer.name("entries").beginArray();
+				for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+					if (!entry.getValue().persistent) continue;
+					writer.beginObject();
+					writer.name("key").value(entry.getKey());
+					writer.name("values").beginArray();
+					for (final float[] values : entry.getValue().values) {
+						writer.beginArray();
+						for (final float value : values) {
+							writer.value(value);
+						}
+						writer.endArray();
+					}
+					writer.endArray();
+					writer.endObject();
+				}
+				writer.endArray();
+				writer.endObject();
+			}
+			Files.move(tmp.toPath(), file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (final IOException e) {
+			log.warn("Could not write normalization statistics to " + file + ": " +
+				e.getMessage());
+		}
+	}
+
+	private static class Entry {
+
+		final float[][] values;
+		final boolean persistent;
+
+		Entry(final float[][] values, final boolean persistent) {
+			this.values = values;
+			this.persistent = persistent;
+		}
+	}
+
+}
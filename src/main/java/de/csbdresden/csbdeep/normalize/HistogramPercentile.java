@@ -32,6 +32,9 @@ package de.csbdresden.csbdeep.normalize;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.scijava.Cancelable;
+
+import de.csbdresden.csbdeep.util.CancellationHelper;
 import net.imagej.ops.OpService;
 import net.imglib2.Cursor;
 import net.imglib2.IterableInterval;
@@ -45,6 +48,11 @@ public class HistogramPercentile<T extends RealType<T>> implements
 {
 
 	T min, max;
+	private Cancelable cancelable;
+
+	public void setCancelable(final Cancelable cancelable) {
+		this.cancelable = cancelable;
+	}
 
 //	public float[] computePercentiles2(RandomAccessibleInterval<T> src,
 //		final float[] percentiles, OpService opService)
@@ -82,10 +90,14 @@ public class HistogramPercentile<T extends RealType<T>> implements
 		final float[] values = new float[ items ];
 		i = 0;
 		while ( cursor.hasNext() ) {
+			if ( i % CancellationHelper.CHUNK_SIZE == 0 ) {
+				CancellationHelper.checkCanceled( cancelable );
+			}
 			cursor.fwd();
 			values[ i ] = cursor.get().getRealFloat();
 			i++;
 		}
+		CancellationHelper.checkCanceled( cancelable );
 
 		Util.quicksort( values );
 
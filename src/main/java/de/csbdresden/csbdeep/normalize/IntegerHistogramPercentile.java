@@ -0,0 +1,100 @@
+
+package de.csbdresden.csbdeep.normalize;
+
+import java.util.concurrent.ExecutorService;
+
+import org.scijava.Cancelable;
+
+import de.csbdresden.csbdeep.util.CancellationHelper;
+import de.csbdresden.csbdeep.util.ParallelHelper;
+import net.imagej.ops.OpService;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Computes exact percentiles of integer images with few possible values, e.g.
+ * 8 and 16 bit images, in a single pass with one bin per value. Chunks of the
+ * image are counted in parallel, each into its own histogram which is merged
+ * when the chunk is done. Memory does not depend on the image size.
+ */
+public class IntegerHistogramPercentile<T extends RealType<T>> implements
+	Percentile<T>
+{
+
+	static final long MAX_BINS = 1 << 16;
+
+	private Cancelable cancelable;
+	private ExecutorService pool;
+
+	/**
+	 * @return whether percentiles of images of this type can be computed, which
+	 *         needs an integer type with at most {@link #MAX_BINS} values
+	 */
+	public static boolean supports(final RealType<?> type) {
+		return type instanceof IntegerType && type.getMaxValue() - type
+			.getMinValue() + 1 <= MAX_BINS;
+	}
+
+	public void setCancelable(final Cancelable cancelable) {
+		this.cancelable = cancelable;
+	}
+
+	/**
+	 * @param pool pool counting the chunks, the common pool if null
+	 */
+	public void setExecutorService(final ExecutorService pool) {
+		this.pool = pool;
+	}
+
+	@Override
+	public float[] computePercentiles(final RandomAccessibleInterval<T> src,
+		final float[] percentiles, final OpService opService)
+	{
+		final T type = Util.getTypeFromInterval(src);
+		if (!supports(type)) throw new IllegalArgumentException(
+			"Unsupported type " + type.getClass().getSimpleName());
+		final long offset = (long) type.getMinValue();
+		final long[] histogram = new long[(int) (type.getMaxValue() - offset + 1)];
+		ParallelHelper.map(pool, ParallelHelper.split(src, ParallelHelper
+			.getNumThreads()), chunk -> {
+				final long[] counts = new long[histogram.length];
+				long i = 0;
+				for (final T value : Views.interval(src, chunk)) {
+					if (i++ % CancellationHelper.CHUNK_SIZE == 0) {
+						CancellationHelper.checkCanceled(cancelable);
+					}
+					counts[(int) (((IntegerType<?>) value).getIntegerLong() -
+						offset)]++;
+				}
+				synchronized (histogram) {
+					for (int bin = 0; bin < counts.length; bin++) {
+						histogram[bin] += counts[bin];
+					}
+				}
+				return null;
+			});
+		CancellationHelper.checkCanceled(cancelable);
+
+		long count = 0;
+		for (final long binCount : histogram) {
+			count += binCount;
+		}
+		final float[] res = new float[percentiles.length];
+		for (int i = 0; i < percentiles.length; i++) {
+			// same ranks as HistogramPercentile
+			final long rank = Math.min(count - 1, Math.max(0, Math.round((count -
+				1) * (double) percentiles[i] / 100.)));
+			long seen = 0;
+			int bin = 0;
+			while (seen + histogram[bin] <= rank) {
+				seen += histogram[bin++];
+			}
+			res[i] = bin + offset;
+		}
+		return res;
+	}
+
+}
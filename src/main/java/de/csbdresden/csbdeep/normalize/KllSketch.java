@@ -0,0 +1,178 @@
+
+package de.csbdresden.csbdeep.normalize;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Mergeable quantile sketch of float values after Karnin, Lang and Liberty,
+ * "Optimal Quantile Approximation in Streams" (2016). Values are kept in levels
+ * of compactors, a full compactor sorts its values and moves every second one
+ * to the next level, where each value stands for twice as many values. The
+ * memory only depends on {@code k}, not on the number of values.
+ */
+class KllSketch {
+
+	// capacity of each level relative to the level above
+	private static final double DECAY = 2. / 3.;
+	private static final int MIN_CAPACITY = 8;
+
+	private final int k;
+	private final Random random;
+	private final List<Compactor> levels = new ArrayList<>();
+	private final Compactor first = new Compactor();
+	// capacity of the first level, cached as it is checked for each value
+	private int firstCapacity;
+	private long count = 0;
+	// kept exactly, compactions may drop them
+	private float min = Float.POSITIVE_INFINITY;
+	private float max = Float.NEGATIVE_INFINITY;
+
+	KllSketch(final int k, final long seed) {
+		this.k = k;
+		this.random = new Random(seed);
+		levels.add(first);
+		firstCapacity = capacity(0);
+	}
+
+	/**
+	 * @return the k needed for the normalized rank error with a confidence of
+	 *         99%, using the empirical bound of the Apache DataSketches KLL
+	 *         implementation
+	 */
+	static int getK(final double rankError) {
+		final double k = Math.pow(2.296 / rankError, 1 / 0.9723);
+		return (int) Math.max(MIN_CAPACITY, Math.min(1 << 16, Math.ceil(k)));
+	}
+
+	long getCount() {
+		return count;
+	}
+
+	/**
+	 * Adds a value, NaN values are ignored.
+	 */
+	void update(final float value) {
+		if (Float.isNaN(value)) return;
+		first.add(value);
+		count++;
+		if (value < min) min = value;
+		if (value > max) max = value;
+		if (first.size >= firstCapacity) compress();
+	}
+
+	/**
+	 * Adds the values of another sketch, which is not changed.
+	 */
+	void merge(final KllSketch other) {
+		while (levels.size() < other.levels.size()) {
+			levels.add(new Compactor());
+		}
+		for (int h = 0; h < other.levels.size(); h++) {
+			levels.get(h).addAll(other.levels.get(h));
+		}
+		count += other.count;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+		compress();
+	}
+
+	/**
+	 * @param ranks ranks among the added values, 0 is the smallest value
+	 * @return approximations of the values at the ranks or NaN if no value was
+	 *         added
+	 */
+	float[] getQuantiles(final long[] ranks) {
+		final float[] res = new float[ranks.length];
+		if (count == 0) {
+			Arrays.fill(res, Float.NaN);
+			return res;
+		}
+		int total = 0;
+		for (final Compactor level : levels) {
+			total += level.size;
+		}
+		// the values of all levels with the number of values each one stands for
+		final float[] values = new float[total];
+		final long[] weights = new long[total];
+		int i = 0;
+		for (int h = 0; h < levels.size(); h++) {
+			final Compactor level = levels.get(h);
+			for (int j = 0; j < level.size; j++) {
+				values[i] = level.values[j];
+				weights[i++] = 1L << h;
+			}
+		}
+		final Integer[] order = new Integer[total];
+		for (i = 0; i < total; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Float.compare(values[a], values[b]));
+		for (int r = 0; r < ranks.length; r++) {
+			long seen = 0;
+			i = 0;
+			while (i < total - 1 && seen + weights[order[i]] <= ranks[r]) {
+				seen += weights[order[i++]];
+			}
+			res[r] = ranks[r] <= 0 ? min : ranks[r] >= count - 1 ? max
+				: values[order[i]];
+		}
+		return res;
+	}
+
+	private int capacity(final int level) {
+		final int depth = levels.size() - level - 1;
+		return (int) Math.max(MIN_CAPACITY, Math.ceil(k * Math.pow(DECAY, depth)));
+	}
+
+	private void compress() {
+		for (int h = 0; h < levels.size(); h++) {
+			final Compactor level = levels.get(h);
+			if (level.size < capacity(h)) continue;
+			if (h + 1 == levels.size()) levels.add(new Compactor());
+			level.compactInto(levels.get(h + 1), random.nextBoolean() ? 1 : 0);
+		}
+		firstCapacity = capacity(0);
+	}
+
+	private static class Compactor {
+
+		float[] values = new float[MIN_CAPACITY];
+		int size = 0;
+
+		void add(final float value) {
+			if (size == values.length) values = Arrays.copyOf(values, size * 2);
+			values[size++] = value;
+		}
+
+		void addAll(final Compactor other) {
+			if (size + other.size > values.length) {
+				values = Arrays.copyOf(values, Math.max(size + other.size, size * 2));
+			}
+			System.arraycopy(other.values, 0, values, size, other.size);
+			size += other.size;
+		}
+
+		/**
+		 * Moves every second of the sorted values to the next level, starting at
+		 * {@code offset}. With an odd size the largest value stays.
+		 */
+		void compactInto(final Compactor next, final int offset) {
+			Arrays.sort(values, 0, size);
+			final int pairs = size / 2;
+			for (int i = 0; i < pairs; i++) {
+				next.add(values[2 * i + offset]);
+			}
+			if (size % 2 == 1) {
+				values[0] = values[size - 1];
+				size = 1;
+			}
+			else {
+				size = 0;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,70 @@
+
+package de.csbdresden.csbdeep.normalize;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+
+import de.csbdresden.csbdeep.util.ParallelHelper;
+import net.imagej.ImageJService;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Remembers the percentile values of normalized inputs, so that running
+ * another model or other tiling parameters on the same input does not scan it
+ * again. Inputs are identified by their type, dimensions, the file they were
+ * opened from with its size and modification time, and a bounded sample of
+ * their values, so a cache hit does not read the whole input. An input changed
+ * in memory is only told apart if one of the sampled values changed, hashing
+ * all values is an option for such inputs. The values are kept in memory and,
+ * for persistent entries, in a JSON file next to the cached models.
+ */
+public interface NormalizationCacheService extends ImageJService {
+
+	/**
+	 * @return identifier of the image from its source file and a sample of its
+	 *         values
+	 */
+	default String fingerprint(
+		final RandomAccessibleInterval<? extends RealType<?>> image)
+	{
+		return fingerprint(image, ParallelHelper.DIRECT, false);
+	}
+
+	/**
+	 * @param pool pool hashing parts of the image in parallel, the result does
+	 *          not depend on it
+	 * @param allValues whether each value of the image is hashed instead of a
+	 *          sample, which reads the whole image
+	 */
+	String fingerprint(RandomAccessibleInterval<? extends RealType<?>> image,
+		ExecutorService pool, boolean allValues);
+
+	/**
+	 * @param rankError rank error of approximate percentiles, 0 if exact
+	 * @param persistent whether the entries of {@link #getCacheFile()} are
+	 *          looked up as well
+	 * @return the percentile values of each normalized hyperslice of the image
+	 *         with the fingerprint, one row for the whole image, or null if
+	 *         they are not cached
+	 */
+	float[][] get(String fingerprint, float[] percentiles, double rankError,
+		boolean persistent);
+
+	/**
+	 * Stores the values of all hyperslices of one image as a single entry.
+	 *
+	 * @param persistent whether the entry is also written to
+	 *          {@link #getCacheFile()}
+	 */
+	void put(String fingerprint, float[] percentiles, double rankError,
+		float[][] values, boolean persistent);
+
+	/**
+	 * Removes all entries, also from {@link #getCacheFile()}.
+	 */
+	void clear();
+
+	File getCacheFile();
+
+}
@@ -0,0 +1,49 @@
+
+package de.csbdresden.csbdeep.normalize;
+
+import net.imglib2.converter.Converter;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.FloatType;
+
+/**
+ * Applies the mapping of a {@link PercentileNormalizer} to single values, so
+ * that inputs can be normalized lazily, e.g. while tiles are copied into
+ * tensors, instead of being copied into a normalized float image first.
+ */
+public class NormalizationConverter<T extends RealType<T>> implements
+	Converter<T, FloatType>
+{
+
+	private final float low;
+	private final float factor;
+	private final float min;
+	private final float max;
+	private final boolean clip;
+
+	/**
+	 * @param low value mapped to {@code min}
+	 * @param factor scale applied to the difference to {@code low}
+	 * @param clip whether values are clipped to [min, max] or only kept at or
+	 *          above 0
+	 */
+	public NormalizationConverter(final float low, final float factor,
+		final float min, final float max, final boolean clip)
+	{
+		this.low = low;
+		this.factor = factor;
+		this.min = min;
+		this.max = max;
+		this.clip = clip;
+	}
+
+	@Override
+	public void convert(final T input, final FloatType output) {
+		output.set(normalize(input.getRealFloat()));
+	}
+
+	public float normalize(final float value) {
+		if (clip) return Math.max(min, Math.min(max, (value - low) * factor + min));
+		return Math.max(0, (value - low) * factor + min);
+	}
+
+}
@@ -29,6 +29,8 @@
 
 package de.csbdresden.csbdeep.normalize;
 
+import org.scijava.Cancelable;
+
 import net.imagej.Dataset;
 import net.imagej.DatasetService;
 import net.imagej.ops.OpService;
@@ -39,4 +41,10 @@ public interface Normalizer {
 		DatasetService datasetService);
 
 	void setup(float[] percentiles, float[] destValues, boolean clip);
+
+	/**
+	 * Normalization checks this regularly and stops with a
+	 * {@link java.util.concurrent.CancellationException} once it is canceled.
+	 */
+	void setCancelable(Cancelable cancelable);
 }
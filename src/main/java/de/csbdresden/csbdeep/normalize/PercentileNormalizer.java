@@ -29,48 +29,98 @@
 
 package de.csbdresden.csbdeep.normalize;
 
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.scijava.Cancelable;
+
+import de.csbdresden.csbdeep.util.CancellationHelper;
+import de.csbdresden.csbdeep.util.DatasetHelper;
+import de.csbdresden.csbdeep.util.ParallelHelper;
 import net.imagej.Dataset;
 import net.imagej.DatasetService;
+import net.imagej.ImgPlus;
 import net.imagej.axis.AxisType;
+import net.imagej.axis.CalibratedAxis;
 import net.imagej.ops.OpService;
 import net.imglib2.Cursor;
-import net.imglib2.RandomAccess;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.IterableInterval;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.planar.PlanarImg;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.GenericByteType;
+import net.imglib2.type.numeric.integer.GenericIntType;
+import net.imglib2.type.numeric.integer.GenericShortType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
 import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.IterableRandomAccessibleInterval;
+import net.imglib2.view.Views;
 
 public class PercentileNormalizer<T extends RealType<T> & NativeType<T>>
 	implements Normalizer
 {
 
+	// larger images are not copied to compute the percentiles
+	private static final long IN_MEMORY_PERCENTILE_LIMIT = 1 << 26;
+
 	private float[] percentiles = new float[] { 3, 99.7f };
 	private float[] destValues = new float[] { 0, 1 };
 	private float[] resValues;
+	private float[] percentileValues;
 	private boolean clip = false;
+	private double rankError = 0;
+	private Cancelable cancelable;
+	private ExecutorService pool;
+	private AxisType[] separateAxes = new AxisType[0];
+	private float[][] sliceValues;
+	private NormalizationCacheService statisticsCache;
+	private boolean persistStatistics = false;
+	private boolean hashAllValues = false;
 
 	protected float min;
 	protected float max;
 	protected float factor;
 
+	/**
+	 * Normalizes values of primitive arrays into a float array.
+	 */
+	private interface ArrayNormalizer {
+
+		void normalize(Object array, int offset, float[] dst, int dstOffset,
+			int length);
+	}
+
 	public float normalize( final T val ) {
+		return normalize( val.getRealFloat() );
+	}
+
+	private float normalize( final float value ) {
 		if ( clip ) { return Math.max(
 				min,
-				Math.min( max, ( val.getRealFloat() - resValues[0] ) * factor + min ) ); }
-		return Math.max( 0, ( val.getRealFloat() - resValues[0] ) * factor + min );
+				Math.min( max, ( value - resValues[0] ) * factor + min ) ); }
+		return Math.max( 0, ( value - resValues[0] ) * factor + min );
 	}
 
 	@Override
 	public Dataset normalize(final Dataset im, OpService opService,
 		DatasetService datasetService)
 	{
-		HistogramPercentile<T> percentile = new HistogramPercentile<>();
-		resValues = percentile.computePercentiles((RandomAccessibleInterval<T>) im
-			.getImgPlus(), percentiles, opService);
-		min = destValues[0];
-		max = destValues[1];
-		factor = (destValues[1] - destValues[0]) / (resValues[1] - resValues[0]);
-
 		long[] dims = new long[im.numDimensions()];
 		im.dimensions(dims);
 		AxisType[] axes = new AxisType[im.numDimensions()];
@@ -78,21 +128,506 @@ public class PercentileNormalizer<T extends RealType<T> & NativeType<T>>
 			axes[i] = im.axis(i).type();
 		}
 
-		final Dataset output = datasetService.create(new FloatType(), dims,
-			"normalized input", axes);
+		final Dataset output = createOutput(im, dims, axes, datasetService);
 
-		final RandomAccess<T> in = (RandomAccess<T>) im.getImgPlus().randomAccess();
-		final Cursor<FloatType> out = (Cursor<FloatType>) output.getImgPlus()
-			.localizingCursor();
-		while (out.hasNext()) {
-			out.fwd();
-			in.setPosition(out);
-			out.get().set(normalize(in.get()));
-		}
+		normalize((RandomAccessibleInterval<T>) im.getImgPlus(),
+			(RandomAccessibleInterval<FloatType>) output.getImgPlus(), opService,
+			getSeparateDimensions(im));
 
 		return output;
 	}
 
+	/**
+	 * @param axes axes along which each hyperslice is normalized with its own
+	 *          percentiles, e.g. {@link net.imagej.axis.Axes#CHANNEL} and
+	 *          {@link net.imagej.axis.Axes#TIME}
+	 */
+	public void setSeparateAxes(final AxisType... axes) {
+		this.separateAxes = axes;
+	}
+
+	public AxisType[] getSeparateAxes() {
+		return separateAxes;
+	}
+
+	/**
+	 * @return the dimensions of the separate axes which {@code im} has with
+	 *         more than one element
+	 */
+	public int[] getSeparateDimensions(final Dataset im) {
+		final List<Integer> dims = new ArrayList<>();
+		for (final AxisType axis : separateAxes) {
+			final int d = im.dimensionIndex(axis);
+			if (d >= 0 && im.dimension(d) > 1) dims.add(d);
+		}
+		return dims.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * Inputs held in cell images or too large for the memory are normalized
+	 * into a cell image with the same cells, cached on disk if needed.
+	 */
+	private Dataset createOutput(final Dataset im, final long[] dims,
+		final AxisType[] axes, final DatasetService datasetService)
+	{
+		final long[] cellDims = DatasetHelper.getCellDimensions(im.getImgPlus());
+		if (cellDims == null && DatasetHelper.fitsIntoMemory(Intervals
+			.numElements(dims) * Float.BYTES))
+		{
+			return datasetService.create(new FloatType(), dims, "normalized input",
+				axes);
+		}
+		int[] cellSize = null;
+		if (cellDims != null) {
+			cellSize = new int[dims.length];
+			for (int i = 0; i < dims.length; i++) {
+				cellSize[i] = (int) Math.max(1, cellDims[i] > 0 ? cellDims[i] : 1);
+			}
+		}
+		final Img<FloatType> img = DatasetHelper.createCellImg(new FloatType(),
+			dims, cellSize);
+		final CalibratedAxis[] calibratedAxes = new CalibratedAxis[dims.length];
+		for (int i = 0; i < dims.length; i++) {
+			calibratedAxes[i] = im.axis(i).copy();
+		}
+		return datasetService.create(new ImgPlus<>(img, "normalized input",
+			calibratedAxes));
+	}
+
+	/**
+	 * Normalizes {@code in} into {@code out}, which needs the same interval.
+	 * The percentile values are computed from {@code in} unless they were set
+	 * with {@link #setPercentileValues(float[])}.
+	 */
+	public void normalize(final RandomAccessibleInterval<T> in,
+		final RandomAccessibleInterval<FloatType> out, final OpService opService)
+	{
+		prepare(in, opService);
+		if (applyToArrays(in, out)) return;
+		ParallelHelper.map(pool, ParallelHelper.split(out, ParallelHelper
+			.getNumThreads()), chunk -> {
+				// same interval, so both flat cursors visit the same positions
+				final Cursor<T> inCursor = Views.flatIterable(Views.interval(in, chunk))
+					.cursor();
+				final Cursor<FloatType> outCursor = Views.flatIterable(Views.interval(
+					out, chunk)).cursor();
+				long i = 0;
+				while (outCursor.hasNext()) {
+					if (i++ % CancellationHelper.CHUNK_SIZE == 0) {
+						CancellationHelper.checkCanceled(cancelable);
+					}
+					outCursor.next().set(normalize(inCursor.next().getRealFloat()));
+				}
+				return null;
+			});
+	}
+
+	/**
+	 * Normalizes each hyperslice of {@code in} along {@code separateDims} with
+	 * the percentiles of this hyperslice into {@code out}, which needs the same
+	 * interval. The statistics of all hyperslices are collected in one pass
+	 * over the image, with several hyperslices in parallel if there are enough
+	 * of them. Fixed percentile values are used for all hyperslices.
+	 */
+	public void normalize(final RandomAccessibleInterval<T> in,
+		final RandomAccessibleInterval<FloatType> out, final OpService opService,
+		final int... separateDims)
+	{
+		sliceValues = null;
+		if (separateDims.length == 0 || percentileValues != null) {
+			normalize(in, out, opService);
+			return;
+		}
+		final List<Interval> slices = getSlices(in, separateDims);
+		// either the hyperslices or the chunks of each one run in parallel, tasks
+		// on the pool must not wait for other tasks on it
+		final boolean parallelSlices = slices.size() >= ParallelHelper
+			.getNumThreads();
+		final ExecutorService slicePool = parallelSlices ? pool
+			: ParallelHelper.DIRECT;
+		final ExecutorService chunkPool = parallelSlices ? ParallelHelper.DIRECT
+			: pool;
+		// all hyperslices are one cache entry, stored once per normalization
+		final String fingerprint = statisticsCache == null ? null
+			: statisticsCache.fingerprint(in, pool, hashAllValues) + " separate " +
+				Arrays.toString(separateDims);
+		sliceValues = fingerprint == null ? null : statisticsCache.get(fingerprint,
+			percentiles, rankError, persistStatistics);
+		if (sliceValues == null) {
+			sliceValues = ParallelHelper.map(slicePool, slices, slice -> scan(Views
+				.interval(in, slice), opService, chunkPool)).toArray(new float[0][]);
+			if (fingerprint != null) statisticsCache.put(fingerprint, percentiles,
+				rankError, sliceValues, persistStatistics);
+		}
+
+		min = destValues[0];
+		max = destValues[1];
+		final List<Interval> chunks = new ArrayList<>();
+		final List<NormalizationConverter<T>> converters = new ArrayList<>();
+		for (int i = 0; i < slices.size(); i++) {
+			final float[] slice = sliceValues[i];
+			final NormalizationConverter<T> converter = new NormalizationConverter<>(
+				slice[0], getFactor(slice), min, max, clip);
+			for (final Interval chunk : ParallelHelper.split(slices.get(i),
+				parallelSlices ? 1 : ParallelHelper.getNumThreads()))
+			{
+				chunks.add(chunk);
+				converters.add(converter);
+			}
+		}
+		resValues = sliceValues[0];
+		factor = getFactor(resValues);
+		final List<Integer> indices = IntStream.range(0, chunks.size()).boxed()
+			.collect(Collectors.toList());
+		ParallelHelper.map(pool, indices, index -> {
+			final Interval chunk = chunks.get(index);
+			final NormalizationConverter<T> converter = converters.get(index);
+			final Cursor<T> inCursor = Views.flatIterable(Views.interval(in, chunk))
+				.cursor();
+			final Cursor<FloatType> outCursor = Views.flatIterable(Views.interval(
+				out, chunk)).cursor();
+			long i = 0;
+			while (outCursor.hasNext()) {
+				if (i++ % CancellationHelper.CHUNK_SIZE == 0) {
+					CancellationHelper.checkCanceled(cancelable);
+				}
+				outCursor.next().set(converter.normalize(inCursor.next()
+					.getRealFloat()));
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * @return the percentile values of each hyperslice of the last
+	 *         normalization with separate dimensions, in the order of the
+	 *         hyperslices with the first dimension fastest, or null
+	 */
+	public float[][] getSliceValues() {
+		return sliceValues;
+	}
+
+	/**
+	 * @return the hyperslices of the interval along the dimensions, each one
+	 *         keeping all dimensions with size 1 along the separated ones
+	 */
+	private static List<Interval> getSlices(final Interval interval,
+		final int[] dims)
+	{
+		final List<Interval> res = new ArrayList<>();
+		final long[] min = Intervals.minAsLongArray(interval);
+		final long[] max = Intervals.maxAsLongArray(interval);
+		for (final int d : dims) {
+			max[d] = min[d];
+		}
+		while (true) {
+			res.add(new FinalInterval(min, max));
+			int i = 0;
+			for (; i < dims.length; i++) {
+				final int d = dims[i];
+				if (min[d] < interval.max(d)) {
+					min[d]++;
+					max[d]++;
+					break;
+				}
+				min[d] = max[d] = interval.min(d);
+			}
+			if (i == dims.length) return res;
+		}
+	}
+
+	/**
+	 * Computes the mapping of {@code in} like
+	 * {@link #normalize(RandomAccessibleInterval, RandomAccessibleInterval, OpService)}
+	 * without normalizing any pixels.
+	 *
+	 * @return converter applying the mapping to single values
+	 */
+	public NormalizationConverter<T> prepare(final RandomAccessibleInterval<T> in,
+		final OpService opService)
+	{
+		resValues = percentileValues != null ? percentileValues
+			: computePercentileValues(in, opService);
+		min = destValues[0];
+		max = destValues[1];
+		factor = getFactor(resValues);
+		return new NormalizationConverter<>(resValues[0], factor, min, max, clip);
+	}
+
+	/**
+	 * @return the scale mapping the range of the percentile values to the
+	 *         destination range, 1 for a constant image or hyperslice, which is
+	 *         then only shifted to the lower destination value
+	 */
+	private float getFactor(final float[] values) {
+		final float range = values[1] - values[0];
+		if (!(range > 0)) return 1;
+		return (destValues[1] - destValues[0]) / range;
+	}
+
+	/**
+	 * Fast path for {@link ArrayImg}s and {@link PlanarImg}s of common types,
+	 * normalizing straight from the primitive arrays. Ranges of the flat index
+	 * are normalized in parallel.
+	 *
+	 * @return false if the images are not supported and nothing was done
+	 */
+	private boolean applyToArrays(final RandomAccessibleInterval<T> in,
+		final RandomAccessibleInterval<FloatType> out)
+	{
+		if (!Arrays.equals(Intervals.dimensionsAsLongArray(in), Intervals
+			.dimensionsAsLongArray(out))) return false;
+		final Object[] src = storageArrays(in);
+		final Object[] dst = storageArrays(out);
+		if (src == null || dst == null || !allInstances(dst, float[].class)) {
+			return false;
+		}
+		final ArrayNormalizer normalizer = createArrayNormalizer(Util
+			.getTypeFromInterval(in), src);
+		if (normalizer == null) return false;
+		final long size = Intervals.numElements(in);
+		final int srcLength = Array.getLength(src[0]);
+		final int dstLength = ((float[]) dst[0]).length;
+		if ((long) srcLength * src.length != size || (long) dstLength *
+			dst.length != size) return false;
+
+		ParallelHelper.map(pool, ParallelHelper.split(new FinalInterval(size),
+			ParallelHelper.getNumThreads()), range -> {
+				long index = range.min(0);
+				while (index <= range.max(0)) {
+					CancellationHelper.checkCanceled(cancelable);
+					final int srcOffset = (int) (index % srcLength);
+					final int dstOffset = (int) (index % dstLength);
+					final int length = (int) Math.min(Math.min(srcLength - srcOffset,
+						dstLength - dstOffset), Math.min(range.max(0) - index + 1,
+							CancellationHelper.CHUNK_SIZE));
+					normalizer.normalize(src[(int) (index / srcLength)], srcOffset,
+						(float[]) dst[(int) (index / dstLength)], dstOffset, length);
+					index += length;
+				}
+				return null;
+			});
+		return true;
+	}
+
+	/**
+	 * @return the arrays of an {@link ArrayImg} or the planes of a
+	 *         {@link PlanarImg}, in flat iteration order, or null
+	 */
+	private static Object[] storageArrays(RandomAccessibleInterval<?> image) {
+		while (image instanceof ImgPlus) {
+			image = ((ImgPlus<?>) image).getImg();
+		}
+		if (image instanceof ArrayImg) {
+			final Object array = storageArray(((ArrayImg<?, ?>) image).update(null));
+			return array == null ? null : new Object[] { array };
+		}
+		if (image instanceof PlanarImg) {
+			final PlanarImg<?, ?> img = (PlanarImg<?, ?>) image;
+			final Object[] planes = new Object[img.numSlices()];
+			for (int i = 0; i < planes.length; i++) {
+				planes[i] = storageArray(img.getPlane(i));
+				if (planes[i] == null) return null;
+			}
+			return planes;
+		}
+		return null;
+	}
+
+	private static Object storageArray(final Object access) {
+		return access instanceof ArrayDataAccess ? ((ArrayDataAccess<?>) access)
+			.getCurrentStorageArray() : null;
+	}
+
+	private static boolean allInstances(final Object[] arrays,
+		final Class<?> arrayClass)
+	{
+		for (final Object array : arrays) {
+			if (!arrayClass.isInstance(array)) return false;
+		}
+		return true;
+	}
+
+	private ArrayNormalizer createArrayNormalizer(final Object type,
+		final Object[] arrays)
+	{
+		if (type instanceof FloatType && allInstances(arrays, float[].class)) {
+			return (array, offset, dst, dstOffset, length) -> {
+				final float[] a = (float[]) array;
+				for (int i = 0; i < length; i++) {
+					dst[dstOffset + i] = normalize(a[offset + i]);
+				}
+			};
+		}
+		if (type instanceof DoubleType && allInstances(arrays, double[].class)) {
+			return (array, offset, dst, dstOffset, length) -> {
+				final double[] a = (double[]) array;
+				for (int i = 0; i < length; i++) {
+					dst[dstOffset + i] = normalize((float) a[offset + i]);
+				}
+			};
+		}
+		if (type instanceof UnsignedByteType && allInstances(arrays,
+			byte[].class))
+		{
+			return (array, offset, dst, dstOffset, length) -> {
+				final byte[] a = (byte[]) array;
+				for (int i = 0; i < length; i++) {
+					dst[dstOffset + i] = normalize(a[offset + i] & 0xff);
+				}
+			};
+		}
+		if (type instanceof GenericByteType && allInstances(arrays, byte[].class)) {
+			return (array, offset, dst, dstOffset, length) -> {
+				final byte[] a = (byte[]) array;
+				for (int i = 0; i < length; i++) {
+					dst[dstOffset + i] = normalize(a[offset + i]);
+				}
+			};
+		}
+		if (type instanceof UnsignedShortType && allInstances(arrays,
+			short[].class))
+		{
+			return (array, offset, dst, dstOffset, length) -> {
+				final short[] a = (short[]) array;
+				for (int i = 0; i < length; i++) {
+					dst[dstOffset + i] = normalize(a[offset + i] & 0xffff);
+				}
+			};
+		}
+		if (type instanceof GenericShortType && allInstances(arrays,
+			short[].class))
+		{
+			return (array, offset, dst, dstOffset, length) -> {
+				final short[] a = (short[]) array;
+				for (int i = 0; i < length; i++) {
+					dst[dstOffset + i] = normalize(a[offset + i]);
+				}
+			};
+		}
+		if (type instanceof UnsignedIntType && allInstances(arrays, int[].class)) {
+			return (array, offset, dst, dstOffset, length) -> {
+				final int[] a = (int[]) array;
+				for (int i = 0; i < length; i++) {
+					dst[dstOffset + i] = normalize(a[offset + i] & 0xffffffffL);
+				}
+			};
+		}
+		if (type instanceof GenericIntType && allInstances(arrays, int[].class)) {
+			return (array, offset, dst, dstOffset, length) -> {
+				final int[] a = (int[]) array;
+				for (int i = 0; i < length; i++) {
+					dst[dstOffset + i] = normalize(a[offset + i]);
+				}
+			};
+		}
+		return null;
+	}
+
+	/**
+	 * @return the values of the configured percentiles in {@code src}
+	 */
+	public float[] computePercentileValues(final RandomAccessibleInterval<T> src,
+		final OpService opService)
+	{
+		return computePercentileValues(src, opService, pool);
+	}
+
+	private float[] computePercentileValues(
+		final RandomAccessibleInterval<T> src, final OpService opService,
+		final ExecutorService pool)
+	{
+		if (statisticsCache == null) return scan(src, opService, pool);
+		final String fingerprint = statisticsCache.fingerprint(src, pool,
+			hashAllValues);
+		final float[][] cached = statisticsCache.get(fingerprint, percentiles,
+			rankError, persistStatistics);
+		if (cached != null) return cached[0];
+		final float[] values = scan(src, opService, pool);
+		statisticsCache.put(fingerprint, percentiles, rankError, new float[][] {
+			values }, persistStatistics);
+		return values;
+	}
+
+	private float[] scan(final RandomAccessibleInterval<T> src,
+		final OpService opService, final ExecutorService pool)
+	{
+		if (IntegerHistogramPercentile.supports(Util.getTypeFromInterval(src))) {
+			final IntegerHistogramPercentile<T> percentile =
+				new IntegerHistogramPercentile<>();
+			percentile.setCancelable(cancelable);
+			percentile.setExecutorService(pool);
+			return percentile.computePercentiles(src, percentiles, opService);
+		}
+		if (rankError > 0) {
+			final SketchPercentile<T> percentile = new SketchPercentile<>(rankError);
+			percentile.setCancelable(cancelable);
+			percentile.setExecutorService(pool);
+			return percentile.computePercentiles(src, percentiles, opService);
+		}
+		if (Intervals.numElements(src) > IN_MEMORY_PERCENTILE_LIMIT || DatasetHelper
+			.getCellDimensions(src) != null)
+		{
+			final StreamingPercentile<T> percentile = new StreamingPercentile<>();
+			percentile.setCancelable(cancelable);
+			return percentile.computePercentiles(src, percentiles, opService);
+		}
+		HistogramPercentile<T> percentile = new HistogramPercentile<>();
+		percentile.setCancelable(cancelable);
+		// percentiles are computed by iterating over the image
+		final RandomAccessibleInterval<T> iterable = src instanceof IterableInterval
+			? src : new IterableRandomAccessibleInterval<>(src);
+		return percentile.computePercentiles(iterable, percentiles, opService);
+	}
+
+	/**
+	 * Use fixed percentile values, e.g. statistics of a whole time-lapse,
+	 * instead of computing them from each normalized image.
+	 *
+	 * @param percentileValues null to compute them from each image again
+	 */
+	public void setPercentileValues(final float[] percentileValues) {
+		this.percentileValues = percentileValues;
+	}
+
+	/**
+	 * @param statisticsCache cache of the percentile values of previously
+	 *          normalized images, null to always compute them
+	 */
+	public void setStatisticsCache(
+		final NormalizationCacheService statisticsCache)
+	{
+		setStatisticsCache(statisticsCache, false);
+	}
+
+	/**
+	 * @param persistent whether the values are also looked up in and written to
+	 *          the cache file
+	 */
+	public void setStatisticsCache(
+		final NormalizationCacheService statisticsCache, final boolean persistent)
+	{
+		this.statisticsCache = statisticsCache;
+		this.persistStatistics = persistent;
+	}
+
+	/**
+	 * @param hashAllValues whether cached statistics are looked up by a hash of
+	 *          all values of the image instead of its source file and a sample
+	 *          of its values, see {@link NormalizationCacheService}
+	 */
+	public void setHashAllValues(final boolean hashAllValues) {
+		this.hashAllValues = hashAllValues;
+	}
+
+	/**
+	 * @param pool pool for computing the statistics in parallel, the common
+	 *          pool if null
+	 */
+	public void setExecutorService(final ExecutorService pool) {
+		this.pool = pool;
+	}
+
 	@Override
 	public void setup(final float[] percentiles, final float[] destValues,
 		boolean clip)
@@ -102,6 +637,26 @@ public class PercentileNormalizer<T extends RealType<T> & NativeType<T>>
 		this.percentiles = percentiles;
 		this.destValues = destValues;
 		this.clip = clip;
+		this.rankError = 0;
+	}
+
+	/**
+	 * Like {@link #setup(float[], float[], boolean)}, but non-integer images use
+	 * approximate percentiles from a {@link SketchPercentile}.
+	 *
+	 * @param rankError allowed error of the percentile ranks relative to the
+	 *          number of pixels, 0 for exact percentiles
+	 */
+	public void setup(final float[] percentiles, final float[] destValues,
+		final boolean clip, final double rankError)
+	{
+		setup(percentiles, destValues, clip);
+		this.rankError = rankError;
+	}
+
+	@Override
+	public void setCancelable(final Cancelable cancelable) {
+		this.cancelable = cancelable;
 	}
 
 	public float[] getResValues() {
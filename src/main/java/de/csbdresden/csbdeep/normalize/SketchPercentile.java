@@ -0,0 +1,91 @@
+
+package de.csbdresden.csbdeep.normalize;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import org.scijava.Cancelable;
+
+import de.csbdresden.csbdeep.util.CancellationHelper;
+import de.csbdresden.csbdeep.util.ParallelHelper;
+import net.imagej.ops.OpService;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
+
+/**
+ * Computes approximate percentiles in a single pass with a {@link KllSketch}
+ * per chunk of the image. The chunks are sketched in parallel and the sketches
+ * merged afterwards. The rank of each result differs from the exact rank by at
+ * most the rank error times the number of values with a confidence of 99%.
+ * Memory only depends on the rank error. NaN values are ignored.
+ */
+public class SketchPercentile<T extends RealType<T>> implements
+	Percentile<T>
+{
+
+	private final double rankError;
+	private Cancelable cancelable;
+	private ExecutorService pool;
+
+	/**
+	 * @param rankError allowed error of the ranks relative to the number of
+	 *          values, e.g. 0.001 for 0.1%
+	 */
+	public SketchPercentile(final double rankError) {
+		if (!(rankError > 0 && rankError < 1)) {
+			throw new IllegalArgumentException("Rank error has to be in (0, 1): " +
+				rankError);
+		}
+		this.rankError = rankError;
+	}
+
+	public void setCancelable(final Cancelable cancelable) {
+		this.cancelable = cancelable;
+	}
+
+	/**
+	 * @param pool pool sketching the chunks, the common pool if null
+	 */
+	public void setExecutorService(final ExecutorService pool) {
+		this.pool = pool;
+	}
+
+	@Override
+	public float[] computePercentiles(final RandomAccessibleInterval<T> src,
+		final float[] percentiles, final OpService opService)
+	{
+		final int k = KllSketch.getK(rankError);
+		final List<Interval> chunks = ParallelHelper.split(src, ParallelHelper
+			.getNumThreads());
+		final List<KllSketch> sketches = ParallelHelper.map(pool, chunks,
+			chunk -> {
+				// seeded by position, the result does not depend on the scheduling
+				final KllSketch sketch = new KllSketch(k, chunks.indexOf(chunk));
+				long i = 0;
+				for (final T value : Views.interval(src, chunk)) {
+					if (i++ % CancellationHelper.CHUNK_SIZE == 0) {
+						CancellationHelper.checkCanceled(cancelable);
+					}
+					sketch.update(value.getRealFloat());
+				}
+				return sketch;
+			});
+		CancellationHelper.checkCanceled(cancelable);
+
+		final KllSketch sketch = sketches.get(0);
+		for (int i = 1; i < sketches.size(); i++) {
+			sketch.merge(sketches.get(i));
+		}
+		final long count = sketch.getCount();
+		final long[] ranks = new long[percentiles.length];
+		for (int i = 0; i < ranks.length; i++) {
+			// same ranks as HistogramPercentile
+			ranks[i] = Math.min(count - 1, Math.max(0, Math.round((count - 1) *
+				(double) percentiles[i] / 100.)));
+		}
+		return sketch.getQuantiles(ranks);
+	}
+
+}
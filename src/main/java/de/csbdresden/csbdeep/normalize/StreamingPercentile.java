@@ -0,0 +1,231 @@
+
+package de.csbdresden.csbdeep.normalize;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.scijava.Cancelable;
+
+import de.csbdresden.csbdeep.util.CancellationHelper;
+import net.imagej.ops.OpService;
+import net.imglib2.Cursor;
+import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
+
+/**
+ * Computes exact percentiles without copying the image. The values are read in
+ * a few passes in iteration order, which follows the cells of cell images: the
+ * first pass finds the value range, the second one counts the values of a
+ * histogram and the last one only keeps the values of the bins containing the
+ * requested ranks. Bins with too many values are refined with another
+ * histogram of the bin. NaN values are ignored.
+ */
+public class StreamingPercentile<T extends RealType<T>> implements
+	Percentile<T>
+{
+
+	private static final int NUM_BINS = 1 << 16;
+	private static final int MAX_COLLECTED = 1 << 22;
+
+	private final int numBins;
+	private final int maxCollected;
+	private Cancelable cancelable;
+
+	public StreamingPercentile() {
+		this(NUM_BINS, MAX_COLLECTED);
+	}
+
+	StreamingPercentile(final int numBins, final int maxCollected) {
+		this.numBins = numBins;
+		this.maxCollected = maxCollected;
+	}
+
+	public void setCancelable(final Cancelable cancelable) {
+		this.cancelable = cancelable;
+	}
+
+	@Override
+	public float[] computePercentiles(final RandomAccessibleInterval<T> src,
+		final float[] percentiles, final OpService opService)
+	{
+		final IterableInterval<T> iterable = Views.iterable(src);
+		final float[] res = new float[percentiles.length];
+
+		float min = Float.POSITIVE_INFINITY;
+		float max = Float.NEGATIVE_INFINITY;
+		long count = 0;
+		final Cursor<T> cursor = iterable.cursor();
+		while (cursor.hasNext()) {
+			if (count % CancellationHelper.CHUNK_SIZE == 0) {
+				CancellationHelper.checkCanceled(cancelable);
+			}
+			final float value = cursor.next().getRealFloat();
+			if (Float.isNaN(value)) continue;
+			if (value < min) min = value;
+			if (value > max) max = value;
+			count++;
+		}
+		if (count == 0) {
+			Arrays.fill(res, Float.NaN);
+			return res;
+		}
+
+		// same ranks as HistogramPercentile
+		final long[] ranks = new long[percentiles.length];
+		for (int i = 0; i < ranks.length; i++) {
+			ranks[i] = Math.min(count - 1, Math.max(0, Math.round((count - 1) *
+				(double) percentiles[i] / 100.)));
+		}
+		return select(iterable, new ArrayList<>(), min, max, ranks);
+	}
+
+	/**
+	 * @param levels the bins of the parent histograms the values have to be in
+	 * @param min smallest value within the levels
+	 * @param max largest value within the levels
+	 * @param ranks ranks among the values within the levels
+	 */
+	private float[] select(final IterableInterval<T> src,
+		final List<Level> levels, final float min, final float max,
+		final long[] ranks)
+	{
+		final float[] res = new float[ranks.length];
+		if (min == max) {
+			Arrays.fill(res, min);
+			return res;
+		}
+
+		final Level level = new Level(min, max, numBins);
+		final long[] counts = new long[numBins];
+		final float[] binMin = new float[numBins];
+		final float[] binMax = new float[numBins];
+		Arrays.fill(binMin, Float.POSITIVE_INFINITY);
+		Arrays.fill(binMax, Float.NEGATIVE_INFINITY);
+		long i = 0;
+		final Cursor<T> cursor = src.cursor();
+		while (cursor.hasNext()) {
+			if (i++ % CancellationHelper.CHUNK_SIZE == 0) {
+				CancellationHelper.checkCanceled(cancelable);
+			}
+			final float value = cursor.next().getRealFloat();
+			if (!contains(levels, value)) continue;
+			final int bin = level.bin(value);
+			counts[bin]++;
+			if (value < binMin[bin]) binMin[bin] = value;
+			if (value > binMax[bin]) binMax[bin] = value;
+		}
+
+		// bin and rank within the bin of each requested rank
+		final int[] bins = new int[ranks.length];
+		final long[] binRanks = new long[ranks.length];
+		final Map<Integer, float[]> collected = new HashMap<>();
+		long collectedCount = 0;
+		for (int r = 0; r < ranks.length; r++) {
+			long before = 0;
+			int bin = 0;
+			while (bin < numBins - 1 && before + counts[bin] <= ranks[r]) {
+				before += counts[bin++];
+			}
+			bins[r] = bin;
+			binRanks[r] = ranks[r] - before;
+			if (binMin[bin] == binMax[bin] || collected.containsKey(bin)) continue;
+			if (collectedCount + counts[bin] <= maxCollected) {
+				collected.put(bin, new float[(int) counts[bin]]);
+				collectedCount += counts[bin];
+			}
+		}
+		if (!collected.isEmpty()) {
+			collect(src, levels, level, collected);
+		}
+
+		for (int r = 0; r < ranks.length; r++) {
+			final int bin = bins[r];
+			if (binMin[bin] == binMax[bin]) {
+				res[r] = binMin[bin];
+			}
+			else if (collected.containsKey(bin)) {
+				res[r] = collected.get(bin)[(int) binRanks[r]];
+			}
+			else {
+				final List<Level> subLevels = new ArrayList<>(levels);
+				subLevels.add(level.select(bin));
+				res[r] = select(src, subLevels, binMin[bin], binMax[bin],
+					new long[] { binRanks[r] })[0];
+			}
+		}
+		return res;
+	}
+
+	private void collect(final IterableInterval<T> src, final List<Level> levels,
+		final Level level, final Map<Integer, float[]> collected)
+	{
+		final Map<Integer, int[]> fill = new HashMap<>();
+		for (final Integer bin : collected.keySet()) {
+			fill.put(bin, new int[1]);
+		}
+		long i = 0;
+		final Cursor<T> cursor = src.cursor();
+		while (cursor.hasNext()) {
+			if (i++ % CancellationHelper.CHUNK_SIZE == 0) {
+				CancellationHelper.checkCanceled(cancelable);
+			}
+			final float value = cursor.next().getRealFloat();
+			if (!contains(levels, value)) continue;
+			final int bin = level.bin(value);
+			final float[] values = collected.get(bin);
+			if (values != null) values[fill.get(bin)[0]++] = value;
+		}
+		for (final float[] values : collected.values()) {
+			Arrays.sort(values);
+		}
+	}
+
+	private static boolean contains(final List<Level> levels,
+		final float value)
+	{
+		if (Float.isNaN(value)) return false;
+		for (final Level level : levels) {
+			if (level.bin(value) != level.selected) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Histogram binning of a value range, {@code selected} is the bin values
+	 * have to be in when the level is used as a filter.
+	 */
+	private static class Level {
+
+		private final double min;
+		private final double scale;
+		private final int numBins;
+		private final int selected;
+
+		Level(final float min, final float max, final int numBins) {
+			this(min, numBins / ((double) max - min), numBins, -1);
+		}
+
+		private Level(final double min, final double scale, final int numBins,
+			final int selected)
+		{
+			this.min = min;
+			this.scale = scale;
+			this.numBins = numBins;
+			this.selected = selected;
+		}
+
+		int bin(final float value) {
+			return (int) Math.max(0, Math.min(numBins - 1, (value - min) * scale));
+		}
+
+		Level select(final int bin) {
+			return new Level(min, scale, numBins, bin);
+		}
+	}
+
+}
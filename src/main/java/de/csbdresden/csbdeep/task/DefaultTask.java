@@ -1,6 +1,8 @@
 
 package de.csbdresden.csbdeep.task;
 
+import de.csbdresden.csbdeep.util.CancellationHelper;
+
 public class DefaultTask implements Task {
 
 	protected boolean started = false;
@@ -12,6 +14,9 @@ public class DefaultTask implements Task {
 	protected int currentIteration = 0;
 	protected int currentStep = 0;
 	protected String title;
+	protected volatile boolean canceled = false;
+	protected String cancelReason;
+	protected final TaskMetrics metrics = new TaskMetrics();
 
 	@Override
 	public void setManager(final TaskManager manager) {
@@ -43,6 +48,7 @@ public class DefaultTask implements Task {
 	public void setStarted() {
 		started = true;
 		failed = false;
+		metrics.start();
 		debug(getClassName() + " started");
 		updateManager();
 	}
@@ -51,6 +57,7 @@ public class DefaultTask implements Task {
 	public void setIdle() {
 		started = false;
 		failed = false;
+		metrics.stop();
 		debug(getClassName() + " idle");
 
 		updateManager();
@@ -59,6 +66,7 @@ public class DefaultTask implements Task {
 	@Override
 	public void setFailed() {
 		failed = true;
+		metrics.stop();
 		debug(getClassName() + " failed");
 		updateManager();
 	}
@@ -72,6 +80,7 @@ public class DefaultTask implements Task {
 	@Override
 	public void setFinished(final boolean finished) {
 		this.finished = finished;
+		if (finished) metrics.stop();
 		updateManager();
 	}
 
@@ -183,17 +192,33 @@ public class DefaultTask implements Task {
 
 	@Override
 	public boolean isCanceled() {
-		return false;
+		return canceled;
 	}
 
 	@Override
 	public void cancel(String reason) {
-
+		cancelReason = reason;
+		canceled = true;
+		debug(getClassName() + " canceled");
 	}
 
 	@Override
 	public String getCancelReason() {
-		return null;
+		return cancelReason;
+	}
+
+	/**
+	 * Throws a {@link java.util.concurrent.CancellationException} if this task
+	 * was canceled or the current thread was interrupted. Long running loops
+	 * should call this every few thousand iterations.
+	 */
+	protected void checkCanceled() {
+		CancellationHelper.checkCanceled(this);
+	}
+
+	@Override
+	public TaskMetrics getMetrics() {
+		return metrics;
 	}
 
 	@Override
@@ -2,7 +2,9 @@
 package de.csbdresden.csbdeep.task;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.scijava.app.StatusService;
 import org.scijava.log.Logger;
@@ -13,6 +15,8 @@ public class DefaultTaskManager implements TaskManager {
 	protected final List<Task> tasks;
 	protected final TaskPresenter taskPresenter;
 	protected final Logger logger;
+	protected volatile boolean canceled = false;
+	protected String cancelReason;
 
 	public DefaultTaskManager(boolean headless, Logger logger, StatusService status, ThreadService threadService) {
 		this.logger = logger;
@@ -45,19 +49,34 @@ public class DefaultTaskManager implements TaskManager {
 
 	@Override
 	public boolean isCanceled() {
-		return false;
+		return canceled;
 	}
 
 	@Override
 	public void cancel(String reason) {
+		setCanceled(reason);
 		for (final Task task : tasks) {
 			task.cancel(reason);
 		}
 	}
 
+	protected void setCanceled(final String reason) {
+		cancelReason = reason;
+		canceled = true;
+	}
+
 	@Override
 	public String getCancelReason() {
-		return null;
+		return cancelReason;
+	}
+
+	@Override
+	public Map<String, TaskMetrics> getMetrics() {
+		final Map<String, TaskMetrics> metrics = new LinkedHashMap<>();
+		for (final Task task : tasks) {
+			metrics.put(task.getTitle(), task.getMetrics());
+		}
+		return metrics;
 	}
 
 	@Override
@@ -0,0 +1,85 @@
+
+package de.csbdresden.csbdeep.task;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe histogram of durations with power-of-two buckets, bucket i
+ * counts durations in [2^(i-1), 2^i) nanoseconds.
+ */
+public class LatencyHistogram {
+
+	private static final int NUM_BUCKETS = 64;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	public void record(final long nanos) {
+		final long value = Math.max(0, nanos);
+		buckets.incrementAndGet(bucket(value));
+		count.incrementAndGet();
+		totalNanos.addAndGet(value);
+		maxNanos.accumulateAndGet(value, Math::max);
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getTotalNanos() {
+		return totalNanos.get();
+	}
+
+	public long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	public long getMeanNanos() {
+		final long n = count.get();
+		return n == 0 ? 0 : totalNanos.get() / n;
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return upper bound of the bucket containing the percentile, never larger
+	 *         than the largest recorded duration
+	 */
+	public long getPercentileNanos(final double percentile) {
+		final long n = count.get();
+		if (n == 0) return 0;
+		final long rank = Math.max(1, (long) Math.ceil(n * percentile / 100.));
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank) return Math.min(upperBound(i), maxNanos.get());
+		}
+		return maxNanos.get();
+	}
+
+	/**
+	 * @return number of durations per bucket, up to the last non-empty bucket
+	 */
+	public long[] getBuckets() {
+		int last = -1;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			if (buckets.get(i) > 0) last = i;
+		}
+		final long[] res = new long[last + 1];
+		for (int i = 0; i <= last; i++) {
+			res[i] = buckets.get(i);
+		}
+		return res;
+	}
+
+	static int bucket(final long nanos) {
+		return Math.min(NUM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+	}
+
+	static long upperBound(final int bucket) {
+		return bucket >= 63 ? Long.MAX_VALUE : 1L << bucket;
+	}
+
+}
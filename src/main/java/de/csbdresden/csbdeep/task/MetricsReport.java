@@ -0,0 +1,123 @@
+
+package de.csbdresden.csbdeep.task;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Writes the {@link TaskMetrics} of a run as JSON or as log lines.
+ */
+public class MetricsReport {
+
+	private static final double[] PERCENTILES = { 50, 90, 99 };
+
+	public static void write(final File file,
+		final Map<String, TaskMetrics> metrics, final long totalMillis)
+		throws IOException
+	{
+		try (Writer writer = new FileWriter(file)) {
+			write(writer, metrics, totalMillis);
+		}
+	}
+
+	public static String toJson(final Map<String, TaskMetrics> metrics,
+		final long totalMillis)
+	{
+		final StringWriter writer = new StringWriter();
+		try {
+			write(writer, metrics, totalMillis);
+		}
+		catch (final IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return writer.toString();
+	}
+
+	private static void write(final Writer out,
+		final Map<String, TaskMetrics> metrics, final long totalMillis)
+		throws IOException
+	{
+		final JsonWriter writer = new JsonWriter(out);
+		writer.setIndent("  ");
+		writer.beginObject();
+		writer.name("total_ms").value(totalMillis);
+		writer.name("tasks").beginArray();
+		for (final Map.Entry<String, TaskMetrics> entry : metrics.entrySet()) {
+			final TaskMetrics task = entry.getValue();
+			writer.beginObject();
+			writer.name("name").value(entry.getKey());
+			writer.name("runs").value(task.getRuns());
+			writer.name("wall_ms").value(task.getWallNanos() / 1e6);
+			writer.name("cpu_ms").value(task.getCpuNanos() / 1e6);
+			writer.name("bytes_in").value(task.getBytesIn());
+			writer.name("bytes_out").value(task.getBytesOut());
+			writer.name("latencies").beginObject();
+			for (final Map.Entry<String, LatencyHistogram> stage : task
+				.getLatencies().entrySet())
+			{
+				writeHistogram(writer.name(stage.getKey()), stage.getValue());
+			}
+			writer.endObject();
+			writer.endObject();
+		}
+		writer.endArray();
+		writer.endObject();
+		writer.flush();
+	}
+
+	private static void writeHistogram(final JsonWriter writer,
+		final LatencyHistogram histogram) throws IOException
+	{
+		writer.beginObject();
+		writer.name("count").value(histogram.getCount());
+		writer.name("total_ms").value(histogram.getTotalNanos() / 1e6);
+		writer.name("mean_ms").value(histogram.getMeanNanos() / 1e6);
+		writer.name("max_ms").value(histogram.getMaxNanos() / 1e6);
+		for (final double p : PERCENTILES) {
+			writer.name("p" + (int) p + "_ms").value(histogram.getPercentileNanos(
+				p) / 1e6);
+		}
+		// bucket i counts durations below 2^i ns
+		writer.name("buckets").beginArray();
+		for (final long count : histogram.getBuckets()) {
+			writer.value(count);
+		}
+		writer.endArray();
+		writer.endObject();
+	}
+
+	/**
+	 * @return one line per task and one per recorded stage
+	 */
+	public static List<String> summary(final Map<String, TaskMetrics> metrics) {
+		final List<String> lines = new ArrayList<>();
+		for (final Map.Entry<String, TaskMetrics> entry : metrics.entrySet()) {
+			final TaskMetrics task = entry.getValue();
+			if (task.getRuns() == 0 && task.getLatencies().isEmpty()) continue;
+			lines.add(entry.getKey() + ": " + task);
+			for (final Map.Entry<String, LatencyHistogram> stage : task
+				.getLatencies().entrySet())
+			{
+				final LatencyHistogram histogram = stage.getValue();
+				lines.add("  " + stage.getKey() + ": " + histogram.getCount() +
+					"x, mean " + toMillis(histogram.getMeanNanos()) + " ms, p90 " +
+					toMillis(histogram.getPercentileNanos(90)) + " ms, max " + toMillis(
+						histogram.getMaxNanos()) + " ms");
+			}
+		}
+		return lines;
+	}
+
+	private static String toMillis(final long nanos) {
+		return String.format("%.1f", nanos / 1e6);
+	}
+
+}
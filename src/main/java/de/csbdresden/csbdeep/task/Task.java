@@ -62,4 +62,6 @@ public interface Task extends Cancelable {
 	void setTitle(String title);
 
 	void logWarning(String s);
+
+	TaskMetrics getMetrics();
 }
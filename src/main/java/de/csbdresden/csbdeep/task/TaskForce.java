@@ -54,6 +54,7 @@ public class TaskForce extends DefaultTask {
 
 	@Override
 	public void cancel(String reason) {
+		super.cancel(reason);
 		for (final Task task : tasks) {
 			task.cancel(reason);
 		}
@@ -2,7 +2,9 @@
 package de.csbdresden.csbdeep.task;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.scijava.app.StatusService;
 import org.scijava.log.Logger;
@@ -22,11 +24,23 @@ public class TaskForceManager extends DefaultTaskManager {
 
 	@Override
 	public void cancel(String reason) {
+		setCanceled(reason);
 		for (final Task task : taskForces) {
 			task.cancel(reason);
 		}
 	}
 
+	@Override
+	public Map<String, TaskMetrics> getMetrics() {
+		final Map<String, TaskMetrics> metrics = new LinkedHashMap<>();
+		for (final TaskForce taskForce : taskForces) {
+			for (final Task task : taskForce.getTasks()) {
+				metrics.put(task.getTitle(), task.getMetrics());
+			}
+		}
+		return metrics;
+	}
+
 	@Override
 	public void update(final Task task) {
 
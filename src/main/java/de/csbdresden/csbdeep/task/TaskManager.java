@@ -1,6 +1,8 @@
 
 package de.csbdresden.csbdeep.task;
 
+import java.util.Map;
+
 import org.scijava.Cancelable;
 
 public interface TaskManager extends Cancelable {
@@ -24,4 +26,9 @@ public interface TaskManager extends Cancelable {
 	void noGPUFound();
 
 	void logWarning(String msg);
+
+	/**
+	 * @return the metrics of all managed tasks by task title, in pipeline order
+	 */
+	Map<String, TaskMetrics> getMetrics();
 }
@@ -0,0 +1,122 @@
+
+package de.csbdresden.csbdeep.task;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wall time, CPU time, processed bytes and per-stage latencies of a
+ * {@link Task}. Wall and CPU time are measured between
+ * {@link Task#setStarted()} and the task being finished, failed or set idle.
+ * Work done on other threads (e.g. tiles run on the session pool) is added
+ * with {@link #addCpuNanos(long)}.
+ */
+public class TaskMetrics {
+
+	private static final ThreadMXBean threads = ManagementFactory
+		.getThreadMXBean();
+
+	private final AtomicLong wallNanos = new AtomicLong();
+	private final AtomicLong cpuNanos = new AtomicLong();
+	private final AtomicLong bytesIn = new AtomicLong();
+	private final AtomicLong bytesOut = new AtomicLong();
+	private final AtomicLong runs = new AtomicLong();
+	private final Map<String, LatencyHistogram> latencies = Collections
+		.synchronizedMap(new LinkedHashMap<>());
+
+	private long startWall = -1;
+	private long startCpu;
+	private long startThread;
+
+	public synchronized void start() {
+		if (startWall >= 0) return;
+		startWall = System.nanoTime();
+		startThread = Thread.currentThread().getId();
+		startCpu = threadCpuNanos(startThread);
+	}
+
+	public synchronized void stop() {
+		if (startWall < 0) return;
+		wallNanos.addAndGet(System.nanoTime() - startWall);
+		final long cpu = threadCpuNanos(startThread);
+		if (cpu >= 0 && startCpu >= 0) cpuNanos.addAndGet(cpu - startCpu);
+		runs.incrementAndGet();
+		startWall = -1;
+	}
+
+	public void addCpuNanos(final long nanos) {
+		if (nanos > 0) cpuNanos.addAndGet(nanos);
+	}
+
+	public void addBytesIn(final long bytes) {
+		bytesIn.addAndGet(bytes);
+	}
+
+	public void addBytesOut(final long bytes) {
+		bytesOut.addAndGet(bytes);
+	}
+
+	public void recordLatency(final String stage, final long nanos) {
+		getLatency(stage).record(nanos);
+	}
+
+	public LatencyHistogram getLatency(final String stage) {
+		return latencies.computeIfAbsent(stage, k -> new LatencyHistogram());
+	}
+
+	/**
+	 * @return the latency histograms by stage name, in the order the stages
+	 *         were first recorded
+	 */
+	public Map<String, LatencyHistogram> getLatencies() {
+		synchronized (latencies) {
+			return new LinkedHashMap<>(latencies);
+		}
+	}
+
+	public long getWallNanos() {
+		return wallNanos.get();
+	}
+
+	public long getCpuNanos() {
+		return cpuNanos.get();
+	}
+
+	public long getBytesIn() {
+		return bytesIn.get();
+	}
+
+	public long getBytesOut() {
+		return bytesOut.get();
+	}
+
+	public long getRuns() {
+		return runs.get();
+	}
+
+	/**
+	 * @return the CPU time of the current thread in nanoseconds or -1 if the
+	 *         JVM does not measure it
+	 */
+	public static long currentThreadCpuNanos() {
+		return threadCpuNanos(Thread.currentThread().getId());
+	}
+
+	private static long threadCpuNanos(final long threadId) {
+		if (!threads.isThreadCpuTimeSupported() || !threads
+			.isThreadCpuTimeEnabled()) return -1;
+		return threads.getThreadCpuTime(threadId);
+	}
+
+	@Override
+	public String toString() {
+		return "wall " + wallNanos.get() / 1000000 + " ms, cpu " + cpuNanos.get() /
+			1000000 + " ms, in " + bytesIn.get() / 1024 + " KB, out " + bytesOut
+				.get() / 1024 + " KB";
+	}
+
+}
@@ -0,0 +1,227 @@
+package de.csbdresden.csbdeep.thread;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+
+@Plugin(type = Service.class)
+public class DefaultPoolService extends AbstractService implements
+	PoolService
+{
+
+	private static final long KEEP_ALIVE_SECONDS = 60;
+
+	private final Map<Pool, ThreadPoolExecutor> pools = new EnumMap<>(
+		Pool.class);
+	private final Map<Pool, SharedPool> sharedPools = new EnumMap<>(Pool.class);
+	private final Map<Pool, Integer> sizes = new EnumMap<>(Pool.class);
+	private final Map<Pool, List<Integer>> reservations = new EnumMap<>(
+		Pool.class);
+
+	@Override
+	public synchronized ExecutorService getPool(final Pool pool) {
+		SharedPool res = sharedPools.get(pool);
+		if (res == null) {
+			res = new SharedPool(getExecutor(pool));
+			sharedPools.put(pool, res);
+		}
+		return res;
+	}
+
+	@Override
+	public synchronized void setPoolSize(final Pool pool, final int size) {
+		sizes.put(pool, Math.max(1, size));
+		resize(pool);
+	}
+
+	@Override
+	public synchronized Reservation reserve(final Pool pool, final int size) {
+		final Integer reserved = Math.max(1, size);
+		reservations.computeIfAbsent(pool, key -> new ArrayList<>()).add(
+			reserved);
+		resize(pool);
+		return new Reservation() {
+
+			private boolean closed = false;
+
+			@Override
+			public void close() {
+				synchronized (DefaultPoolService.this) {
+					if (closed) return;
+					closed = true;
+					// reservations of equal size are interchangeable
+					reservations.get(pool).remove(reserved);
+					resize(pool);
+				}
+			}
+		};
+	}
+
+	private void resize(final Pool pool) {
+		final ThreadPoolExecutor executor = getExecutor(pool);
+		int newSize = sizes.getOrDefault(pool, getDefaultSize(pool));
+		for (final int reserved : reservations.getOrDefault(pool, Collections
+			.emptyList()))
+		{
+			newSize = Math.max(newSize, reserved);
+		}
+		if (newSize > executor.getMaximumPoolSize()) {
+			executor.setMaximumPoolSize(newSize);
+			executor.setCorePoolSize(newSize);
+		}
+		else {
+			executor.setCorePoolSize(newSize);
+			executor.setMaximumPoolSize(newSize);
+		}
+	}
+
+	@Override
+	public synchronized int getPoolSize(final Pool pool) {
+		return getExecutor(pool).getMaximumPoolSize();
+	}
+
+	@Override
+	public synchronized int getQueueDepth(final Pool pool) {
+		final ThreadPoolExecutor executor = pools.get(pool);
+		return executor == null ? 0 : executor.getQueue().size();
+	}
+
+	@Override
+	public synchronized int getActiveCount(final Pool pool) {
+		final ThreadPoolExecutor executor = pools.get(pool);
+		return executor == null ? 0 : executor.getActiveCount();
+	}
+
+	@Override
+	public synchronized String getStatus() {
+		final StringBuilder res = new StringBuilder();
+		for (final Pool pool : Pool.values()) {
+			if (res.length() > 0) res.append(", ");
+			res.append(pool.name().toLowerCase(Locale.ROOT));
+			res.append(": ").append(getActiveCount(pool)).append("/");
+			res.append(getPoolSize(pool)).append(" busy, ");
+			res.append(getQueueDepth(pool)).append(" queued");
+		}
+		return res.toString();
+	}
+
+	@Override
+	public synchronized void dispose() {
+		for (final ThreadPoolExecutor executor : pools.values()) {
+			executor.shutdownNow();
+		}
+		pools.clear();
+		sharedPools.clear();
+	}
+
+	private ThreadPoolExecutor getExecutor(final Pool pool) {
+		ThreadPoolExecutor executor = pools.get(pool);
+		if (executor == null) {
+			final int size = getDefaultSize(pool);
+			// fixed size with an unbounded queue, idle threads time out
+			executor = new ThreadPoolExecutor(size, size, KEEP_ALIVE_SECONDS,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new NamedThreadFactory(
+					"csbdeep-" + pool.name().toLowerCase(Locale.ROOT)));
+			executor.allowCoreThreadTimeOut(true);
+			pools.put(pool, executor);
+		}
+		return executor;
+	}
+
+	private static int getDefaultSize(final Pool pool) {
+		final int cores = Runtime.getRuntime().availableProcessors();
+		switch (pool) {
+			case COMMAND:
+			case EXECUTION:
+				return Math.max(2, Math.min(4, cores / 2));
+			case SESSION:
+				// TensorFlow uses its own thread pools within one session run
+				return 1;
+			case IO:
+				// more threads do not make a disk faster
+				return 2;
+			case COMPUTE:
+			default:
+				return cores;
+		}
+	}
+
+	/**
+	 * Hands out a shared pool without allowing the borrower to shut it down.
+	 */
+	private static class SharedPool extends AbstractExecutorService {
+
+		private final ExecutorService executor;
+
+		SharedPool(final ExecutorService executor) {
+			this.executor = executor;
+		}
+
+		@Override
+		public void execute(final Runnable command) {
+			executor.execute(command);
+		}
+
+		@Override
+		public void shutdown() {
+			throw new UnsupportedOperationException(
+				"Shared pools are shut down with their service");
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			throw new UnsupportedOperationException(
+				"Shared pools are shut down with their service");
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return executor.isShutdown();
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return executor.isTerminated();
+		}
+
+		@Override
+		public boolean awaitTermination(final long timeout, final TimeUnit unit)
+			throws InterruptedException
+		{
+			return executor.awaitTermination(timeout, unit);
+		}
+	}
+
+	private static class NamedThreadFactory implements ThreadFactory {
+
+		private final String prefix;
+		private final AtomicInteger count = new AtomicInteger();
+
+		NamedThreadFactory(final String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			final Thread thread = new Thread(runnable, prefix + "-" + count
+				.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
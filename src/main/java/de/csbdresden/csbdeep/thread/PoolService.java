@@ -0,0 +1,68 @@
+package de.csbdresden.csbdeep.thread;
+
+import java.util.concurrent.ExecutorService;
+
+import net.imagej.ImageJService;
+
+/**
+ * Owns the bounded, named thread pools shared by all CSBDeep commands. Tasks
+ * must never block on results of the pool they are running in.
+ */
+public interface PoolService extends ImageJService {
+
+	enum Pool {
+		/** runs the main thread of a command */
+		COMMAND,
+		/** runs the network over one tiled view and waits for its tiles */
+		EXECUTION,
+		/** runs the TensorFlow session on single tiles or tile batches */
+		SESSION,
+		/** CPU bound work like normalization or merging, never blocks */
+		COMPUTE,
+		/** reads and writes images, never waits for other pools */
+		IO
+	}
+
+	/**
+	 * @return the shared pool, which cannot be shut down by its borrowers
+	 */
+	ExecutorService getPool(Pool pool);
+
+	/**
+	 * Changes the configured size of the pool for all commands of this context.
+	 * Commands needing more threads for one run should use
+	 * {@link #reserve(Pool, int)} instead.
+	 */
+	void setPoolSize(Pool pool, int size);
+
+	/**
+	 * Grows the pool to at least the given size until the reservation is
+	 * closed. The pool has the size of its largest open reservation or its
+	 * configured size, whichever is larger.
+	 */
+	Reservation reserve(Pool pool, int size);
+
+	int getPoolSize(Pool pool);
+
+	/**
+	 * @return number of tasks waiting in the queue of the pool
+	 */
+	int getQueueDepth(Pool pool);
+
+	/**
+	 * @return number of threads of the pool currently running a task
+	 */
+	int getActiveCount(Pool pool);
+
+	String getStatus();
+
+	interface Reservation extends AutoCloseable {
+
+		/**
+		 * Releases the reservation, closing it again has no effect.
+		 */
+		@Override
+		void close();
+	}
+
+}
@@ -16,7 +16,10 @@ public class AdvancedTiledView<T extends RealType<T>> extends TiledView<T> {
 	private final Map<AxisType, Long> originalDims;
 	private final AxisType[] originalAxes;
 	private List<RandomAccessibleInterval<T>> processedTiles;
-	// protected int blockMultiple;
+	private Tiling.TilingAction[] tilingActions;
+	private int blockMultiple = 1;
+	private int tilingOverlap = 0;
+	private OutputSink<T> outputSink;
 	// protected long blockWidth;
 
 	public AdvancedTiledView(final RandomAccessibleInterval<T> source,
@@ -48,6 +51,46 @@ public class AdvancedTiledView<T extends RealType<T>> extends TiledView<T> {
 		return originalAxes;
 	}
 
+	public Tiling.TilingAction[] getTilingActions() {
+		return tilingActions;
+	}
+
+	public void setTilingActions(final Tiling.TilingAction[] tilingActions) {
+		this.tilingActions = tilingActions;
+	}
+
+	public int getBlockMultiple() {
+		return blockMultiple;
+	}
+
+	public void setBlockMultiple(final int blockMultiple) {
+		this.blockMultiple = blockMultiple;
+	}
+
+	/**
+	 * @return the overlap the tiling was configured with, also for dimensions
+	 *         which are not padded because they are not tiled
+	 */
+	public int getTilingOverlap() {
+		return tilingOverlap;
+	}
+
+	public void setTilingOverlap(final int tilingOverlap) {
+		this.tilingOverlap = tilingOverlap;
+	}
+
+	/**
+	 * @return the sink the processed tiles were written to, or null if they are
+	 *         collected in {@link #getProcessedTiles()}
+	 */
+	public OutputSink<T> getOutputSink() {
+		return outputSink;
+	}
+
+	public void setOutputSink(final OutputSink<T> outputSink) {
+		this.outputSink = outputSink;
+	}
+
 	public void dispose() {
 		// if(originalDims != null) {
 		// originalDims.clear();
@@ -5,6 +5,7 @@ import java.util.List;
 import java.util.stream.Collectors;
 
 import de.csbdresden.csbdeep.task.DefaultTask;
+import de.csbdresden.csbdeep.util.DatasetHelper;
 import net.imagej.axis.AxisType;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.type.numeric.RealType;
@@ -23,6 +24,7 @@ public class DefaultInputTiler<T extends RealType<T>> extends DefaultTask
 
 		final List output = input.stream().map(image -> tiling.preprocess(image,
 			axes, tilingActions, this)).collect(Collectors.toList());
+		metrics.addBytesIn(DatasetHelper.sizeInBytes(input));
 
 		setFinished();
 
@@ -0,0 +1,144 @@
+package de.csbdresden.csbdeep.tiling;
+
+import de.csbdresden.csbdeep.util.DatasetHelper;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.loops.LoopBuilder;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Writes the core of each tile into an image which is allocated once, when the
+ * first tile arrives. The cells of the image match the tile cores. Outputs
+ * larger than the available memory are cached on disk.
+ */
+public class DefaultOutputSink<T extends RealType<T>> implements
+	OutputSink<T>
+{
+
+	private final AdvancedTiledView<T> tiledView;
+	private final AxisType[] outputAxes;
+	// input dimension matching each output dimension, -1 if there is none
+	private final int[] inputDims;
+	private Img<T> output;
+	protected long[] size;
+	protected long[] coreSize;
+	protected long[] padding;
+
+	public DefaultOutputSink(final AdvancedTiledView<T> tiledView,
+		final AxisType[] outputAxes)
+	{
+		this.tiledView = tiledView;
+		this.outputAxes = outputAxes;
+		inputDims = new int[outputAxes.length];
+		final AxisType[] inputAxes = tiledView.getOriginalAxes();
+		for (int i = 0; i < outputAxes.length; i++) {
+			inputDims[i] = -1;
+			for (int j = 0; j < inputAxes.length; j++) {
+				if (inputAxes[j].equals(outputAxes[i])) {
+					inputDims[i] = j;
+					break;
+				}
+			}
+		}
+	}
+
+	@Override
+	public void write(final long tileIndex,
+		final RandomAccessibleInterval<T> tile)
+	{
+		if (size == null) allocate(tile);
+
+		final long[] gridPosition = new long[tiledView.numDimensions()];
+		IntervalIndexer.indexToPosition(tileIndex, getGridSize(), gridPosition);
+
+		final int n = size.length;
+		final long[] srcMin = new long[n];
+		final long[] srcMax = new long[n];
+		final long[] dstMin = new long[n];
+		for (int i = 0; i < n; i++) {
+			final int j = inputDims[i];
+			final long offset = j >= 0 && j < gridPosition.length ? gridPosition[j] *
+				coreSize[i] : 0;
+			final long length = Math.min(coreSize[i], size[i] - offset);
+			if (length <= 0) return;
+			srcMin[i] = tile.min(i) + padding[i];
+			srcMax[i] = srcMin[i] + length - 1;
+			dstMin[i] = offset;
+		}
+		writeCore(Views.interval(tile, srcMin, srcMax), dstMin);
+	}
+
+	/**
+	 * @param core the part of a tile without padding, cropped to the output
+	 * @param offset position of the core in the output
+	 */
+	protected void writeCore(final RandomAccessibleInterval<T> core,
+		final long[] offset)
+	{
+		final long[] max = new long[offset.length];
+		for (int i = 0; i < max.length; i++) {
+			max[i] = offset[i] + core.dimension(i) - 1;
+		}
+		LoopBuilder.setImages(core, Views.interval(output, offset, max))
+			.forEachPixel((src, dst) -> dst.set(src));
+	}
+
+	@Override
+	public RandomAccessibleInterval<T> getResult() {
+		return output;
+	}
+
+	private long[] getGridSize() {
+		final long[] res = new long[tiledView.numDimensions()];
+		tiledView.dimensions(res);
+		return res;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void allocate(final RandomAccessibleInterval<T> firstTile) {
+		final T type = Util.getTypeFromInterval(firstTile);
+		if (!(type instanceof NativeType)) {
+			throw new IllegalArgumentException(
+				"Output sink needs a native output type");
+		}
+		final int n = firstTile.numDimensions();
+		final long[] overlap = tiledView.getOverlapComplete();
+		coreSize = new long[n];
+		padding = new long[n];
+		size = new long[n];
+		final int[] cellSize = new int[n];
+		for (int i = 0; i < n; i++) {
+			final int j = i < inputDims.length ? inputDims[i] : -1;
+			padding[i] = j >= 0 ? overlap[j] : 0;
+			coreSize[i] = firstTile.dimension(i) - 2 * padding[i];
+			final long grid = j >= 0 && j < tiledView.numDimensions() ? tiledView
+				.dimension(j) : 1;
+			size[i] = grid * coreSize[i];
+			final AxisType axis = i < outputAxes.length ? outputAxes[i] : null;
+			final Long originalSize = axis == null ? null : tiledView
+				.getOriginalDims().get(axis);
+			if (axis != Axes.CHANNEL && originalSize != null) {
+				size[i] = Math.min(size[i], originalSize);
+			}
+			cellSize[i] = (int) Math.max(1, Math.min(coreSize[i], size[i]));
+		}
+		output = createOutput((NativeType) type.createVariable(), size, cellSize);
+	}
+
+	/**
+	 * Creates the image the tile cores are written to.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	protected Img<T> createOutput(final NativeType type, final long[] size,
+		final int[] cellSize)
+	{
+		return DatasetHelper.createCellImg(type, size, cellSize);
+	}
+
+}
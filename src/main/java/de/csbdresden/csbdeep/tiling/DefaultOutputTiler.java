@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import de.csbdresden.csbdeep.task.DefaultTask;
+import de.csbdresden.csbdeep.util.DatasetHelper;
 import net.imagej.axis.AxisType;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.type.numeric.RealType;
@@ -27,6 +28,7 @@ public class DefaultOutputTiler<T extends RealType<T>> extends DefaultTask
 			for (AdvancedTiledView<T> image : input) {
 				output.add(tiling.postprocess(this, image, axisTypes));
 			}
+			metrics.addBytesOut(DatasetHelper.sizeInBytes(output));
 
 		}
 
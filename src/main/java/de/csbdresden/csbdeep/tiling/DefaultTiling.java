@@ -38,6 +38,7 @@ import de.csbdresden.csbdeep.task.Task;
 import de.csbdresden.csbdeep.util.DatasetHelper;
 import net.imagej.axis.Axes;
 import net.imagej.axis.AxisType;
+import net.imglib2.Dimensions;
 import net.imglib2.FinalInterval;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.img.list.ListImg;
@@ -47,9 +48,14 @@ import net.imglib2.view.Views;
 
 public class DefaultTiling<T extends RealType<T>> implements Tiling<T> {
 
+	// largest tile size multiple used to align tiles to the cells of the input
+	private static final long MAX_CELL_ALIGNED_MULTIPLE = 512;
+
 	protected int tilesNum;
 	protected int batchSize;
 	protected int blockMultiple;
+	// tile size multiple of each dimension, see computeTileMultiples
+	protected long[] tileMultiples;
 	protected int overlap;
 	protected Task status;
 	protected TilingAction[] tilingActions;
@@ -74,6 +80,7 @@ public class DefaultTiling<T extends RealType<T>> implements Tiling<T> {
 
 		if (input != null) {
 
+			tileMultiples = computeTileMultiples(input);
 			long[] tiling = new long[input.numDimensions()];
 			Arrays.fill(tiling, 1);
 			computeTiling(input, tiling, tilingActions);
@@ -81,6 +88,7 @@ public class DefaultTiling<T extends RealType<T>> implements Tiling<T> {
 			long[] padding = getPadding(tiling);
 			computeBatching(input, tiling, tilingActions);
 			parent.log("Complete input axes: " + Arrays.toString(axes));
+			parent.debug("Tile size multiples: " + Arrays.toString(tileMultiples));
 			parent.log("Tiling actions: " + Arrays.toString(tilingActions));
 			parent.log("Dividing image into " + arrayProduct(tiling) + " tile(s)..");
 
@@ -96,6 +104,9 @@ public class DefaultTiling<T extends RealType<T>> implements Tiling<T> {
 				tiledView.getOriginalDims().put(axes[i], input.dimension(
 					i));
 			}
+			tiledView.setTilingActions(tilingActions);
+			tiledView.setBlockMultiple(blockMultiple);
+			tiledView.setTilingOverlap(overlap);
 
 			DatasetHelper.logDim(parent, "Final image tiling", tiledView);
 			parent.debug("Final tile padding: " + Arrays.toString(padding));
@@ -113,7 +124,7 @@ public class DefaultTiling<T extends RealType<T>> implements Tiling<T> {
 
 	}
 
-	private void computeBatching(RandomAccessibleInterval<T> input, long[] tiling,
+	private void computeBatching(Dimensions input, long[] tiling,
 		TilingAction[] tilingActions)
 	{
 
@@ -138,6 +149,38 @@ public class DefaultTiling<T extends RealType<T>> implements Tiling<T> {
 
 	}
 
+	/**
+	 * Computes the size of a single tile including its padding, the way
+	 * {@link #preprocess} would tile an input of the given dimensions, without
+	 * creating any views. The batch size is adjusted like in
+	 * {@link #preprocess}, see {@link #getBatchSize()}. If the input is an
+	 * image, the tiles are aligned to its cells as well.
+	 */
+	public long[] computeTileSize(Dimensions input, TilingAction[] tilingActions) {
+		this.tilingActions = tilingActions;
+		if (input instanceof RandomAccessibleInterval) {
+			tileMultiples = computeTileMultiples((RandomAccessibleInterval<T>) input);
+		}
+		long[] tiling = new long[input.numDimensions()];
+		Arrays.fill(tiling, 1);
+		computeTiling(input, tiling, tilingActions);
+		tilesNum = (int) arrayProduct(tiling);
+		long[] padding = getPadding(tiling);
+		computeBatching(input, tiling, tilingActions);
+		long[] tileSize = new long[input.numDimensions()];
+		for (int i = 0; i < tileSize.length; i++) {
+			long size = input.dimension(i);
+			if (tilingActions[i] == TilingAction.TILE_WITHOUT_PADDING) {
+				size = getTileSize(size, tiling[i], batchSize) * tiling[i];
+			}
+			if (tilingActions[i] == TilingAction.TILE_WITH_PADDING) {
+				size = getTileSize(size, tiling[i], getTileMultiple(i)) * tiling[i];
+			}
+			tileSize[i] = size / tiling[i] + 2 * padding[i];
+		}
+		return tileSize;
+	}
+
 	public static long arrayProduct(long[] array) {
 		long rtn = 1;
 		for (long i : array) {
@@ -146,7 +189,7 @@ public class DefaultTiling<T extends RealType<T>> implements Tiling<T> {
 		return rtn;
 	}
 
-	protected long[] computeTiling(RandomAccessibleInterval<T> input,
+	protected long[] computeTiling(Dimensions input,
 		long[] tiling, TilingAction[] tilingActions)
 	{
 		int currentTiles = 1;
@@ -161,8 +204,8 @@ public class DefaultTiling<T extends RealType<T>> implements Tiling<T> {
 			int maxDim = -1;
 			for (int i = 0; i < singleTile.length; i++) {
 				if (tilingActions[i] == TilingAction.TILE_WITH_PADDING) {
-					singleTile[i] = getTileSize(input, i, tiling, blockMultiple);
-					if (singleTile[i] > blockMultiple && (maxDim < 0 ||
+					singleTile[i] = getTileSize(input, i, tiling, getTileMultiple(i));
+					if (singleTile[i] > getTileMultiple(i) && (maxDim < 0 ||
 						singleTile[i] > singleTile[maxDim]))
 					{
 						maxDim = i;
@@ -179,8 +222,55 @@ public class DefaultTiling<T extends RealType<T>> implements Tiling<T> {
 		}
 	}
 
-	private long getTileSize(RandomAccessibleInterval<T> dataset, int dimension, long[] tiling, int tileMultiple) {
-		return (long) (Math.ceil(dataset.dimension(dimension) / tiling[dimension] / (double) tileMultiple) * tileMultiple);
+	private long getTileSize(Dimensions dataset, int dimension, long[] tiling, long tileMultiple) {
+		return getTileSize(dataset.dimension(dimension), tiling[dimension], tileMultiple);
+	}
+
+	private static long getTileSize(long size, long tiles, long tileMultiple) {
+		return (long) (Math.ceil(size / tiles / (double) tileMultiple) * tileMultiple);
+	}
+
+	/**
+	 * Tiles have to be a multiple of the block multiple. If the input is held
+	 * in a cell image, e.g. a disk cached or lazily loaded one, the tiles are
+	 * also made a multiple of the cell size where this does not make them too
+	 * large, so the cells are read by as few tiles as possible.
+	 */
+	protected long[] computeTileMultiples(RandomAccessibleInterval<T> input) {
+		final long[] res = new long[input.numDimensions()];
+		Arrays.fill(res, blockMultiple);
+		final long[] cells = DatasetHelper.getCellDimensions(input);
+		if (cells == null) return res;
+		for (int i = 0; i < res.length; i++) {
+			if (tilingActions[i] != TilingAction.TILE_WITH_PADDING || cells[i] <= 1) {
+				continue;
+			}
+			final long multiple = lcm(blockMultiple, cells[i]);
+			if (multiple <= MAX_CELL_ALIGNED_MULTIPLE && multiple <= input
+				.dimension(i))
+			{
+				res[i] = multiple;
+			}
+		}
+		return res;
+	}
+
+	protected long getTileMultiple(int dimension) {
+		if (tileMultiples == null || dimension >= tileMultiples.length) {
+			return blockMultiple;
+		}
+		return tileMultiples[dimension];
+	}
+
+	private static long lcm(long a, long b) {
+		long x = a;
+		long y = b;
+		while (y != 0) {
+			final long t = x % y;
+			x = y;
+			y = t;
+		}
+		return a / x * b;
 	}
 
 	protected long[] getPadding(long[] tiling) {
@@ -196,7 +286,7 @@ public class DefaultTiling<T extends RealType<T>> implements Tiling<T> {
 	{
 		for (int i = 0; i < dataset.numDimensions(); i++) {
 			if (tilingActions[i] == TilingAction.TILE_WITH_PADDING) {
-				dataset = expandDimToSize(dataset, i, getTileSize(dataset, i, tiling, blockMultiple) * tiling[i]);
+				dataset = expandDimToSize(dataset, i, getTileSize(dataset, i, tiling, getTileMultiple(i)) * tiling[i]);
 			}
 		}
 		return dataset;
@@ -237,6 +327,15 @@ public class DefaultTiling<T extends RealType<T>> implements Tiling<T> {
 
 		parent.log("POSTPROCESSING");
 
+		if (results.getOutputSink() != null) {
+			// tiles were already merged while the network was running
+			final RandomAccessibleInterval<T> merged = results.getOutputSink()
+				.getResult();
+			if (merged == null) parent.setFailed();
+			else DatasetHelper.debugDim(parent, "merged result", merged);
+			return merged;
+		}
+
 		List<RandomAccessibleInterval<T>> resultData = results.getProcessedTiles();
 
 		if (resultData != null && resultData.size() > 0) {
@@ -293,6 +392,14 @@ public class DefaultTiling<T extends RealType<T>> implements Tiling<T> {
 		return tilesNum;
 	}
 
+	/**
+	 * @return the batch size, possibly reduced to the smallest one giving the
+	 *         same number of batches
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
 	protected RandomAccessibleInterval<T> removePadding(
 		RandomAccessibleInterval<T> result, long[] padding, AxisType[] oldAxes,
 		AxisType[] newAxes)
@@ -0,0 +1,158 @@
+
+package de.csbdresden.csbdeep.tiling;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import de.csbdresden.csbdeep.io.N5Container;
+import net.imagej.axis.AxisType;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgFactory;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgOptions;
+import net.imglib2.img.Img;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Writes the core of each tile as one block of an N5 dataset, the blocks of the
+ * dataset match the tile cores. Blocks are compressed and written on the given
+ * pool while the network keeps running. The result is read back lazily from
+ * the container, so it never has to fit into memory. Values are stored as
+ * float32, other data types and Zarr are not supported, see
+ * {@link N5Container}.
+ */
+public class N5OutputSink<T extends RealType<T>> extends DefaultOutputSink<T> {
+
+	// tile cores waiting to be written before write blocks the network
+	private static final int MAX_PENDING = 16;
+
+	private final N5Container container;
+	private final String dataset;
+	private final ExecutorService pool;
+	private final AxisType[] outputAxes;
+	private final Deque<Future<?>> pending = new ArrayDeque<>();
+	private int[] blockSize;
+	private Img<FloatType> result;
+
+	public N5OutputSink(final AdvancedTiledView<T> tiledView,
+		final AxisType[] outputAxes, final N5Container container,
+		final String dataset, final ExecutorService pool)
+	{
+		super(tiledView, outputAxes);
+		this.outputAxes = outputAxes;
+		this.container = container;
+		this.dataset = dataset;
+		this.pool = pool;
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	protected Img<T> createOutput(final NativeType type, final long[] size,
+		final int[] cellSize)
+	{
+		blockSize = cellSize.clone();
+		final String[] axes = new String[size.length];
+		for (int i = 0; i < axes.length; i++) {
+			axes[i] = i < outputAxes.length ? outputAxes[i].getLabel() : "";
+		}
+		try {
+			container.createDataset(dataset, size, blockSize, axes);
+		}
+		catch (final IOException e) {
+			throw new IllegalStateException("Could not create N5 dataset " +
+				dataset + " in " + container.getRoot(), e);
+		}
+		return null;
+	}
+
+	@Override
+	protected void writeCore(final RandomAccessibleInterval<T> core,
+		final long[] offset)
+	{
+		final int n = offset.length;
+		final long[] gridPosition = new long[n];
+		final int[] coreDims = new int[n];
+		for (int i = 0; i < n; i++) {
+			gridPosition[i] = offset[i] / blockSize[i];
+			coreDims[i] = (int) core.dimension(i);
+		}
+		// copy on the calling thread so the network output can be released
+		final float[] data = new float[(int) Intervals.numElements(core)];
+		int i = 0;
+		for (final T value : Views.flatIterable(core)) {
+			data[i++] = value.getRealFloat();
+		}
+		waitForPending(MAX_PENDING - 1);
+		synchronized (pending) {
+			pending.add(pool.submit(() -> {
+				container.writeBlock(dataset, gridPosition, coreDims, data);
+				return null;
+			}));
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public RandomAccessibleInterval<T> getResult() {
+		if (size == null) return null;
+		waitForPending(0);
+		if (result == null) result = open(container, dataset, size, blockSize);
+		return (RandomAccessibleInterval<T>) result;
+	}
+
+	/**
+	 * Waits until at most {@code maxPending} blocks are waiting to be written.
+	 */
+	private void waitForPending(final int maxPending) {
+		while (true) {
+			final Future<?> future;
+			synchronized (pending) {
+				if (pending.size() <= maxPending) return;
+				future = pending.poll();
+			}
+			try {
+				future.get();
+			}
+			catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while writing to " +
+					container.getRoot(), e);
+			}
+			catch (final ExecutionException e) {
+				throw new IllegalStateException("Could not write block to " + container
+					.getRoot(), e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * @return an image loading the blocks of the dataset when they are accessed,
+	 *         blocks which were not written are 0
+	 */
+	public static Img<FloatType> open(final N5Container container,
+		final String dataset, final long[] dimensions, final int[] blockSize)
+	{
+		return new ReadOnlyCachedCellImgFactory().create(dimensions,
+			new FloatType(), cell -> {
+				final long[] gridPosition = new long[dimensions.length];
+				for (int d = 0; d < gridPosition.length; d++) {
+					gridPosition[d] = cell.min(d) / blockSize[d];
+				}
+				final float[] data = container.readBlock(dataset, gridPosition,
+					new int[dimensions.length]);
+				if (data == null) return;
+				int i = 0;
+				for (final FloatType value : cell) {
+					value.set(data[i++]);
+				}
+			}, ReadOnlyCachedCellImgOptions.options().cellDimensions(blockSize));
+	}
+
+}
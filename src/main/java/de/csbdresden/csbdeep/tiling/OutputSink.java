@@ -0,0 +1,26 @@
+package de.csbdresden.csbdeep.tiling;
+
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Receives network output tiles as soon as they are computed and merges them
+ * into the final output image, so tiles do not have to be kept until all of
+ * them are processed.
+ */
+public interface OutputSink<T extends RealType<T>> {
+
+	/**
+	 * @param tileIndex flat index of the tile in the tiled view, first dimension
+	 *          running fastest
+	 * @param tile network output of the tile including its padding
+	 */
+	void write(long tileIndex, RandomAccessibleInterval<T> tile);
+
+	/**
+	 * @return the merged output, cropped to the original input size, or null if
+	 *         no tile was written
+	 */
+	RandomAccessibleInterval<T> getResult();
+
+}
@@ -0,0 +1,113 @@
+package de.csbdresden.csbdeep.tiling;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Memory mapped scratch files of one directory. A file is never deleted while
+ * it is mapped, Windows does not allow it. Once the buffer of a file is garbage
+ * collected, the file is deleted or, if the mapping is not released yet,
+ * reused for the next buffer. Files left behind by earlier processes are
+ * deleted when the directory is first used.
+ */
+class ScratchFiles {
+
+	private static final String PREFIX = "csbdeep-tile";
+	private static final String SUFFIX = ".raw";
+	private static final Map<File, ScratchFiles> directories = new HashMap<>();
+
+	private final File directory;
+	private final ReferenceQueue<MappedByteBuffer> released =
+		new ReferenceQueue<>();
+	// keeps the references alive until their buffers are collected
+	private final Set<Mapping> mappings = new HashSet<>();
+	private final Deque<File> free = new ArrayDeque<>();
+
+	private ScratchFiles(final File directory) {
+		this.directory = directory;
+		final File[] leftovers = directory.listFiles((dir, name) -> name
+			.startsWith(PREFIX) && name.endsWith(SUFFIX));
+		if (leftovers == null) return;
+		for (final File file : leftovers) {
+			// fails for files another process still has mapped
+			file.delete();
+		}
+	}
+
+	static synchronized ScratchFiles get(final File directory) {
+		return directories.computeIfAbsent(directory.getAbsoluteFile(),
+			ScratchFiles::new);
+	}
+
+	/**
+	 * @return a buffer of the given size, backed by a file in the directory
+	 *         until the buffer is garbage collected
+	 */
+	synchronized FloatBuffer map(final long bytes) throws IOException {
+		reclaim();
+		if (!directory.exists() && !directory.mkdirs()) {
+			throw new IOException("Could not create scratch directory " +
+				directory);
+		}
+		final File file = free.isEmpty() ? File.createTempFile(PREFIX, SUFFIX,
+			directory) : free.poll();
+		final MappedByteBuffer mapped;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+				FileChannel channel = raf.getChannel())
+		{
+			// the mapping stays valid after the channel is closed
+			mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+		}
+		catch (final IOException e) {
+			free.add(file);
+			throw e;
+		}
+		mappings.add(new Mapping(mapped, file, released));
+		return mapped.order(ByteOrder.nativeOrder()).asFloatBuffer();
+	}
+
+	/**
+	 * Deletes or frees the files of collected buffers.
+	 */
+	private void reclaim() {
+		Reference<? extends MappedByteBuffer> reference;
+		while ((reference = released.poll()) != null) {
+			final Mapping mapping = (Mapping) reference;
+			mappings.remove(mapping);
+			if (!mapping.file.delete() && mapping.file.exists()) {
+				free.add(mapping.file);
+			}
+		}
+	}
+
+	/**
+	 * Refers to the mapped buffer itself, views like {@link FloatBuffer} keep it
+	 * reachable while they are used.
+	 */
+	private static class Mapping extends WeakReference<MappedByteBuffer> {
+
+		final File file;
+
+		Mapping(final MappedByteBuffer buffer, final File file,
+			final ReferenceQueue<MappedByteBuffer> queue)
+		{
+			super(buffer, queue);
+			this.file = file;
+		}
+	}
+
+}
@@ -0,0 +1,123 @@
+
+package de.csbdresden.csbdeep.tiling;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.csbdresden.csbdeep.imglib2.FloatBufferAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * List of processed tiles which moves tiles to memory mapped files in a
+ * scratch directory once the used heap exceeds a threshold. Spilled tiles are
+ * images reading the mapped files directly, merging them does not copy them
+ * back to the heap. A file is deleted or reused once its tile is garbage
+ * collected, it is never deleted while it is mapped.
+ */
+public class SpillingTileStore<T extends RealType<T>> extends
+	AbstractList<RandomAccessibleInterval<T>>
+{
+
+	private final File directory;
+	private final double heapThreshold;
+	private final List<RandomAccessibleInterval<T>> tiles = new ArrayList<>();
+	private int spilledTiles = 0;
+	private long spilledBytes = 0;
+
+	/**
+	 * @param directory scratch directory for the mapped files
+	 * @param heapThreshold share of the maximum heap, tiles added while more
+	 *          heap is used are spilled
+	 */
+	public SpillingTileStore(final File directory, final double heapThreshold) {
+		this.directory = directory;
+		this.heapThreshold = heapThreshold;
+	}
+
+	@Override
+	public boolean add(final RandomAccessibleInterval<T> tile) {
+		tiles.add(shouldSpill(tile) ? spill(tile) : tile);
+		return true;
+	}
+
+	/**
+	 * Replaces a tile without spilling it, e.g. by a view on the tile.
+	 */
+	@Override
+	public RandomAccessibleInterval<T> set(final int index,
+		final RandomAccessibleInterval<T> tile)
+	{
+		return tiles.set(index, tile);
+	}
+
+	@Override
+	public RandomAccessibleInterval<T> get(final int index) {
+		return tiles.get(index);
+	}
+
+	@Override
+	public RandomAccessibleInterval<T> remove(final int index) {
+		return tiles.remove(index);
+	}
+
+	@Override
+	public void clear() {
+		tiles.clear();
+	}
+
+	@Override
+	public int size() {
+		return tiles.size();
+	}
+
+	public int getSpilledTiles() {
+		return spilledTiles;
+	}
+
+	public long getSpilledBytes() {
+		return spilledBytes;
+	}
+
+	protected boolean shouldSpill(final RandomAccessibleInterval<T> tile) {
+		if (!(Util.getTypeFromInterval(tile) instanceof FloatType)) return false;
+		final Runtime runtime = Runtime.getRuntime();
+		final long used = runtime.totalMemory() - runtime.freeMemory();
+		return used >= heapThreshold * runtime.maxMemory();
+	}
+
+	@SuppressWarnings("unchecked")
+	private RandomAccessibleInterval<T> spill(
+		final RandomAccessibleInterval<T> tile)
+	{
+		final long bytes = Intervals.numElements(tile) * Float.BYTES;
+		// a single mapping is limited to 2 GB
+		if (bytes > Integer.MAX_VALUE) return tile;
+		try {
+			final FloatBuffer buffer = ScratchFiles.get(directory).map(bytes);
+			for (final T value : Views.flatIterable(tile)) {
+				buffer.put(value.getRealFloat());
+			}
+			buffer.rewind();
+			spilledTiles++;
+			spilledBytes += bytes;
+			final RandomAccessibleInterval<FloatType> mapped = FloatBufferAccess
+				.wrap(buffer, Intervals.dimensionsAsLongArray(tile));
+			return (RandomAccessibleInterval<T>) Views.translate(mapped, Intervals
+				.minAsLongArray(tile));
+		}
+		catch (final IOException e) {
+			// keep the tile on the heap, the run can still succeed
+			return tile;
+		}
+	}
+
+}
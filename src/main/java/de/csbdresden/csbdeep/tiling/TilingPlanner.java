@@ -0,0 +1,358 @@
+package de.csbdresden.csbdeep.tiling;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Arrays;
+
+import de.csbdresden.csbdeep.task.Task;
+import net.imglib2.Dimensions;
+import net.imglib2.type.numeric.real.FloatType;
+
+/**
+ * Estimates the peak memory of a single network run and picks the number of
+ * tiles and the batch size so that it fits into the available memory before
+ * the first run. The fewest tiles fitting with the smallest batches are
+ * searched first, the remaining memory is then used for larger batches. The
+ * Java images of a tile are checked against the free heap. The tensors and
+ * activations are allocated by TensorFlow outside of the heap, they are
+ * checked against the network memory, which defaults to the free physical
+ * memory. GPU memory is not visible from Java, set the network memory to the
+ * memory of the GPU when running on one.
+ * <p>
+ * The activations are a heuristic, a number of values per voxel which has to
+ * be adapted to the network, see {@link #setActivationsPerVoxel(int)}. Out of
+ * memory errors during execution are still handled by splitting tiles.
+ * </p>
+ */
+public class TilingPlanner {
+
+	// activation values per voxel of a typical CSBDeep U-Net, relative to one
+	// input channel
+	public static final int DEFAULT_ACTIVATIONS_PER_VOXEL = 64;
+	// share of the available memory we plan to use
+	private static final double MEMORY_USAGE = 0.7;
+	private static final int MAX_ITERATIONS = 1024;
+
+	/**
+	 * Creates the tiling of a run, so that the planned tiles have the size of
+	 * the tiles of the run.
+	 */
+	public interface TilingFactory {
+
+		DefaultTiling<?> create(int tilesNum, int batchSize);
+	}
+
+	private final TilingFactory tilingFactory;
+
+	private int tilesNum;
+	private int batchSize;
+	private int tileBatchSize;
+	private int activationsPerVoxel = DEFAULT_ACTIVATIONS_PER_VOXEL;
+	private long networkMemory = 0;
+	private long estimatedHeapBytes;
+	private long estimatedNetworkBytes;
+	private long[] tileSize;
+
+	public TilingPlanner(final int tilesNum, final int batchSize,
+		final int tileBatchSize, final int blockMultiple, final int overlap)
+	{
+		this(tilesNum, batchSize, tileBatchSize, (tiles,
+			batch) -> new DefaultTiling<FloatType>(tiles, batch, blockMultiple,
+				overlap));
+	}
+
+	public TilingPlanner(final int tilesNum, final int batchSize,
+		final int tileBatchSize, final TilingFactory tilingFactory)
+	{
+		this.tilesNum = tilesNum;
+		this.batchSize = batchSize;
+		this.tileBatchSize = tileBatchSize;
+		this.tilingFactory = tilingFactory;
+	}
+
+	/**
+	 * @param activationsPerVoxel activation values the network holds per
+	 *          spatial voxel of a tile, estimated for a typical CSBDeep U-Net by
+	 *          default
+	 */
+	public void setActivationsPerVoxel(final int activationsPerVoxel) {
+		this.activationsPerVoxel = Math.max(1, activationsPerVoxel);
+	}
+
+	/**
+	 * @param bytes memory TensorFlow may use for tensors and activations, e.g.
+	 *          the memory of the GPU, 0 for the free physical memory
+	 */
+	public void setNetworkMemory(final long bytes) {
+		this.networkMemory = Math.max(0, bytes);
+	}
+
+	/**
+	 * @param input dimensions of the processed input, in the order of the final
+	 *          input axes. If it is a cell image, the tiles are aligned to its
+	 *          cells like they are in the run.
+	 * @param outputChannels number of channels of the output tensor
+	 * @param inputValueBytes bytes per value of the input tensor
+	 * @param outputValueBytes bytes per value of the output tensor
+	 * @return true if a tiling fitting into the available memory was found
+	 */
+	public boolean plan(final Dimensions input,
+		final Tiling.TilingAction[] actions, final long outputChannels,
+		final int inputValueBytes, final int outputValueBytes, final Task parent)
+	{
+		final long heap = (long) (getFreeHeapBytes() * MEMORY_USAGE);
+		final long network = (long) ((networkMemory > 0 ? networkMemory
+			: getFreePhysicalBytes()) * MEMORY_USAGE);
+		final Estimate estimate = (tiles, batch, tileBatch) -> {
+			final DefaultTiling<?> tiling = tilingFactory.create(tiles, batch);
+			tileSize = tiling.computeTileSize(input, actions);
+			estimatedHeapBytes = tileBatch * estimateHeapBytes(tileSize, actions,
+				outputChannels, inputValueBytes, outputValueBytes);
+			estimatedNetworkBytes = tileBatch * estimateNetworkBytes(tileSize,
+				actions, outputChannels, inputValueBytes, outputValueBytes,
+				activationsPerVoxel);
+			return tiling;
+		};
+		final boolean batching = hasBatchDimension(actions);
+
+		// the fewest tiles fitting with the smallest batches, no tiling fits
+		// below the memory of the whole input divided by the budget
+		final long[] whole = getUnbatchedSize(input, actions);
+		int tiles = (int) Math.min(MAX_ITERATIONS, Math.max(1, Math.max(divideUp(
+			estimateHeapBytes(whole, actions, outputChannels, inputValueBytes,
+				outputValueBytes), heap), divideUp(estimateNetworkBytes(whole,
+					actions, outputChannels, inputValueBytes, outputValueBytes,
+					activationsPerVoxel), network))));
+		DefaultTiling<?> tiling = null;
+		for (int i = 0; i < MAX_ITERATIONS; i++) {
+			tiling = estimate.compute(tiles, batching ? 1 : batchSize, 1);
+			if (fits(heap, network)) break;
+			// the tiles cannot be made any smaller
+			if (tiling.getTilesNum() < tiles) {
+				tiling = null;
+				break;
+			}
+			tiles = tiling.getTilesNum() + 1;
+		}
+		if (tiling == null || !fits(heap, network)) {
+			parent.logWarning("Could not find a tiling fitting into " + toMB(heap) +
+				" MB heap and " + toMB(network) + " MB network memory, estimated " +
+				toMB(estimatedHeapBytes) + " MB and " + toMB(estimatedNetworkBytes) +
+				" MB");
+			return false;
+		}
+		tilesNum = tiling.getTilesNum();
+
+		// the remaining memory is used for larger batches, the tiling adjusts
+		// the batch size to the size of the batch dimension
+		if (batching) {
+			batchSize = tiling.getBatchSize();
+			while (true) {
+				final DefaultTiling<?> larger = estimate.compute(tilesNum, batchSize *
+					2, 1);
+				if (!fits(heap, network) || larger.getBatchSize() <= batchSize) break;
+				batchSize = larger.getBatchSize();
+			}
+		}
+		final long tileCount = tilesNum * getBatchCount(input, actions, batchSize);
+		tileBatchSize = 1;
+		while (tileBatchSize * 2 <= tileCount) {
+			estimate.compute(tilesNum, batchSize, tileBatchSize * 2);
+			if (!fits(heap, network)) break;
+			tileBatchSize *= 2;
+		}
+		estimate.compute(tilesNum, batchSize, tileBatchSize);
+		parent.log("Planned tiling: " + tilesNum + " tile(s), batch size " +
+			batchSize + ", " + tileBatchSize + " tile(s) per network run, " +
+			"tile size " + Arrays.toString(tileSize) + ", estimated heap " + toMB(
+				estimatedHeapBytes) + " MB of " + toMB(heap) +
+			" MB, estimated network memory " + toMB(estimatedNetworkBytes) +
+			" MB of " + toMB(network) + " MB");
+		return true;
+	}
+
+	private interface Estimate {
+
+		DefaultTiling<?> compute(int tiles, int batch, int tileBatch);
+	}
+
+	private boolean fits(final long heap, final long network) {
+		return estimatedHeapBytes <= heap && estimatedNetworkBytes <= network;
+	}
+
+	private static boolean hasBatchDimension(
+		final Tiling.TilingAction[] actions)
+	{
+		for (final Tiling.TilingAction action : actions) {
+			if (action == Tiling.TilingAction.TILE_WITHOUT_PADDING) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the size of the input with a batch size of 1
+	 */
+	private static long[] getUnbatchedSize(final Dimensions input,
+		final Tiling.TilingAction[] actions)
+	{
+		final long[] res = new long[input.numDimensions()];
+		for (int i = 0; i < res.length; i++) {
+			res[i] = actions[i] == Tiling.TilingAction.TILE_WITHOUT_PADDING ? 1
+				: input.dimension(i);
+		}
+		return res;
+	}
+
+	private static long getBatchCount(final Dimensions input,
+		final Tiling.TilingAction[] actions, final int batchSize)
+	{
+		long res = 1;
+		for (int i = 0; i < actions.length; i++) {
+			if (actions[i] == Tiling.TilingAction.TILE_WITHOUT_PADDING) {
+				res *= divideUp(input.dimension(i), Math.max(1, batchSize));
+			}
+		}
+		return res;
+	}
+
+	private static long divideUp(final long a, final long b) {
+		if (b <= 0) return Long.MAX_VALUE;
+		return (a + b - 1) / b;
+	}
+
+	/**
+	 * @return estimated heap and network memory of one tile with the default
+	 *         activations per voxel
+	 */
+	public static long estimateBytes(final long[] tileSize,
+		final Tiling.TilingAction[] actions, final long outputChannels,
+		final int inputValueBytes, final int outputValueBytes)
+	{
+		return estimateHeapBytes(tileSize, actions, outputChannels,
+			inputValueBytes, outputValueBytes) + estimateNetworkBytes(tileSize,
+				actions, outputChannels, inputValueBytes, outputValueBytes,
+				DEFAULT_ACTIVATIONS_PER_VOXEL);
+	}
+
+	/**
+	 * @return bytes of the input and output tile as Java images
+	 */
+	public static long estimateHeapBytes(final long[] tileSize,
+		final Tiling.TilingAction[] actions, final long outputChannels,
+		final int inputValueBytes, final int outputValueBytes)
+	{
+		return getInputValues(tileSize) * inputValueBytes + getSpatialVoxels(
+			tileSize, actions) * Math.max(1, outputChannels) * outputValueBytes;
+	}
+
+	/**
+	 * @return bytes of the input and output tensor and the activations of the
+	 *         network, allocated by TensorFlow outside of the heap
+	 */
+	public static long estimateNetworkBytes(final long[] tileSize,
+		final Tiling.TilingAction[] actions, final long outputChannels,
+		final int inputValueBytes, final int outputValueBytes,
+		final int activationsPerVoxel)
+	{
+		final long voxels = getSpatialVoxels(tileSize, actions);
+		long res = getInputValues(tileSize) * inputValueBytes;
+		res += voxels * Math.max(1, outputChannels) * outputValueBytes;
+		res += voxels * activationsPerVoxel * Float.BYTES;
+		return res;
+	}
+
+	private static long getInputValues(final long[] tileSize) {
+		long res = 1;
+		for (long size : tileSize) {
+			res *= size;
+		}
+		return res;
+	}
+
+	private static long getSpatialVoxels(final long[] tileSize,
+		final Tiling.TilingAction[] actions)
+	{
+		long voxels = 1;
+		for (int i = 0; i < tileSize.length; i++) {
+			if (actions[i] != Tiling.TilingAction.NO_TILING) voxels *= tileSize[i];
+		}
+		return voxels;
+	}
+
+	/**
+	 * @return the smaller one of the free heap and the free physical memory
+	 */
+	public static long getAvailableBytes() {
+		return Math.min(getFreeHeapBytes(), getFreePhysicalBytes());
+	}
+
+	public static long getFreeHeapBytes() {
+		final Runtime runtime = Runtime.getRuntime();
+		return runtime.maxMemory() - runtime.totalMemory() + runtime.freeMemory();
+	}
+
+	/**
+	 * @return the free physical memory or the free heap if the platform does
+	 *         not report it
+	 */
+	public static long getFreePhysicalBytes() {
+		final OperatingSystemMXBean os = ManagementFactory
+			.getOperatingSystemMXBean();
+		if (os instanceof com.sun.management.OperatingSystemMXBean) {
+			final long freePhysical = ((com.sun.management.OperatingSystemMXBean) os)
+				.getFreePhysicalMemorySize();
+			if (freePhysical > 0) return freePhysical;
+		}
+		return getFreeHeapBytes();
+	}
+
+	public static void resetPeakHeapUsage() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+		}
+	}
+
+	public static long getPeakHeapUsage() {
+		long res = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) res += pool.getPeakUsage()
+				.getUsed();
+		}
+		return res;
+	}
+
+	public static long toMB(final long bytes) {
+		return bytes / 1024 / 1024;
+	}
+
+	public int getTilesNum() {
+		return tilesNum;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public int getTileBatchSize() {
+		return tileBatchSize;
+	}
+
+	public long getEstimatedBytes() {
+		return estimatedHeapBytes + estimatedNetworkBytes;
+	}
+
+	public long getEstimatedHeapBytes() {
+		return estimatedHeapBytes;
+	}
+
+	public long getEstimatedNetworkBytes() {
+		return estimatedNetworkBytes;
+	}
+
+	public long[] getTileSize() {
+		return tileSize;
+	}
+
+}
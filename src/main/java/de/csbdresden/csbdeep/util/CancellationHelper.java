@@ -0,0 +1,29 @@
+package de.csbdresden.csbdeep.util;
+
+import java.util.concurrent.CancellationException;
+
+import org.scijava.Cancelable;
+
+public class CancellationHelper {
+
+	/**
+	 * Number of pixels processed between two cancellation checks.
+	 */
+	public static final int CHUNK_SIZE = 1 << 16;
+
+	/**
+	 * Throws a {@link CancellationException} if the cancelable was canceled or
+	 * the current thread was interrupted.
+	 *
+	 * @param cancelable can be null, then only the interrupt flag is checked
+	 */
+	public static void checkCanceled(final Cancelable cancelable) {
+		if (cancelable != null && cancelable.isCanceled()) {
+			throw new CancellationException(cancelable.getCancelReason());
+		}
+		if (Thread.currentThread().isInterrupted()) {
+			throw new CancellationException("Interrupted");
+		}
+	}
+
+}
@@ -9,16 +9,34 @@ import java.util.OptionalLong;
 
 import javax.swing.*;
 
+import de.csbdresden.csbdeep.imglib2.ViewUnwrapper;
 import de.csbdresden.csbdeep.task.Task;
+import de.csbdresden.csbdeep.tiling.TilingPlanner;
 import net.imagej.Dataset;
 import net.imagej.axis.Axes;
 import net.imagej.axis.AxisType;
 import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.img.DiskCachedCellImgFactory;
+import net.imglib2.cache.img.DiskCachedCellImgOptions;
+import net.imglib2.img.Img;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
 
 public class DatasetHelper {
 
 	static AxisType[] axes = { Axes.X, Axes.Y, Axes.Z, Axes.TIME, Axes.CHANNEL };
 
+	private static final int DEFAULT_CELL_SIZE = 64;
+	// share of the available memory an image may take up before it is cached
+	// on disk instead
+	private static final double IN_MEMORY_SHARE = 0.5;
+
 	public static void assignUnknownDimensions(final Dataset image) {
 
 		final List<AxisType> unusedAxes = new ArrayList<>();
@@ -154,4 +172,81 @@ public class DatasetHelper {
 		}
 	}
 
+	/**
+	 * @return the number of bytes the pixels of the image take up, 0 if the
+	 *         pixel type is unknown
+	 */
+	public static long sizeInBytes(final RandomAccessibleInterval<?> img) {
+		if (img == null || Intervals.numElements(img) == 0) return 0;
+		final Object type = Util.getTypeFromInterval(img);
+		if (!(type instanceof RealType)) return 0;
+		return Intervals.numElements(img) * ((RealType<?>) type)
+			.getBitsPerPixel() / 8;
+	}
+
+	public static long sizeInBytes(
+		final List<? extends RandomAccessibleInterval<?>> imgs)
+	{
+		long res = 0;
+		if (imgs != null) {
+			for (final RandomAccessibleInterval<?> img : imgs) {
+				res += sizeInBytes(img);
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * @return the cell size along each dimension of the image if its data is
+	 *         held in a cell image, 0 for dimensions which do not map to a
+	 *         dimension of the cell image, null if the image is not backed by a
+	 *         cell image
+	 */
+	public static long[] getCellDimensions(
+		final RandomAccessibleInterval<?> img)
+	{
+		final ViewUnwrapper.UnwrappedView unwrapped = ViewUnwrapper.unwrap(img,
+			img);
+		if (!(unwrapped.getSource() instanceof AbstractCellImg)) return null;
+		final CellGrid grid = ((AbstractCellImg<?, ?, ?, ?>) unwrapped.getSource())
+			.getCellGrid();
+		final long[] res = new long[img.numDimensions()];
+		for (int d = 0; d < res.length; d++) {
+			for (int s = 0; s < unwrapped.numSourceDimensions(); s++) {
+				if (Math.abs(unwrapped.getStep(s, d)) == 1) {
+					res[d] = grid.cellDimension(s);
+				}
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * @param cellSize size of the cells, null to use the default size
+	 * @return a cell image which is held in memory if it fits and is cached on
+	 *         disk otherwise, so images larger than the memory can be written
+	 */
+	public static <T extends NativeType<T>> Img<T> createCellImg(final T type,
+		final long[] size, int[] cellSize)
+	{
+		if (cellSize == null) {
+			cellSize = new int[size.length];
+			for (int i = 0; i < size.length; i++) {
+				cellSize[i] = (int) Math.max(1, Math.min(size[i], DEFAULT_CELL_SIZE));
+			}
+		}
+		final long bytes = type instanceof RealType ? Intervals.numElements(size) *
+			((RealType<?>) type).getBitsPerPixel() / 8 : Intervals.numElements(size) *
+				Float.BYTES;
+		if (fitsIntoMemory(bytes)) {
+			return new CellImgFactory<>(type, cellSize).create(size);
+		}
+		return new DiskCachedCellImgFactory<>(type, DiskCachedCellImgOptions
+			.options().cellDimensions(cellSize)).create(size);
+	}
+
+	public static boolean fitsIntoMemory(final long bytes) {
+		return bytes < TilingPlanner.getAvailableBytes() * IN_MEMORY_SHARE;
+	}
+
 }
@@ -0,0 +1,158 @@
+
+package de.csbdresden.csbdeep.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.util.Intervals;
+
+/**
+ * Splits images into chunks which are processed in parallel, e.g. on the
+ * {@link de.csbdresden.csbdeep.thread.PoolService.Pool#COMPUTE} pool.
+ */
+public class ParallelHelper {
+
+	/**
+	 * Runs tasks right away on the calling thread, for work nested into tasks
+	 * which already run on a fixed size pool and must not wait for it.
+	 */
+	public static final ExecutorService DIRECT = new DirectExecutorService();
+
+	// chunks per thread, so threads finishing early can take over work
+	private static final int CHUNKS_PER_THREAD = 4;
+	// smaller chunks are not worth the scheduling overhead
+	private static final long MIN_CHUNK_ELEMENTS = 1 << 16;
+
+	public static int getNumThreads() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * @return the pool if it is not null, the common fork join pool otherwise
+	 */
+	public static ExecutorService getPool(final ExecutorService pool) {
+		return pool != null ? pool : ForkJoinPool.commonPool();
+	}
+
+	/**
+	 * Splits the interval into slabs along the last dimension which is large
+	 * enough, or along the largest dimension. Slabs along the last dimension are
+	 * contiguous in array and planar images.
+	 */
+	public static List<Interval> split(final Interval interval,
+		final int threads)
+	{
+		final long elements = Intervals.numElements(interval);
+		final int chunks = (int) Math.max(1, Math.min(threads * CHUNKS_PER_THREAD,
+			elements / MIN_CHUNK_ELEMENTS));
+		final List<Interval> res = new ArrayList<>();
+		final int n = interval.numDimensions();
+		if (chunks == 1 || n == 0) {
+			res.add(interval);
+			return res;
+		}
+		int dim = -1;
+		for (int d = n - 1; d >= 0; d--) {
+			if (interval.dimension(d) >= chunks) {
+				dim = d;
+				break;
+			}
+		}
+		if (dim < 0) {
+			dim = 0;
+			for (int d = 1; d < n; d++) {
+				if (interval.dimension(d) > interval.dimension(dim)) dim = d;
+			}
+		}
+		final long size = interval.dimension(dim);
+		final long step = (size + chunks - 1) / chunks;
+		final long[] min = Intervals.minAsLongArray(interval);
+		final long[] max = Intervals.maxAsLongArray(interval);
+		for (long start = 0; start < size; start += step) {
+			min[dim] = interval.min(dim) + start;
+			max[dim] = Math.min(interval.max(dim), min[dim] + step - 1);
+			res.add(new FinalInterval(min, max));
+		}
+		return res;
+	}
+
+	/**
+	 * Runs the task for each chunk on the pool and waits for all of them.
+	 * Exceptions of a task are rethrown, the remaining tasks are canceled.
+	 *
+	 * @return the results in the order of the chunks
+	 */
+	public static <C, R> List<R> map(final ExecutorService pool,
+		final List<C> chunks, final Function<C, R> task)
+	{
+		final List<Future<R>> futures = new ArrayList<>(chunks.size());
+		for (final C chunk : chunks) {
+			futures.add(getPool(pool).submit(() -> task.apply(chunk)));
+		}
+		final List<R> res = new ArrayList<>(chunks.size());
+		try {
+			for (final Future<R> future : futures) {
+				res.add(future.get());
+			}
+		}
+		catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CancellationException("Interrupted");
+		}
+		catch (final ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) throw (Error) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+		finally {
+			for (final Future<R> future : futures) {
+				future.cancel(true);
+			}
+		}
+		return res;
+	}
+
+	private static class DirectExecutorService extends AbstractExecutorService {
+
+		@Override
+		public void execute(final Runnable command) {
+			command.run();
+		}
+
+		@Override
+		public void shutdown() {}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			return new ArrayList<>();
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return false;
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return false;
+		}
+
+		@Override
+		public boolean awaitTermination(final long timeout, final TimeUnit unit) {
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,196 @@
+package de.csbdresden.csbdeep.commands;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.scijava.Context;
+import org.scijava.log.LogService;
+
+import de.csbdresden.csbdeep.thread.PoolService;
+import net.imagej.Dataset;
+import net.imagej.DatasetService;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.type.numeric.real.FloatType;
+
+public class BatchNetworkTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testListFolder() throws IOException {
+		final File b = folder.newFile("b.tif");
+		final File a = folder.newFile("a.TIFF");
+		folder.newFile("notes.txt");
+		folder.newFolder("sub.tif");
+		final List<File> files = BatchNetwork.listInputFiles(folder.getRoot());
+		assertEquals(Arrays.asList(a, b), files);
+	}
+
+	@Test
+	public void testListFile() throws IOException {
+		final File list = folder.newFile("images.txt");
+		final File absolute = new File(folder.getRoot(), "absolute.tif");
+		Files.write(list.toPath(), Arrays.asList("# images", "relative.tif", "",
+			absolute.getAbsolutePath()), StandardCharsets.UTF_8);
+		final List<File> files = BatchNetwork.listInputFiles(list);
+		assertEquals(Arrays.asList(new File(folder.getRoot(), "relative.tif"),
+			absolute), files);
+
+		final File single = folder.newFile("single.tif");
+		assertEquals(Arrays.asList(single), BatchNetwork.listInputFiles(single));
+	}
+
+	@Test
+	public void testPipeline() throws IOException {
+		final List<String> names = Arrays.asList("a.tif", "b.tif", "c.tif",
+			"d.tif", "e.tif", "f.tif");
+		for (final String name : names) {
+			folder.newFile(name);
+		}
+		final Context context = new Context(PoolService.class,
+			DatasetService.class, LogService.class);
+		final FakeBatch batch = new FakeBatch(context, false);
+		try {
+			batch.run();
+		}
+		finally {
+			batch.pool.shutdownNow();
+			context.dispose();
+		}
+		// networks start in input order, results are written in any order
+		assertEquals(names, batch.started);
+		assertEquals(new HashSet<>(names), batch.written);
+		assertEquals(names.size(), batch.processedImages);
+		assertTrue(batch.maxRunning.get() <= batch.concurrentImages);
+		assertTrue(batch.maxInMemory.get() <= batch.concurrentImages +
+			batch.readAhead);
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		for (final String name : Arrays.asList("a.tif", "b.tif", "c.tif",
+			"d.tif"))
+		{
+			folder.newFile(name);
+		}
+		final Context context = new Context(PoolService.class,
+			DatasetService.class, LogService.class);
+		final FakeBatch batch = new FakeBatch(context, true);
+		final ExecutorService runner = Executors.newSingleThreadExecutor();
+		try {
+			final Future<?> run = runner.submit(batch);
+			final long timeout = System.currentTimeMillis() + 5000;
+			while (batch.networks.size() < batch.concurrentImages) {
+				assertTrue(System.currentTimeMillis() < timeout);
+				Thread.sleep(10);
+			}
+			batch.cancel("test");
+			run.get(5, TimeUnit.SECONDS);
+		}
+		finally {
+			runner.shutdownNow();
+			batch.pool.shutdownNow();
+			context.dispose();
+		}
+		// running networks are canceled, no further network is started
+		assertEquals(batch.concurrentImages, batch.networks.size());
+		for (final Future<Dataset> network : batch.networks) {
+			assertTrue(network.isCancelled());
+		}
+		assertTrue(batch.written.isEmpty());
+		assertEquals(0, batch.processedImages);
+	}
+
+	/**
+	 * Runs a fake network on empty images, waiting until it is canceled if
+	 * blocking.
+	 */
+	private class FakeBatch extends BatchNetwork {
+
+		final List<String> started = Collections.synchronizedList(
+			new ArrayList<>());
+		final Set<String> written = Collections.synchronizedSet(new HashSet<>());
+		final List<Future<Dataset>> networks = Collections.synchronizedList(
+			new ArrayList<>());
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final AtomicInteger maxInMemory = new AtomicInteger();
+		final ExecutorService pool = Executors.newCachedThreadPool();
+		private final AtomicInteger running = new AtomicInteger();
+		private final AtomicInteger inMemory = new AtomicInteger();
+		private final DatasetService datasetService;
+		private final boolean blocking;
+
+		FakeBatch(final Context context, final boolean blocking) {
+			this.blocking = blocking;
+			datasetService = context.service(DatasetService.class);
+			log = context.service(LogService.class);
+			poolService = context.service(PoolService.class);
+			input = folder.getRoot();
+			output = new File(folder.getRoot(), "output");
+			concurrentImages = 2;
+			readAhead = 1;
+		}
+
+		@Override
+		protected Dataset read(final File file) {
+			maxInMemory.accumulateAndGet(inMemory.incrementAndGet(), Math::max);
+			return datasetService.create(new FloatType(), new long[] { 1, 1 }, file
+				.getName(), new AxisType[] { Axes.X, Axes.Y });
+		}
+
+		@Override
+		protected Future<Dataset> startNetwork(final Dataset image,
+			final Runnable done)
+		{
+			started.add(image.getName());
+			final FutureTask<Dataset> res = new FutureTask<Dataset>(() -> {
+				maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+				try {
+					Thread.sleep(blocking ? Long.MAX_VALUE : 10);
+					return image;
+				}
+				finally {
+					running.decrementAndGet();
+				}
+			}) {
+
+				@Override
+				protected void done() {
+					done.run();
+				}
+			};
+			pool.execute(res);
+			networks.add(res);
+			return res;
+		}
+
+		@Override
+		protected void write(final Dataset result, final File target) {
+			written.add(target.getName());
+			inMemory.decrementAndGet();
+		}
+	}
+
+}
@@ -0,0 +1,54 @@
+
+package de.csbdresden.csbdeep.commands;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import de.csbdresden.csbdeep.normalize.PercentileNormalizer;
+import net.imagej.Dataset;
+import net.imagej.ImageJ;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+public class TimeLapseNetworkTest {
+
+	@Test
+	public void testOutputName() {
+		final ImageJ ij = new ImageJ();
+		final Dataset movie = ij.dataset().create(new FloatType(), new long[] { 2,
+			2, 120 }, "movie.tif", new AxisType[] { Axes.X, Axes.Y, Axes.TIME });
+		assertEquals("movie_t000-009.tif", TimeLapseNetwork.getOutputName(movie, 0,
+			10, 120));
+		assertEquals("movie_t110-119.tif", TimeLapseNetwork.getOutputName(movie,
+			110, 120, 120));
+		ij.context().dispose();
+	}
+
+	@Test
+	public void testFixedPercentileValues() {
+		// two frames with different ranges are normalized with the same values
+		final RandomAccessibleInterval<FloatType> in = ArrayImgs.floats(new float[] {
+			0, 10, 20, 30 }, 2, 2);
+		final RandomAccessibleInterval<FloatType> out = ArrayImgs.floats(2, 2);
+		final PercentileNormalizer<FloatType> normalizer =
+			new PercentileNormalizer<>();
+		normalizer.setup(new float[] { 1, 99 }, new float[] { 0, 1 }, false);
+		normalizer.setPercentileValues(new float[] { 0, 20 });
+		for (int t = 0; t < 2; t++) {
+			normalizer.normalize(Views.hyperSlice(in, 1, t), Views.hyperSlice(out, 1,
+				t), null);
+		}
+		final float[] expected = { 0, 0.5f, 1, 1.5f };
+		final Cursor<FloatType> cursor = Views.flatIterable(out).cursor();
+		for (final float value : expected) {
+			assertEquals(value, cursor.next().get(), 0.0001);
+		}
+	}
+
+}
@@ -0,0 +1,103 @@
+
+package de.csbdresden.csbdeep.network.model.tensorflow;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.nio.FloatBuffer;
+
+import org.junit.Test;
+import org.tensorflow.Tensor;
+
+import de.csbdresden.csbdeep.normalize.NormalizationConverter;
+import net.imagej.tensorflow.Tensors;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.converter.Converters;
+import net.imglib2.converter.RealFloatConverter;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.planar.PlanarImgs;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+public class ArrayTensorConverterTest {
+
+	@Test
+	public void testArrayImg() {
+		final Img<FloatType> img = fill(ArrayImgs.floats(7, 5, 3));
+		compare(img, new int[] { 2, 1, 0 });
+		compare(img, new int[] { 0, 1, 2 });
+		compare(img, new int[] { 1, 2, 0 });
+	}
+
+	@Test
+	public void testPermutedInterval() {
+		final Img<FloatType> img = fill(ArrayImgs.floats(40, 50, 6));
+		final RandomAccessibleInterval<FloatType> view = Views.zeroMin(Views
+			.interval(Views.permute(img, 0, 2), new long[] { 1, 3, 2 }, new long[] {
+				4, 40, 35 }));
+		compare(view, new int[] { 2, 1, 0 });
+		compare(view, new int[] { 0, 1, 2 });
+	}
+
+	@Test
+	public void testConvertedPlanarImg() {
+		final Img<UnsignedShortType> img = fill(PlanarImgs.unsignedShorts(9, 8, 4,
+			3));
+		final RandomAccessibleInterval<FloatType> converted = Converters.convert(
+			Views.hyperSlice(img, 2, 1),
+			new RealFloatConverter<>(), new FloatType());
+		compare(converted, new int[] { 2, 1, 0 });
+		compare(Views.permute(converted, 0, 2), new int[] { 2, 0, 1 });
+	}
+
+	@Test
+	public void testNormalizationConverter() {
+		final Img<UnsignedShortType> img = fill(ArrayImgs.unsignedShorts(9, 8, 4));
+		final RandomAccessibleInterval<FloatType> normalized = Converters.convert(
+			(RandomAccessibleInterval<UnsignedShortType>) img,
+			new NormalizationConverter<>(100, 0.001f, 0, 1, true), new FloatType());
+		compare(normalized, new int[] { 2, 1, 0 });
+		compare(Views.permute(normalized, 0, 2), new int[] { 2, 0, 1 });
+	}
+
+	@Test
+	public void testOutOfBounds() {
+		final Img<FloatType> img = fill(ArrayImgs.floats(10, 10));
+		final RandomAccessibleInterval<FloatType> view = Views.interval(Views
+			.extendMirrorDouble(img), new long[] { -2, 0 }, new long[] { 7, 9 });
+		assertNull(ArrayTensorConverter.tensor(view, new int[] { 1, 0 }));
+	}
+
+	private static <T extends RealType<T>> Img<T> fill(final Img<T> img) {
+		final Cursor<T> cursor = img.cursor();
+		int i = 0;
+		while (cursor.hasNext()) {
+			cursor.next().setReal(i++ % 60000);
+		}
+		return img;
+	}
+
+	private static void compare(final RandomAccessibleInterval<FloatType> image,
+		final int[] mapping)
+	{
+		final Tensor<Float> fast = ArrayTensorConverter.tensor(image, mapping);
+		assertNotNull(fast);
+		final Tensor<Float> expected = Tensors.tensor(image, mapping);
+		assertArrayEquals(expected.shape(), fast.shape());
+		assertArrayEquals(values(expected), values(fast), 0);
+		fast.close();
+		expected.close();
+	}
+
+	private static float[] values(final Tensor<Float> tensor) {
+		final FloatBuffer buffer = FloatBuffer.allocate(tensor.numElements());
+		tensor.writeTo(buffer);
+		return buffer.array();
+	}
+
+}
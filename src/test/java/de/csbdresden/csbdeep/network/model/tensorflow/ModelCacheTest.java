@@ -0,0 +1,139 @@
+package de.csbdresden.csbdeep.network.model.tensorflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.scijava.log.StderrLogService;
+
+public class ModelCacheTest {
+
+	private long budget = 100;
+	private final ModelCache<FakeModel> cache = new ModelCache<>(() -> budget,
+		new StderrLogService());
+	private final ExecutorService pool = Executors.newCachedThreadPool();
+
+	@After
+	public void tearDown() {
+		pool.shutdownNow();
+		cache.dispose();
+	}
+
+	@Test
+	public void testReferenceCounting() throws Exception {
+		final AtomicInteger loads = new AtomicInteger();
+		final FakeModel model = cache.acquire("a", () -> load(loads), 10);
+		assertSame(model, cache.acquire("a", () -> load(loads), 10));
+		assertEquals(1, loads.get());
+		assertEquals(2, cache.getReferences("a"));
+		assertEquals(10, cache.getUsedMemory());
+		cache.release("a");
+		cache.release("a");
+		assertEquals(0, cache.getReferences("a"));
+		// unreferenced models stay loaded within the budget
+		assertTrue(cache.contains("a"));
+		assertFalse(model.closed);
+	}
+
+	@Test
+	public void testBudgetEviction() throws Exception {
+		final FakeModel a = cache.acquire("a", FakeModel::new, 60);
+		final FakeModel b = cache.acquire("b", FakeModel::new, 60);
+		// models in use are never closed, even above the budget
+		assertEquals(120, cache.getUsedMemory());
+		assertFalse(a.closed);
+		cache.release("a");
+		assertTrue(a.closed);
+		assertFalse(cache.contains("a"));
+		assertEquals(60, cache.getUsedMemory());
+
+		cache.release("b");
+		cache.acquire("c", FakeModel::new, 10);
+		assertFalse(b.closed);
+		budget = 50;
+		cache.evict();
+		assertTrue(b.closed);
+		assertTrue(cache.contains("c"));
+	}
+
+	@Test
+	public void testEvictUnused() throws Exception {
+		final FakeModel a = cache.acquire("a", FakeModel::new, 10);
+		final FakeModel b = cache.acquire("b", FakeModel::new, 10);
+		cache.release("a");
+		cache.evictUnused();
+		assertTrue(a.closed);
+		assertFalse(b.closed);
+		assertFalse(cache.contains("a"));
+		assertTrue(cache.contains("b"));
+		assertEquals(10, cache.getUsedMemory());
+	}
+
+	@Test
+	public void testLoadDoesNotBlockOtherKeys() throws Exception {
+		final CountDownLatch loading = new CountDownLatch(1);
+		final CountDownLatch finish = new CountDownLatch(1);
+		final AtomicInteger loads = new AtomicInteger();
+		final Future<FakeModel> slow = pool.submit(() -> cache.acquire("slow",
+			() -> {
+				loading.countDown();
+				await(finish);
+				return load(loads);
+			}, 10));
+		assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+		// other keys and queries are served while the slow model is loading
+		final Future<FakeModel> other = pool.submit(() -> cache.acquire("other",
+			FakeModel::new, 10));
+		other.get(5, TimeUnit.SECONDS);
+		assertFalse(cache.contains("slow"));
+		cache.release("other");
+
+		// a second request of the same key waits for the running load
+		final Future<FakeModel> waiting = pool.submit(() -> cache.acquire("slow",
+			() -> load(loads), 10));
+		finish.countDown();
+		assertSame(slow.get(5, TimeUnit.SECONDS), waiting.get(5,
+			TimeUnit.SECONDS));
+		assertEquals(1, loads.get());
+		assertEquals(2, cache.getReferences("slow"));
+	}
+
+	private static void await(final CountDownLatch latch)
+		throws InterruptedIOException
+	{
+		try {
+			latch.await();
+		}
+		catch (final InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+	}
+
+	private static FakeModel load(final AtomicInteger loads) {
+		loads.incrementAndGet();
+		return new FakeModel();
+	}
+
+	private static class FakeModel implements AutoCloseable {
+
+		volatile boolean closed = false;
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+
+}
@@ -0,0 +1,74 @@
+
+package de.csbdresden.csbdeep.network.model.tensorflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.nio.FloatBuffer;
+
+import org.junit.Test;
+import org.tensorflow.Tensor;
+
+import net.imagej.tensorflow.Tensors;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+public class TensorBufferPoolTest {
+
+	@Test
+	public void testReuse() {
+		final TensorBufferPool pool = new TensorBufferPool(1);
+		final long[] shape = { 2, 3, 4 };
+		final FloatBuffer a = pool.acquireFloat(shape);
+		final FloatBuffer b = pool.acquireFloat(shape);
+		assertNotSame(a, b);
+		assertEquals(24, a.capacity());
+		pool.releaseFloat(shape, a);
+		pool.releaseFloat(shape, b);
+		assertSame(a, pool.acquireFloat(shape));
+		assertNotSame(a, pool.acquireFloat(new long[] { 4, 3, 2 }));
+		assertEquals(3, pool.getAllocationCount());
+		assertEquals(1, pool.getReuseCount());
+	}
+
+	@Test
+	public void testPooledTensorRoundTrip() {
+		final TensorBufferPool pool = new TensorBufferPool();
+		final Img<FloatType> img = ArrayImgs.floats(6, 5, 4);
+		final Cursor<FloatType> cursor = img.cursor();
+		int i = 0;
+		while (cursor.hasNext()) {
+			cursor.next().setReal(i++);
+		}
+		final int[] mapping = { 1, 2, 0 };
+		for (int run = 0; run < 2; run++) {
+			final Tensor tensor = DatasetTensorFlowConverter.datasetToTensor(
+				img, mapping, pool);
+			final FloatBuffer buffer = pool.acquireFloat(tensor.shape());
+			final RandomAccessibleInterval<FloatType> pooled =
+				DatasetTensorFlowConverter.tensorToDataset(tensor, new FloatType(),
+					mapping, false, buffer);
+			final RandomAccessibleInterval<FloatType> expected = Tensors.imgFloat(
+				tensor, mapping);
+			assertEquals(expected.numDimensions(), pooled.numDimensions());
+			final RandomAccess<FloatType> ra = pooled.randomAccess();
+			final Cursor<FloatType> expectedCursor = Views.iterable(expected)
+				.localizingCursor();
+			while (expectedCursor.hasNext()) {
+				expectedCursor.fwd();
+				ra.setPosition(expectedCursor);
+				assertEquals(expectedCursor.get().get(), ra.get().get(), 0);
+			}
+			pool.releaseFloat(tensor.shape(), buffer);
+			tensor.close();
+		}
+		assertEquals(1, pool.getAllocationCount());
+	}
+
+}
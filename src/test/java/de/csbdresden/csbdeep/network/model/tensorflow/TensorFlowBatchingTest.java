@@ -0,0 +1,165 @@
+package de.csbdresden.csbdeep.network.model.tensorflow;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.tensorflow.Tensor;
+
+import de.csbdresden.csbdeep.network.model.ImageTensor;
+import de.csbdresden.csbdeep.task.DefaultTask;
+import net.imagej.Dataset;
+import net.imagej.DatasetService;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imagej.tensorflow.TensorFlowService;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+public class TensorFlowBatchingTest {
+
+	private static final long[] TILE = { 8, 6, 1, 1 };
+
+	private Context context;
+	private StubNetwork network;
+
+	@Before
+	public void setUp() {
+		context = new Context(TensorFlowService.class, DatasetService.class);
+		final DatasetService datasetService = context.service(
+			DatasetService.class);
+		network = new StubNetwork(context.service(TensorFlowService.class),
+			datasetService);
+		// (batch, y, x, channel) node, the batch dimension is mapped to time
+		final Dataset dataset = datasetService.create(new FloatType(), TILE, "",
+			new AxisType[] { Axes.X, Axes.Y, Axes.TIME, Axes.CHANNEL });
+		network.loadInputNode(dataset);
+		network.loadOutputNode(dataset);
+		network.initNode(network.getInputNode());
+		network.initNode(network.getOutputNode());
+	}
+
+	@After
+	public void tearDown() {
+		network.dispose();
+		context.dispose();
+	}
+
+	@Test
+	public void testBatchDimension() {
+		assertArrayEquals(new int[] { 2, 1, 0, 3 }, network.getInputNode()
+			.getMappingIndices());
+		assertArrayEquals(new int[] { 2, 1, 0, 3 }, network.getOutputNode()
+			.getMappingIndices());
+	}
+
+	@Test
+	public void testSplitBatch() throws Exception {
+		final List<RandomAccessibleInterval<FloatType>> tiles = createTiles(3);
+		final List<RandomAccessibleInterval<FloatType>> results = network
+			.executeBatch(tiles);
+
+		// one session run for all tiles, stacked along the batch dimension
+		assertEquals(Arrays.asList(3L), network.batches);
+		assertResults(tiles, results);
+	}
+
+	@Test
+	public void testUnevenOutputBatch() throws Exception {
+		network.dropLastTile = true;
+		final List<RandomAccessibleInterval<FloatType>> tiles = createTiles(3);
+		final List<RandomAccessibleInterval<FloatType>> results = network
+			.executeBatch(tiles);
+
+		// the output batch cannot be split, the tiles run one by one
+		assertEquals(Arrays.asList(3L, 1L, 1L, 1L), network.batches);
+		assertResults(tiles, results);
+	}
+
+	private static List<RandomAccessibleInterval<FloatType>> createTiles(
+		final int count)
+	{
+		final List<RandomAccessibleInterval<FloatType>> tiles = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			final Img<FloatType> tile = ArrayImgs.floats(TILE);
+			int value = 100 * i;
+			for (final FloatType pixel : tile) {
+				pixel.set(value++);
+			}
+			tiles.add(tile);
+		}
+		return tiles;
+	}
+
+	/**
+	 * The stub adds 1 to every value, so each result has to be its tile plus 1.
+	 */
+	private static void assertResults(
+		final List<RandomAccessibleInterval<FloatType>> tiles,
+		final List<RandomAccessibleInterval<FloatType>> results)
+	{
+		assertEquals(tiles.size(), results.size());
+		for (int i = 0; i < tiles.size(); i++) {
+			assertArrayEquals(TILE, Intervals.dimensionsAsLongArray(results.get(
+				i)));
+			final Cursor<FloatType> result = Views.flatIterable(results.get(i))
+				.cursor();
+			for (final FloatType value : Views.flatIterable(tiles.get(i))) {
+				assertEquals(value.get() + 1, result.next().get(), 0);
+			}
+		}
+	}
+
+	/**
+	 * Runs a fake graph adding 1 to the input instead of a TensorFlow session.
+	 */
+	private static class StubNetwork extends TensorFlowNetwork<FloatType> {
+
+		final List<Long> batches = new ArrayList<>();
+		boolean dropLastTile = false;
+
+		StubNetwork(final TensorFlowService tensorFlowService,
+			final DatasetService datasetService)
+		{
+			super(tensorFlowService, datasetService, new DefaultTask());
+		}
+
+		void initNode(final ImageTensor node) {
+			node.setNodeShape(new long[] { -1, -1, -1, 1 });
+			node.setMappingDefaults();
+			node.generateMapping();
+		}
+
+		@Override
+		protected Tensor run(final Tensor inputTensor) {
+			final long[] shape = inputTensor.shape();
+			batches.add(shape[0]);
+			final FloatBuffer in = FloatBuffer.allocate(inputTensor.numElements());
+			inputTensor.writeTo(in);
+			in.rewind();
+			// the output batch does not match the input batch
+			if (dropLastTile && shape[0] > 1) shape[0]--;
+			final FloatBuffer out = FloatBuffer.allocate((int) Intervals
+				.numElements(shape));
+			while (out.hasRemaining()) {
+				out.put(in.get() + 1);
+			}
+			out.rewind();
+			return Tensor.create(shape, out);
+		}
+	}
+
+}
@@ -0,0 +1,92 @@
+
+package de.csbdresden.csbdeep.normalize;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.IntervalView;
+import net.imglib2.view.Views;
+
+public class IntegerHistogramPercentileTest {
+
+	private static final float[] PERCENTILES = { 0, 1, 3, 50, 99.8f, 100 };
+
+	@Test
+	public void testSupportedTypes() {
+		assertTrue(IntegerHistogramPercentile.supports(new UnsignedByteType()));
+		assertTrue(IntegerHistogramPercentile.supports(new UnsignedShortType()));
+		assertTrue(IntegerHistogramPercentile.supports(new ByteType()));
+		assertFalse(IntegerHistogramPercentile.supports(new IntType()));
+		assertFalse(IntegerHistogramPercentile.supports(new FloatType()));
+	}
+
+	@Test
+	public void testUnsignedShort() {
+		// large enough to be split into several chunks
+		final Img<UnsignedShortType> img = ArrayImgs.unsignedShorts(256, 256, 8);
+		final Random random = new Random(42);
+		for (final UnsignedShortType value : img) {
+			value.set(Math.max(0, Math.min(65535, (int) (random.nextGaussian() *
+				3000 + 20000))));
+		}
+		assertPercentiles(img);
+	}
+
+	@Test
+	public void testSignedBytes() {
+		final Img<ByteType> img = ArrayImgs.bytes(100, 30);
+		final Random random = new Random(7);
+		for (final ByteType value : img) {
+			value.set((byte) random.nextInt());
+		}
+		assertPercentiles(img);
+	}
+
+	@Test
+	public void testView() {
+		final Img<UnsignedByteType> img = ArrayImgs.unsignedBytes(40, 30);
+		final Random random = new Random(3);
+		for (final UnsignedByteType value : img) {
+			value.set(random.nextInt(256));
+		}
+		final IntervalView<UnsignedByteType> view = Views.interval(img,
+			new long[] { 5, 5 }, new long[] { 20, 24 });
+		final float[] expected = new HistogramPercentile<UnsignedByteType>()
+			.computePercentiles(view, PERCENTILES, null);
+		assertArrayEquals(expected,
+			new IntegerHistogramPercentile<UnsignedByteType>().computePercentiles(
+				view, PERCENTILES, null), 0);
+	}
+
+	private <T extends RealType<T>> void assertPercentiles(final Img<T> img) {
+		// sorted copy with the ranks of HistogramPercentile in double precision
+		final float[] values = new float[(int) img.size()];
+		int i = 0;
+		for (final T value : img) {
+			values[i++] = value.getRealFloat();
+		}
+		Arrays.sort(values);
+		final float[] expected = new float[PERCENTILES.length];
+		for (i = 0; i < expected.length; i++) {
+			expected[i] = values[(int) Math.round((values.length - 1) *
+				(double) PERCENTILES[i] / 100.)];
+		}
+		assertArrayEquals(expected, new IntegerHistogramPercentile<T>()
+			.computePercentiles(img, PERCENTILES, null), 0);
+	}
+
+}
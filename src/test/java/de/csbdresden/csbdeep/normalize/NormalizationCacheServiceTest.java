@@ -0,0 +1,191 @@
+package de.csbdresden.csbdeep.normalize;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.scijava.Context;
+
+import de.csbdresden.csbdeep.util.ParallelHelper;
+import net.imagej.ImgPlus;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+
+public class NormalizationCacheServiceTest {
+
+	private static final float[] PERCENTILES = { 3, 99.8f };
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Context context;
+	private NormalizationCacheService cache;
+
+	@Before
+	public void setUp() {
+		context = new Context(NormalizationCacheService.class);
+		cache = context.service(NormalizationCacheService.class);
+		((DefaultNormalizationCacheService) cache).setCacheFile(new File(folder
+			.getRoot(), "statistics.json"));
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testFingerprint() {
+		final String fingerprint = cache.fingerprint(ramp(600, 500));
+		assertEquals(fingerprint, cache.fingerprint(ramp(600, 500)));
+		assertNotEquals(fingerprint, cache.fingerprint(ramp(500, 600)));
+		// small images are sampled completely
+		final Img<FloatType> img = ramp(20, 10);
+		final String small = cache.fingerprint(img);
+		setValue(img, 7, 3);
+		assertNotEquals(small, cache.fingerprint(img));
+	}
+
+	@Test
+	public void testFingerprintOfAllValues() {
+		// large enough to be hashed in several parts
+		final Img<FloatType> img = ramp(600, 500);
+		final String fingerprint = cache.fingerprint(img, ParallelHelper.DIRECT,
+			true);
+		assertNotEquals(fingerprint, cache.fingerprint(img));
+		final ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			assertEquals(fingerprint, cache.fingerprint(img, pool, true));
+		}
+		finally {
+			pool.shutdown();
+		}
+		// every value counts
+		setValue(img, 123, 321);
+		assertNotEquals(fingerprint, cache.fingerprint(img, ParallelHelper.DIRECT,
+			true));
+	}
+
+	@Test
+	public void testFingerprintOfSource() throws IOException {
+		final File file = folder.newFile("input.tif");
+		final ImgPlus<FloatType> img = new ImgPlus<>(ramp(10, 10));
+		final String unknown = cache.fingerprint(img);
+		img.setSource(file.getAbsolutePath());
+		final String fingerprint = cache.fingerprint(img);
+		assertNotEquals(unknown, fingerprint);
+		assertEquals(fingerprint, cache.fingerprint(img));
+		// a changed file is a different input
+		assertTrue(file.setLastModified(file.lastModified() - 10000));
+		final String touched = cache.fingerprint(img);
+		assertNotEquals(fingerprint, touched);
+		Files.write(file.toPath(), new byte[] { 1 });
+		assertTrue(file.setLastModified(file.lastModified() - 10000));
+		assertNotEquals(touched, cache.fingerprint(img));
+	}
+
+	@Test
+	public void testGetAndPut() {
+		final String fingerprint = cache.fingerprint(ramp(10, 10));
+		assertNull(cache.get(fingerprint, PERCENTILES, 0, false));
+		cache.put(fingerprint, PERCENTILES, 0, new float[][] { { 1, 2 } }, false);
+		assertArrayEquals(new float[] { 1, 2 }, cache.get(fingerprint,
+			PERCENTILES, 0, false)[0], 0);
+		assertNull(cache.get(fingerprint, new float[] { 1, 99 }, 0, false));
+		assertNull(cache.get(fingerprint, PERCENTILES, 0.01, false));
+		cache.clear();
+		assertNull(cache.get(fingerprint, PERCENTILES, 0, false));
+	}
+
+	@Test
+	public void testPersistence() {
+		final File file = cache.getCacheFile();
+		final String fingerprint = cache.fingerprint(ramp(10, 10));
+		final String unsaved = cache.fingerprint(ramp(20, 10));
+		cache.put(unsaved, PERCENTILES, 0, new float[][] { { 3, 4 } }, false);
+		cache.put(fingerprint, PERCENTILES, 0, new float[][] { { 1, Float.NaN },
+			{ 2, 5 } }, true);
+
+		final Context other = new Context(NormalizationCacheService.class);
+		try {
+			final NormalizationCacheService otherCache = other.service(
+				NormalizationCacheService.class);
+			((DefaultNormalizationCacheService) otherCache).setCacheFile(file);
+			assertNull(otherCache.get(fingerprint, PERCENTILES, 0, false));
+			final float[][] values = otherCache.get(fingerprint, PERCENTILES, 0,
+				true);
+			assertArrayEquals(new float[] { 1, Float.NaN }, values[0], 0);
+			assertArrayEquals(new float[] { 2, 5 }, values[1], 0);
+			// only persistent entries are written
+			assertNull(otherCache.get(unsaved, PERCENTILES, 0, true));
+		}
+		finally {
+			other.dispose();
+		}
+	}
+
+	@Test
+	public void testSlicesAreOneEntry() {
+		final String fingerprint = cache.fingerprint(ramp(10, 10));
+		cache.put(fingerprint, PERCENTILES, 0, new float[][] { { 1, 2 } }, false);
+
+		// a movie with more frames than the cache has entries
+		final Img<FloatType> movie = ramp(4, 4, 2000);
+		final PercentileNormalizer<FloatType> normalizer =
+			new PercentileNormalizer<>();
+		normalizer.setup(PERCENTILES, new float[] { 0, 1 }, false);
+		normalizer.setStatisticsCache(cache);
+		normalizer.normalize(movie, ArrayImgs.floats(4, 4, 2000), null, 2);
+		assertEquals(2000, normalizer.getSliceValues().length);
+
+		// the frames did not push the first image out of the cache
+		assertArrayEquals(new float[] { 1, 2 }, cache.get(fingerprint,
+			PERCENTILES, 0, false)[0], 0);
+	}
+
+	@Test
+	public void testNormalizerUsesCache() {
+		final Img<FloatType> in = ramp(100, 80);
+		cache.put(cache.fingerprint(in), PERCENTILES, 0, new float[][] { { 0,
+			10 } }, false);
+		final PercentileNormalizer<FloatType> normalizer =
+			new PercentileNormalizer<>();
+		normalizer.setup(PERCENTILES, new float[] { 0, 1 }, false);
+		normalizer.setStatisticsCache(cache);
+		normalizer.normalize(in, ArrayImgs.floats(100, 80), null);
+		assertArrayEquals(new float[] { 0, 10 }, normalizer.getResValues(), 0);
+	}
+
+	private static void setValue(final Img<FloatType> img,
+		final long... position)
+	{
+		final RandomAccess<FloatType> ra = img.randomAccess();
+		ra.setPosition(position);
+		ra.get().set(-1);
+	}
+
+	private static Img<FloatType> ramp(final long... dims) {
+		final Img<FloatType> img = ArrayImgs.floats(dims);
+		int i = 0;
+		for (final FloatType value : img) {
+			value.set(i++);
+		}
+		return img;
+	}
+
+}
@@ -0,0 +1,153 @@
+
+package de.csbdresden.csbdeep.normalize;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.planar.PlanarImgs;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+public class PercentileNormalizerTest {
+
+	private static final long[] DIMS = { 300, 200, 5 };
+
+	@Test
+	public void testArraysMatchGenericPath() {
+		final Img<UnsignedShortType> array = ArrayImgs.unsignedShorts(DIMS);
+		final Img<UnsignedShortType> planar = PlanarImgs.unsignedShorts(DIMS);
+		final Random random = new Random(42);
+		final Cursor<UnsignedShortType> planarCursor = planar.cursor();
+		for (final UnsignedShortType value : array) {
+			value.set(random.nextInt(65536));
+			planarCursor.next().set(value);
+		}
+
+		// a view is not unwrapped, so it is normalized pixel by pixel
+		final Img<FloatType> expected = normalize(Views.interval(array, array));
+		assertImagesEqual(expected, normalize(array));
+		assertImagesEqual(expected, normalize(planar));
+		final Img<FloatType> planarOutput = PlanarImgs.floats(DIMS);
+		normalizer().normalize(array, planarOutput, null);
+		assertImagesEqual(expected, planarOutput);
+	}
+
+	@Test
+	public void testConverterMatchesNormalization() {
+		final Img<UnsignedShortType> in = ArrayImgs.unsignedShorts(DIMS);
+		final Random random = new Random(3);
+		for (final UnsignedShortType value : in) {
+			value.set(random.nextInt(65536));
+		}
+		final NormalizationConverter<UnsignedShortType> converter = normalizer()
+			.prepare(in, null);
+		final FloatType converted = new FloatType();
+		final Cursor<FloatType> expected = normalize(in).cursor();
+		for (final UnsignedShortType value : in) {
+			converter.convert(value, converted);
+			assertEquals(expected.next().get(), converted.get(), 0);
+		}
+	}
+
+	@Test
+	public void testSeparateDimensions() {
+		// few slices are normalized one after the other, many in parallel
+		testSeparateDimension(2);
+		testSeparateDimension(64);
+	}
+
+	@Test
+	public void testConstantSlice() {
+		final Img<FloatType> in = ArrayImgs.floats(30, 20, 2);
+		final Random random = new Random(7);
+		final Cursor<FloatType> cursor = in.localizingCursor();
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			// the first slice is constant
+			cursor.get().set(cursor.getIntPosition(2) == 0 ? 5 : random
+				.nextFloat());
+		}
+		final Img<FloatType> out = ArrayImgs.floats(30, 20, 2);
+		final PercentileNormalizer<FloatType> normalizer =
+			new PercentileNormalizer<>();
+		normalizer.setup(new float[] { 3, 99.8f }, new float[] { 0, 1 }, false);
+		normalizer.normalize(in, out, null, 2);
+
+		// a constant slice is only shifted to the lower destination value
+		for (final FloatType value : Views.hyperSlice(out, 2, 0)) {
+			assertEquals(0, value.get(), 0);
+		}
+		for (final FloatType value : Views.hyperSlice(out, 2, 1)) {
+			assertTrue(Float.isFinite(value.get()));
+		}
+
+		final Img<FloatType> constant = ArrayImgs.floats(30, 20);
+		constant.forEach(value -> value.set(5));
+		final Img<FloatType> constantOut = ArrayImgs.floats(30, 20);
+		normalizer.normalize(constant, constantOut, null);
+		for (final FloatType value : constantOut) {
+			assertEquals(0, value.get(), 0);
+		}
+	}
+
+	private void testSeparateDimension(final int slices) {
+		final Img<FloatType> in = ArrayImgs.floats(30, 20, slices);
+		final Random random = new Random(slices);
+		final Cursor<FloatType> cursor = in.localizingCursor();
+		while (cursor.hasNext()) {
+			// each slice has its own range
+			cursor.next().set(random.nextFloat() * (cursor.getIntPosition(2) + 1));
+		}
+		final Img<FloatType> out = ArrayImgs.floats(30, 20, slices);
+		final PercentileNormalizer<FloatType> normalizer =
+			new PercentileNormalizer<>();
+		normalizer.setup(new float[] { 3, 99.8f }, new float[] { 0, 1 }, false);
+		normalizer.normalize(in, out, null, 2);
+		assertEquals(slices, normalizer.getSliceValues().length);
+
+		for (int z = 0; z < slices; z++) {
+			final Img<FloatType> expected = ArrayImgs.floats(30, 20);
+			normalizer.normalize(Views.hyperSlice(in, 2, z), expected, null);
+			final Cursor<FloatType> actual = Views.flatIterable(Views.hyperSlice(
+				out, 2, z)).cursor();
+			for (final FloatType value : expected) {
+				assertEquals(value.get(), actual.next().get(), 0);
+			}
+		}
+	}
+
+	private Img<FloatType> normalize(
+		final RandomAccessibleInterval<UnsignedShortType> in)
+	{
+		final Img<FloatType> out = ArrayImgs.floats(DIMS);
+		normalizer().normalize(in, out, null);
+		return out;
+	}
+
+	private PercentileNormalizer<UnsignedShortType> normalizer() {
+		final PercentileNormalizer<UnsignedShortType> normalizer =
+			new PercentileNormalizer<>();
+		normalizer.setup(new float[] { 3, 99.8f }, new float[] { 0, 1 }, true);
+		normalizer.setPercentileValues(new float[] { 1000, 60000 });
+		return normalizer;
+	}
+
+	private static void assertImagesEqual(final Img<FloatType> expected,
+		final Img<FloatType> actual)
+	{
+		final Cursor<FloatType> cursor = Views.flatIterable(actual).cursor();
+		for (final FloatType value : Views.flatIterable(expected)) {
+			assertEquals(value.get(), cursor.next().get(), 0);
+		}
+	}
+
+}
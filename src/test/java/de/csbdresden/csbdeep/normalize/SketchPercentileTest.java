@@ -0,0 +1,69 @@
+
+package de.csbdresden.csbdeep.normalize;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+
+public class SketchPercentileTest {
+
+	private static final float[] PERCENTILES = { 0, 1, 3, 50, 99.8f, 100 };
+
+	@Test
+	public void testRankError() {
+		// large enough to be split into several chunks
+		final Img<FloatType> img = ArrayImgs.floats(256, 256, 8);
+		final Random random = new Random(42);
+		for (final FloatType value : img) {
+			value.set((float) (random.nextGaussian() * 100));
+		}
+		final double rankError = 0.01;
+		final float[] res = new SketchPercentile<FloatType>(rankError)
+			.computePercentiles(img, PERCENTILES, null);
+
+		final float[] sorted = new float[(int) img.size()];
+		int i = 0;
+		for (final FloatType value : img) {
+			sorted[i++] = value.get();
+		}
+		Arrays.sort(sorted);
+		for (i = 0; i < PERCENTILES.length; i++) {
+			final double rank = (sorted.length - 1) * PERCENTILES[i] / 100.;
+			final int lower = Arrays.binarySearch(sorted, res[i]);
+			assertTrue("value " + res[i] + " is not in the image", lower >= 0);
+			assertEquals("rank of percentile " + PERCENTILES[i], rank, lower,
+				rankError * sorted.length);
+		}
+		// the extremes are kept exactly
+		assertEquals(sorted[0], res[0], 0);
+		assertEquals(sorted[sorted.length - 1], res[res.length - 1], 0);
+	}
+
+	@Test
+	public void testSmallImageIsExact() {
+		final Img<FloatType> img = ArrayImgs.floats(20, 10);
+		final Random random = new Random(7);
+		for (final FloatType value : img) {
+			value.set(random.nextFloat());
+		}
+		final float[] expected = new HistogramPercentile<FloatType>()
+			.computePercentiles(img, PERCENTILES, null);
+		assertArrayEquals(expected, new SketchPercentile<FloatType>(0.01)
+			.computePercentiles(img, PERCENTILES, null), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidRankError() {
+		new SketchPercentile<FloatType>(0);
+	}
+
+}
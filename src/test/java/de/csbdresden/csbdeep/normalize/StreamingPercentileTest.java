@@ -0,0 +1,81 @@
+
+package de.csbdresden.csbdeep.normalize;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.csbdresden.csbdeep.util.DatasetHelper;
+import net.imglib2.cache.img.DiskCachedCellImgFactory;
+import net.imglib2.cache.img.DiskCachedCellImgOptions;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+public class StreamingPercentileTest {
+
+	private static final float[] PERCENTILES = { 0, 1, 3, 50, 99.8f, 100 };
+
+	@Test
+	public void testRandomValues() {
+		final Img<FloatType> img = ArrayImgs.floats(64, 48, 5);
+		final Random random = new Random(42);
+		for (final FloatType value : img) {
+			value.set((float) random.nextGaussian() * 100);
+		}
+		assertPercentiles(img);
+	}
+
+	@Test
+	public void testDuplicateValues() {
+		final Img<FloatType> img = ArrayImgs.floats(100, 30);
+		final Random random = new Random(7);
+		for (final FloatType value : img) {
+			value.set(random.nextInt(5));
+		}
+		assertPercentiles(img);
+	}
+
+	@Test
+	public void testConstantImage() {
+		final Img<FloatType> img = ArrayImgs.floats(10, 10);
+		for (final FloatType value : img) {
+			value.set(3);
+		}
+		final float[] res = new StreamingPercentile<FloatType>().computePercentiles(
+			img, PERCENTILES, null);
+		for (final float value : res) {
+			assertEquals(3, value, 0);
+		}
+	}
+
+	@Test
+	public void testCellImg() {
+		final Img<FloatType> img = new DiskCachedCellImgFactory<>(new FloatType(),
+			DiskCachedCellImgOptions.options().cellDimensions(16, 16)).create(100,
+				70);
+		final Random random = new Random(3);
+		for (final FloatType value : img) {
+			value.set(random.nextFloat());
+		}
+		assertNotNull(DatasetHelper.getCellDimensions(Views.permute(img, 0, 1)));
+		assertEquals(16, DatasetHelper.getCellDimensions(img)[0]);
+		assertPercentiles(img);
+	}
+
+	private void assertPercentiles(final Img<FloatType> img) {
+		final float[] expected = new HistogramPercentile<FloatType>()
+			.computePercentiles(img, PERCENTILES, null);
+		assertArrayEquals(expected, new StreamingPercentile<FloatType>()
+			.computePercentiles(img, PERCENTILES, null), 0);
+		// few bins and a small collection limit force refining the histogram
+		assertArrayEquals(expected, new StreamingPercentile<FloatType>(4, 10)
+			.computePercentiles(img, PERCENTILES, null), 0);
+	}
+
+}
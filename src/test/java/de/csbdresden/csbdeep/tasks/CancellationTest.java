@@ -0,0 +1,110 @@
+
+package de.csbdresden.csbdeep.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import de.csbdresden.csbdeep.task.DefaultTask;
+import de.csbdresden.csbdeep.task.Task;
+import de.csbdresden.csbdeep.tiling.AdvancedTiledView;
+import de.csbdresden.csbdeep.tiling.DefaultTiling;
+import de.csbdresden.csbdeep.tiling.Tiling;
+import de.csbdresden.csbdeep.util.CancellationHelper;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+
+public class CancellationTest {
+
+	@Test
+	public void testCancelStopsRemainingTiles() throws Exception {
+		final Tiling tiling = new DefaultTiling(16, 1, 8, 8);
+		final AxisType[] axes = { Axes.X, Axes.Y };
+		final Tiling.TilingAction[] actions = new Tiling.TilingAction[axes.length];
+		Arrays.fill(actions, Tiling.TilingAction.TILE_WITH_PADDING);
+		final Task task = new DefaultTask();
+		final AdvancedTiledView<FloatType> tiledView = tiling.preprocess(ArrayImgs
+			.floats(64, 64), axes, actions, task);
+
+		final CancelingNetwork network = new CancelingNetwork(task, 2);
+		network.setTiledView(tiledView);
+		network.resetTileCount();
+
+		assertNull(network.call());
+		assertTrue(network.isCanceled());
+		assertEquals("test", network.getCancelReason());
+		assertEquals(2, network.executed.get());
+
+		network.dispose();
+		tiledView.dispose();
+	}
+
+	@Test
+	public void testCancelBeforeRun() throws Exception {
+		final Tiling tiling = new DefaultTiling(16, 1, 8, 8);
+		final AxisType[] axes = { Axes.X, Axes.Y };
+		final Tiling.TilingAction[] actions = new Tiling.TilingAction[axes.length];
+		Arrays.fill(actions, Tiling.TilingAction.TILE_WITH_PADDING);
+		final Task task = new DefaultTask();
+		final AdvancedTiledView<FloatType> tiledView = tiling.preprocess(ArrayImgs
+			.floats(64, 64), axes, actions, task);
+
+		final CancelingNetwork network = new CancelingNetwork(task, -1);
+		network.setTiledView(tiledView);
+		network.resetTileCount();
+		// canceled after the run was set up, before it was scheduled
+		network.cancel("early");
+
+		assertNull(network.call());
+		assertEquals("early", network.getCancelReason());
+		assertEquals(0, network.executed.get());
+
+		// the next run starts fresh
+		network.resetTileCount();
+		assertFalse(network.isCanceled());
+		assertNotNull(network.call());
+
+		network.dispose();
+		tiledView.dispose();
+	}
+
+	@Test(expected = CancellationException.class)
+	public void testCheckCanceled() {
+		final Task task = new DefaultTask();
+		CancellationHelper.checkCanceled(task);
+		task.cancel("test");
+		assertTrue(task.isCanceled());
+		CancellationHelper.checkCanceled(task);
+	}
+
+	private static class CancelingNetwork extends PseudoNetwork<FloatType> {
+
+		private final int cancelAfter;
+		final AtomicInteger executed = new AtomicInteger();
+
+		CancelingNetwork(final Task associatedTask, final int cancelAfter) {
+			super(associatedTask);
+			this.cancelAfter = cancelAfter;
+		}
+
+		@Override
+		public RandomAccessibleInterval<FloatType> execute(
+			final RandomAccessibleInterval<FloatType> tile) throws Exception
+		{
+			if (executed.incrementAndGet() == cancelAfter) cancel("test");
+			return super.execute(tile);
+		}
+	}
+
+}
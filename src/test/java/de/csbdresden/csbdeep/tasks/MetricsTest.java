@@ -0,0 +1,93 @@
+
+package de.csbdresden.csbdeep.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+import de.csbdresden.csbdeep.task.DefaultTask;
+import de.csbdresden.csbdeep.task.LatencyHistogram;
+import de.csbdresden.csbdeep.task.MetricsReport;
+import de.csbdresden.csbdeep.task.Task;
+import de.csbdresden.csbdeep.task.TaskMetrics;
+import de.csbdresden.csbdeep.tiling.AdvancedTiledView;
+import de.csbdresden.csbdeep.tiling.DefaultTiling;
+import de.csbdresden.csbdeep.tiling.Tiling;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+
+public class MetricsTest {
+
+	@Test
+	public void testHistogram() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i * 1000);
+		}
+		assertEquals(100, histogram.getCount());
+		assertEquals(100000, histogram.getMaxNanos());
+		assertEquals(50500, histogram.getMeanNanos());
+		final long median = histogram.getPercentileNanos(50);
+		// power-of-two buckets are at most a factor of two off
+		assertTrue(median >= 50000 && median <= 100000);
+		assertEquals(100000, histogram.getPercentileNanos(100));
+		long total = 0;
+		for (final long count : histogram.getBuckets()) {
+			total += count;
+		}
+		assertEquals(100, total);
+	}
+
+	@Test
+	public void testTaskMetrics() throws Exception {
+		final Task task = new DefaultTask();
+		task.setStarted();
+		Thread.sleep(5);
+		task.setFinished();
+		final TaskMetrics metrics = task.getMetrics();
+		assertEquals(1, metrics.getRuns());
+		assertTrue(metrics.getWallNanos() >= 5000000);
+		// stopping twice does not count twice
+		task.setFinished();
+		assertEquals(1, metrics.getRuns());
+	}
+
+	@Test
+	public void testNetworkLatencies() throws Exception {
+		final Tiling tiling = new DefaultTiling(4, 1, 8, 8);
+		final AxisType[] axes = { Axes.X, Axes.Y };
+		final Tiling.TilingAction[] actions = new Tiling.TilingAction[axes.length];
+		Arrays.fill(actions, Tiling.TilingAction.TILE_WITH_PADDING);
+		final Task task = new DefaultTask();
+		final AdvancedTiledView<FloatType> tiledView = tiling.preprocess(ArrayImgs
+			.floats(64, 64), axes, actions, task);
+
+		final PseudoNetwork<FloatType> network = new PseudoNetwork<>(task);
+		network.setTiledView(tiledView);
+		network.resetTileCount();
+		network.call();
+
+		final TaskMetrics metrics = task.getMetrics();
+		final long tiles = Intervals.numElements(tiledView);
+		assertEquals(tiles, metrics.getLatency("tile").getCount());
+		assertTrue(metrics.getBytesIn() > 0);
+
+		final Map<String, TaskMetrics> report = Collections.singletonMap("Network",
+			metrics);
+		final String json = MetricsReport.toJson(report, 1);
+		assertTrue(json.contains("\"name\": \"Network\""));
+		assertTrue(json.contains("\"tile\""));
+
+		network.dispose();
+		tiledView.dispose();
+	}
+
+}
@@ -0,0 +1,166 @@
+
+package de.csbdresden.csbdeep.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.csbdresden.csbdeep.io.N5Container;
+import de.csbdresden.csbdeep.task.DefaultTask;
+import de.csbdresden.csbdeep.tiling.AdvancedTiledView;
+import de.csbdresden.csbdeep.tiling.DefaultOutputSink;
+import de.csbdresden.csbdeep.tiling.DefaultTiling;
+import de.csbdresden.csbdeep.tiling.N5OutputSink;
+import de.csbdresden.csbdeep.tiling.OutputSink;
+import de.csbdresden.csbdeep.tiling.Tiling;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+public class OutputSinkTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testMergeTiles() {
+		testSink(tiledView -> new DefaultOutputSink<>(tiledView, new AxisType[] {
+			Axes.X, Axes.Y, Axes.Z }));
+	}
+
+	@Test
+	public void testN5Sink() throws IOException {
+		final N5Container container = new N5Container(folder.newFolder(
+			"result.n5"));
+		final ExecutorService pool = Executors.newFixedThreadPool(2);
+		try {
+			testSink(tiledView -> new N5OutputSink<>(tiledView, new AxisType[] {
+				Axes.X, Axes.Y, Axes.Z }, container, "result", pool));
+		}
+		finally {
+			pool.shutdown();
+		}
+		assertTrue(new File(container.getRoot(), "attributes.json").exists());
+		assertTrue(new File(container.getRoot(), "result/attributes.json")
+			.exists());
+		assertTrue(new File(container.getRoot(), "result/0/0/0").exists());
+	}
+
+	@Test
+	public void testN5RoundTrip() throws IOException {
+		final N5Container container = new N5Container(folder.newFolder(
+			"result.n5"));
+		// blocks of a previous run must not show up in the new result
+		container.createDataset("result", new long[] { 500, 500, 500 }, new int[] {
+			50, 50, 50 }, null);
+		container.writeBlock("result", new long[] { 9, 9, 9 }, new int[] { 1, 1,
+			1 }, new float[] { 1 });
+
+		final AdvancedTiledView<FloatType> tiledView = createTiledView();
+		final AxisType[] axes = { Axes.X, Axes.Y, Axes.Z };
+		final OutputSink<FloatType> memory = new DefaultOutputSink<>(tiledView,
+			axes);
+		final ExecutorService pool = Executors.newFixedThreadPool(2);
+		final N5OutputSink<FloatType> n5 = new N5OutputSink<>(tiledView, axes,
+			container, "result", pool);
+		final RandomAccessibleInterval<FloatType> written;
+		try {
+			writeTiles(memory, tiledView);
+			writeTiles(n5, tiledView);
+			written = n5.getResult();
+		}
+		finally {
+			pool.shutdown();
+		}
+		assertFalse(new File(container.getRoot(), "result/9/9/9").exists());
+
+		// open the container again, blocks are loaded when they are accessed
+		final long[] dimensions = Intervals.dimensionsAsLongArray(written);
+		final int[] blockSize = new int[dimensions.length];
+		((AbstractCellImg<?, ?, ?, ?>) written).getCellGrid().cellDimensions(
+			blockSize);
+		final Img<FloatType> read = N5OutputSink.open(new N5Container(container
+			.getRoot()), "result", dimensions, blockSize);
+		assertImageEquals(memory.getResult(), read);
+
+		tiledView.dispose();
+	}
+
+	private void testSink(
+		final Function<AdvancedTiledView<FloatType>, OutputSink<FloatType>> factory)
+	{
+		final AdvancedTiledView<FloatType> tiledView = createTiledView();
+		final OutputSink<FloatType> sink = factory.apply(tiledView);
+		writeTiles(sink, tiledView);
+		assertImageEquals(createInput(), sink.getResult());
+		tiledView.dispose();
+	}
+
+	private static Img<FloatType> createInput() {
+		final Img<FloatType> input = ArrayImgs.floats(50, 100, 10);
+		final Cursor<FloatType> cursor = input.localizingCursor();
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			cursor.get().setReal(cursor.getLongPosition(0) + 100 * cursor
+				.getLongPosition(1) + 10000 * cursor.getLongPosition(2));
+		}
+		return input;
+	}
+
+	private static AdvancedTiledView<FloatType> createTiledView() {
+		final AxisType[] axes = { Axes.X, Axes.Y, Axes.Z };
+		final Tiling tiling = new DefaultTiling(8, 1, 16, 8);
+		final Tiling.TilingAction[] actions = new Tiling.TilingAction[axes.length];
+		Arrays.fill(actions, Tiling.TilingAction.TILE_WITH_PADDING);
+		return tiling.preprocess(createInput(), axes, actions, new DefaultTask());
+	}
+
+	private static void writeTiles(final OutputSink<FloatType> sink,
+		final AdvancedTiledView<FloatType> tiledView)
+	{
+		final Cursor<RandomAccessibleInterval<FloatType>> tiles = Views.iterable(
+			tiledView).cursor();
+		long index = 0;
+		while (tiles.hasNext()) {
+			sink.write(index++, tiles.next());
+		}
+	}
+
+	private static void assertImageEquals(
+		final RandomAccessibleInterval<FloatType> expected,
+		final RandomAccessibleInterval<FloatType> actual)
+	{
+		for (int i = 0; i < expected.numDimensions(); i++) {
+			assertEquals(expected.dimension(i), actual.dimension(i));
+		}
+		final RandomAccess<FloatType> ra = actual.randomAccess();
+		final Cursor<FloatType> cursor = Views.iterable(expected)
+			.localizingCursor();
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			ra.setPosition(cursor);
+			assertEquals(cursor.get().getRealFloat(), ra.get().getRealFloat(),
+				0);
+		}
+	}
+
+}
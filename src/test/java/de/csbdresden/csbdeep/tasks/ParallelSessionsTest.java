@@ -0,0 +1,137 @@
+
+package de.csbdresden.csbdeep.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.scijava.Context;
+
+import de.csbdresden.csbdeep.task.DefaultTask;
+import de.csbdresden.csbdeep.task.Task;
+import de.csbdresden.csbdeep.thread.PoolService;
+import de.csbdresden.csbdeep.tiling.AdvancedTiledView;
+import de.csbdresden.csbdeep.tiling.DefaultTiling;
+import de.csbdresden.csbdeep.tiling.Tiling;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+public class ParallelSessionsTest {
+
+	@Test
+	public void testResultsInOrder() throws Exception {
+
+		final Tiling tiling = new DefaultTiling(16, 1, 8, 8);
+		final AxisType[] axes = { Axes.X, Axes.Y };
+		final Tiling.TilingAction[] actions = new Tiling.TilingAction[axes.length];
+		Arrays.fill(actions, Tiling.TilingAction.TILE_WITH_PADDING);
+		final Task task = new DefaultTask();
+		final Img<FloatType> input = ArrayImgs.floats(64, 64);
+		final Cursor<FloatType> inputCursor = input.cursor();
+		int i = 0;
+		while (inputCursor.hasNext()) {
+			inputCursor.next().setReal(i++);
+		}
+		final AdvancedTiledView<FloatType> tiledView = tiling.preprocess(input,
+			axes, actions, task);
+
+		final ParallelNetwork network = new ParallelNetwork(task, 4);
+		network.setTiledView(tiledView);
+		network.resetTileCount();
+
+		final List<RandomAccessibleInterval<FloatType>> results = network.call();
+
+		final List<Float> expected = new ArrayList<>();
+		final Cursor<RandomAccessibleInterval<FloatType>> cursor = Views.iterable(
+			tiledView).cursor();
+		while (cursor.hasNext()) {
+			expected.add(firstValue(cursor.next()));
+		}
+		final List<Float> actual = new ArrayList<>();
+		for (final RandomAccessibleInterval<FloatType> result : results) {
+			actual.add(firstValue(result));
+		}
+		assertEquals(expected, actual);
+		assertTrue(network.maxConcurrent.get() > 1);
+
+		network.dispose();
+		tiledView.dispose();
+	}
+
+	@Test
+	public void testSessionPoolIsRestored() throws Exception {
+
+		final Context context = new Context(PoolService.class);
+		final PoolService poolService = context.service(PoolService.class);
+		final Tiling tiling = new DefaultTiling(16, 1, 8, 8);
+		final AxisType[] axes = { Axes.X, Axes.Y };
+		final Tiling.TilingAction[] actions = new Tiling.TilingAction[axes.length];
+		Arrays.fill(actions, Tiling.TilingAction.TILE_WITH_PADDING);
+		final Task task = new DefaultTask();
+		final AdvancedTiledView<FloatType> tiledView = tiling.preprocess(ArrayImgs
+			.floats(64, 64), axes, actions, task);
+
+		final int sizeBefore = poolService.getPoolSize(PoolService.Pool.SESSION);
+		final ParallelNetwork network = new ParallelNetwork(task, sizeBefore + 3);
+		network.setPoolService(poolService);
+		network.setTiledView(tiledView);
+		network.resetTileCount();
+		network.call();
+
+		// the pool only grows while the network runs
+		assertTrue(network.maxConcurrent.get() > sizeBefore);
+		assertEquals(sizeBefore, poolService.getPoolSize(
+			PoolService.Pool.SESSION));
+
+		network.dispose();
+		tiledView.dispose();
+		context.dispose();
+	}
+
+	private static float firstValue(final RandomAccessibleInterval<FloatType> img) {
+		return Views.iterable(img).firstElement().get();
+	}
+
+	private static class ParallelNetwork extends PseudoNetwork<FloatType> {
+
+		private final int parallelism;
+		private final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxConcurrent = new AtomicInteger();
+
+		ParallelNetwork(final Task associatedTask, final int parallelism) {
+			super(associatedTask);
+			this.parallelism = parallelism;
+		}
+
+		@Override
+		protected int getParallelism() {
+			return parallelism;
+		}
+
+		@Override
+		public RandomAccessibleInterval<FloatType> execute(
+			final RandomAccessibleInterval<FloatType> tile) throws Exception
+		{
+			final int now = running.incrementAndGet();
+			maxConcurrent.accumulateAndGet(now, Math::max);
+			// finish tiles out of order
+			Thread.sleep((long) (Math.random() * 20));
+			running.decrementAndGet();
+			final Img<FloatType> result = ArrayImgs.floats(1);
+			result.firstElement().set(firstValue(tile));
+			return result;
+		}
+	}
+
+}
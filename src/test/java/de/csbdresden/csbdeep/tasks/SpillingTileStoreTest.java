@@ -0,0 +1,101 @@
+
+package de.csbdresden.csbdeep.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.csbdresden.csbdeep.tiling.SpillingTileStore;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+public class SpillingTileStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSpillTiles() {
+		final SpillingTileStore<FloatType> store = new SpillingTileStore<>(folder
+			.getRoot(), 0);
+		final Img<FloatType> tile = ArrayImgs.floats(20, 10);
+		final Cursor<FloatType> cursor = tile.localizingCursor();
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			cursor.get().setReal(cursor.getLongPosition(0) + 100 * cursor
+				.getLongPosition(1));
+		}
+		final RandomAccessibleInterval<FloatType> translated = Views.translate(
+			tile, 5, 7);
+		store.add(translated);
+
+		assertEquals(1, store.getSpilledTiles());
+		assertEquals(20 * 10 * Float.BYTES, store.getSpilledBytes());
+		final RandomAccessibleInterval<FloatType> spilled = store.get(0);
+		assertNotSame(translated, spilled);
+		assertEquals(5, spilled.min(0));
+		assertEquals(7, spilled.min(1));
+		final RandomAccess<FloatType> ra = spilled.randomAccess();
+		final Cursor<FloatType> expected = Views.iterable(translated)
+			.localizingCursor();
+		while (expected.hasNext()) {
+			expected.fwd();
+			ra.setPosition(expected);
+			assertEquals(expected.get().get(), ra.get().get(), 0);
+		}
+	}
+
+	@Test
+	public void testKeepOtherTypesAndBelowThreshold() {
+		final SpillingTileStore<IntType> ints = new SpillingTileStore<>(folder
+			.getRoot(), 0);
+		final Img<IntType> intTile = ArrayImgs.ints(4, 4);
+		ints.add(intTile);
+		assertSame(intTile, ints.get(0));
+
+		final SpillingTileStore<FloatType> floats = new SpillingTileStore<>(folder
+			.getRoot(), Double.MAX_VALUE);
+		final Img<FloatType> floatTile = ArrayImgs.floats(4, 4);
+		floats.add(floatTile);
+		assertSame(floatTile, floats.get(0));
+		assertEquals(0, floats.getSpilledTiles());
+	}
+
+	@Test
+	public void testScratchFilesAreReleased() throws InterruptedException {
+		final File directory = folder.getRoot();
+		final SpillingTileStore<FloatType> store = new SpillingTileStore<>(
+			directory, 0);
+		store.add(ArrayImgs.floats(20, 10));
+		// the file of a mapped tile is kept
+		assertEquals(1, countScratchFiles(directory));
+		store.clear();
+
+		// files of collected tiles are deleted or reused
+		for (int i = 0; i < 20; i++) {
+			System.gc();
+			Thread.sleep(10);
+			new SpillingTileStore<FloatType>(directory, 0).add(ArrayImgs.floats(20,
+				10));
+		}
+		assertTrue(countScratchFiles(directory) < 20);
+	}
+
+	private static int countScratchFiles(final File directory) {
+		return directory.list((dir, name) -> name.endsWith(".raw")).length;
+	}
+
+}
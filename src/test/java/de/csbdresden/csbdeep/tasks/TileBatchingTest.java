@@ -0,0 +1,76 @@
+
+package de.csbdresden.csbdeep.tasks;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.csbdresden.csbdeep.CSBDeepTest;
+import de.csbdresden.csbdeep.task.DefaultTask;
+import de.csbdresden.csbdeep.task.Task;
+import de.csbdresden.csbdeep.tiling.AdvancedTiledView;
+import de.csbdresden.csbdeep.tiling.DefaultTiling;
+import de.csbdresden.csbdeep.tiling.Tiling;
+import net.imagej.Dataset;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.real.FloatType;
+
+public class TileBatchingTest extends CSBDeepTest {
+
+	@Test
+	public void testTileBatching() throws Exception {
+
+		final Tiling tiling = new DefaultTiling(8, 1, 32, 32);
+		final long[] datasetSize = { 10, 50, 100 };
+		final AxisType[] axes = { Axes.Z, Axes.X, Axes.Y };
+		Tiling.TilingAction[] actions = new Tiling.TilingAction[axes.length];
+		Arrays.fill(actions, Tiling.TilingAction.TILE_WITH_PADDING);
+		final Task task = new DefaultTask();
+
+		launchImageJ();
+
+		final Dataset dataset = ij.dataset().create(new FloatType(), datasetSize,
+			"", axes);
+		final RandomAccessibleInterval<FloatType> input =
+			(RandomAccessibleInterval<FloatType>) dataset.getImgPlus();
+		final AdvancedTiledView<FloatType> tiledView = tiling.preprocess(input,
+			axes, actions, task);
+
+		final BatchCountingNetwork network = new BatchCountingNetwork(task);
+		network.setTiledView(tiledView);
+		network.setTileBatchSize(3);
+		network.resetTileCount();
+
+		final List<RandomAccessibleInterval<FloatType>> results = network.call();
+
+		// 8 tiles of equal size in batches of 3
+		assertEquals(8, results.size());
+		assertEquals(Arrays.asList(3, 3, 2), network.batchSizes);
+
+		tiledView.dispose();
+	}
+
+	private static class BatchCountingNetwork extends PseudoNetwork<FloatType> {
+
+		final List<Integer> batchSizes = new ArrayList<>();
+
+		BatchCountingNetwork(final Task associatedTask) {
+			super(associatedTask);
+		}
+
+		@Override
+		public List<RandomAccessibleInterval<FloatType>> executeBatch(
+			final List<RandomAccessibleInterval<FloatType>> tiles) throws Exception
+		{
+			batchSizes.add(tiles.size());
+			return super.executeBatch(tiles);
+		}
+	}
+
+}
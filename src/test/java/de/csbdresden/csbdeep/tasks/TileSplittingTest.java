@@ -0,0 +1,252 @@
+
+package de.csbdresden.csbdeep.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+
+import de.csbdresden.csbdeep.network.model.ImageTensor;
+import de.csbdresden.csbdeep.task.DefaultTask;
+import de.csbdresden.csbdeep.task.Task;
+import de.csbdresden.csbdeep.tiling.AdvancedTiledView;
+import de.csbdresden.csbdeep.tiling.DefaultOutputSink;
+import de.csbdresden.csbdeep.tiling.DefaultTiling;
+import de.csbdresden.csbdeep.tiling.Tiling;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.loops.LoopBuilder;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+public class TileSplittingTest {
+
+	@Test
+	public void testSplitTileAfterOOM() throws Exception {
+
+		final AxisType[] axes = { Axes.X, Axes.Y };
+		final Img<FloatType> input = ArrayImgs.floats(64, 128);
+		final Cursor<FloatType> cursor = input.localizingCursor();
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			cursor.get().setReal(cursor.getLongPosition(0) + 1000 * cursor
+				.getLongPosition(1));
+		}
+
+		final Tiling tiling = new DefaultTiling(1, 1, 16, 16);
+		final Tiling.TilingAction[] actions = new Tiling.TilingAction[axes.length];
+		Arrays.fill(actions, Tiling.TilingAction.TILE_WITH_PADDING);
+		final Task task = new DefaultTask();
+		final AdvancedTiledView<FloatType> tiledView = tiling.preprocess(input,
+			axes, actions, task);
+
+		final LimitedNetwork network = new LimitedNetwork(task, axes, 64);
+		network.setTiledView(tiledView);
+		network.resetTileCount();
+
+		final List<RandomAccessibleInterval<FloatType>> results = network.call();
+
+		assertEquals(1, results.size());
+		final RandomAccessibleInterval<FloatType> result = results.get(0);
+		assertEquals(64, result.dimension(0));
+		assertEquals(128, result.dimension(1));
+		assertTrue(network.executions > 2);
+
+		final RandomAccess<FloatType> ra = result.randomAccess();
+		final Cursor<FloatType> inputCursor = Views.iterable(input)
+			.localizingCursor();
+		while (inputCursor.hasNext()) {
+			inputCursor.fwd();
+			ra.setPosition(inputCursor);
+			assertEquals(inputCursor.get().getRealFloat(), ra.get().getRealFloat(),
+				0);
+		}
+
+		tiledView.dispose();
+	}
+
+	@Test
+	public void testSubTileResultsAreRecycled() throws Exception {
+
+		final AxisType[] axes = { Axes.X, Axes.Y };
+		final Img<FloatType> input = ArrayImgs.floats(64, 128);
+		final Tiling tiling = new DefaultTiling(1, 1, 16, 16);
+		final Tiling.TilingAction[] actions = new Tiling.TilingAction[axes.length];
+		Arrays.fill(actions, Tiling.TilingAction.TILE_WITH_PADDING);
+		final Task task = new DefaultTask();
+		final AdvancedTiledView<FloatType> tiledView = tiling.preprocess(input,
+			axes, actions, task);
+
+		final RecyclingNetwork network = new RecyclingNetwork(task, axes, 64);
+		network.setTiledView(tiledView);
+		network.setOutputSink(new DefaultOutputSink<>(tiledView, axes));
+		network.resetTileCount();
+		network.call();
+
+		// the stitched result is written to the sink, the results of all
+		// sub-tiles it was stitched from are recycled afterwards
+		assertTrue(network.outputs.size() > 1);
+		assertEquals(network.outputs.size(), network.recycled.size());
+		for (final RandomAccessibleInterval<FloatType> output : network.outputs) {
+			assertTrue(network.recycled.contains(output));
+		}
+
+		network.dispose();
+		tiledView.dispose();
+	}
+
+	@Test
+	public void testChangedSubTileSizeIsNotOutOfMemory() throws Exception {
+
+		final AxisType[] axes = { Axes.X, Axes.Y };
+		final Img<FloatType> input = ArrayImgs.floats(64, 128);
+		final Tiling tiling = new DefaultTiling(1, 1, 16, 16);
+		final Tiling.TilingAction[] actions = new Tiling.TilingAction[axes.length];
+		Arrays.fill(actions, Tiling.TilingAction.TILE_WITH_PADDING);
+		final Task task = new DefaultTask();
+		final AdvancedTiledView<FloatType> tiledView = tiling.preprocess(input,
+			axes, actions, task);
+
+		final ShrinkingNetwork network = new ShrinkingNetwork(task, axes, 64);
+		network.setTiledView(tiledView);
+		network.resetTileCount();
+
+		// retrying with more tiles would not help, so this must not be reported
+		// as running out of memory
+		try {
+			network.call();
+			fail("Sub-tiles of changed size must not be stitched");
+		}
+		catch (final ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+
+		tiledView.dispose();
+	}
+
+	/**
+	 * Returns the input tile, fails like TensorFlow does for tiles which are
+	 * too large.
+	 */
+	private static class LimitedNetwork extends PseudoNetwork<FloatType> {
+
+		private final long maxSize;
+		int executions = 0;
+
+		LimitedNetwork(final Task associatedTask, final AxisType[] axes,
+			final long maxSize)
+		{
+			super(associatedTask);
+			this.maxSize = maxSize;
+			inputNode = new FixedAxesTensor(axes);
+			outputNode = new FixedAxesTensor(axes);
+		}
+
+		@Override
+		public RandomAccessibleInterval<FloatType> execute(
+			final RandomAccessibleInterval<FloatType> tile) throws Exception
+		{
+			executions++;
+			for (int i = 0; i < tile.numDimensions(); i++) {
+				if (tile.dimension(i) > maxSize) {
+					throw new IllegalStateException("OOM when allocating tensor");
+				}
+			}
+			return tile;
+		}
+	}
+
+	/**
+	 * Returns copies of the input tiles and records which of them are recycled.
+	 */
+	private static class RecyclingNetwork extends LimitedNetwork {
+
+		final Set<RandomAccessibleInterval<FloatType>> outputs = Collections
+			.newSetFromMap(new IdentityHashMap<>());
+		final Set<RandomAccessibleInterval<FloatType>> recycled = Collections
+			.newSetFromMap(new IdentityHashMap<>());
+
+		RecyclingNetwork(final Task associatedTask, final AxisType[] axes,
+			final long maxSize)
+		{
+			super(associatedTask, axes, maxSize);
+		}
+
+		@Override
+		public RandomAccessibleInterval<FloatType> execute(
+			final RandomAccessibleInterval<FloatType> tile) throws Exception
+		{
+			super.execute(tile);
+			final Img<FloatType> res = ArrayImgs.floats(Intervals
+				.dimensionsAsLongArray(tile));
+			LoopBuilder.setImages(Views.zeroMin(tile), res).forEachPixel((in,
+				out) -> out.set(in));
+			final RandomAccessibleInterval<FloatType> output = Views.translate(res,
+				Intervals.minAsLongArray(tile));
+			synchronized (outputs) {
+				outputs.add(output);
+			}
+			return output;
+		}
+
+		@Override
+		protected void recycle(final RandomAccessibleInterval<FloatType> result) {
+			synchronized (recycled) {
+				recycled.add(result);
+			}
+		}
+	}
+
+	/**
+	 * Crops the last pixel in every dimension of the tiles it can process.
+	 */
+	private static class ShrinkingNetwork extends LimitedNetwork {
+
+		ShrinkingNetwork(final Task associatedTask, final AxisType[] axes,
+			final long maxSize)
+		{
+			super(associatedTask, axes, maxSize);
+		}
+
+		@Override
+		public RandomAccessibleInterval<FloatType> execute(
+			final RandomAccessibleInterval<FloatType> tile) throws Exception
+		{
+			super.execute(tile);
+			final long[] max = Intervals.maxAsLongArray(tile);
+			for (int i = 0; i < max.length; i++) {
+				max[i]--;
+			}
+			return Views.interval(tile, Intervals.minAsLongArray(tile), max);
+		}
+	}
+
+	private static class FixedAxesTensor extends ImageTensor {
+
+		private final AxisType[] axes;
+
+		FixedAxesTensor(final AxisType[] axes) {
+			this.axes = axes;
+		}
+
+		@Override
+		public AxisType[] getFinalAxesArray() {
+			return axes;
+		}
+	}
+
+}
@@ -0,0 +1,151 @@
+
+package de.csbdresden.csbdeep.tasks;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import de.csbdresden.csbdeep.task.DefaultTask;
+import de.csbdresden.csbdeep.tiling.AdvancedTiledView;
+import de.csbdresden.csbdeep.tiling.DefaultTiling;
+import de.csbdresden.csbdeep.tiling.Tiling;
+import de.csbdresden.csbdeep.tiling.TilingPlanner;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.type.numeric.real.FloatType;
+
+public class TilingPlannerTest {
+
+	@Test
+	public void testComputeTileSize() {
+
+		final AxisType[] axes = { Axes.Z, Axes.X, Axes.Y };
+		final Img<FloatType> input = ArrayImgs.floats(10, 50, 100);
+		final Tiling.TilingAction[] actions = new Tiling.TilingAction[axes.length];
+		Arrays.fill(actions, Tiling.TilingAction.TILE_WITH_PADDING);
+
+		final AdvancedTiledView<FloatType> tiledView = new DefaultTiling<FloatType>(
+			8, 1, 32, 32).preprocess(input, axes, actions, new DefaultTask());
+		final long[] expected = new long[axes.length];
+		for (int i = 0; i < expected.length; i++) {
+			expected[i] = tiledView.getBlockSize()[i] + 2 * tiledView
+				.getOverlap()[i];
+		}
+
+		final long[] tileSize = new DefaultTiling<FloatType>(8, 1, 32, 32)
+			.computeTileSize(input, actions);
+
+		assertArrayEquals(expected, tileSize);
+
+		tiledView.dispose();
+	}
+
+	@Test
+	public void testEstimateShrinksWithTiles() {
+
+		final Img<FloatType> input = ArrayImgs.floats(10, 500, 1000);
+		final Tiling.TilingAction[] actions = new Tiling.TilingAction[3];
+		Arrays.fill(actions, Tiling.TilingAction.TILE_WITH_PADDING);
+
+		final long[] oneTile = new DefaultTiling<FloatType>(1, 1, 32, 32)
+			.computeTileSize(input, actions);
+		final long[] manyTiles = new DefaultTiling<FloatType>(16, 1, 32, 32)
+			.computeTileSize(input, actions);
+
+		assertTrue(TilingPlanner.estimateBytes(manyTiles, actions, 1, 4,
+			4) < TilingPlanner.estimateBytes(oneTile, actions, 1, 4, 4));
+	}
+
+	@Test
+	public void testNetworkMemoryBudget() {
+
+		final Img<FloatType> input = ArrayImgs.floats(10, 200, 400);
+		final Tiling.TilingAction[] actions = new Tiling.TilingAction[3];
+		Arrays.fill(actions, Tiling.TilingAction.TILE_WITH_PADDING);
+
+		// the activations are allocated by TensorFlow, not on the heap
+		final TilingPlanner unlimited = new TilingPlanner(1, 1, 1, 32, 32);
+		unlimited.setNetworkMemory(1L << 40);
+		assertTrue(unlimited.plan(input, actions, 1, 4, 4, new DefaultTask()));
+		assertEquals(1, unlimited.getTilesNum());
+
+		final TilingPlanner limited = new TilingPlanner(1, 1, 1, 32, 32);
+		limited.setNetworkMemory(256L * 1024 * 1024);
+		assertTrue(limited.plan(input, actions, 1, 4, 4, new DefaultTask()));
+		assertTrue(limited.getTilesNum() > 1);
+		assertTrue(limited.getEstimatedNetworkBytes() <= 256L * 1024 * 1024);
+
+		final TilingPlanner smallNetwork = new TilingPlanner(1, 1, 1, 32, 32);
+		smallNetwork.setNetworkMemory(256L * 1024 * 1024);
+		smallNetwork.setActivationsPerVoxel(1);
+		assertTrue(smallNetwork.plan(input, actions, 1, 4, 4,
+			new DefaultTask()));
+		assertTrue(smallNetwork.getTilesNum() < limited.getTilesNum());
+	}
+
+	@Test
+	public void testFewerTilesThanConfigured() {
+
+		final Img<FloatType> input = ArrayImgs.floats(10, 200, 400);
+		final Tiling.TilingAction[] actions = new Tiling.TilingAction[3];
+		Arrays.fill(actions, Tiling.TilingAction.TILE_WITH_PADDING);
+
+		final TilingPlanner planner = new TilingPlanner(16, 1, 1, 32, 32);
+		planner.setNetworkMemory(1L << 40);
+		assertTrue(planner.plan(input, actions, 1, 4, 4, new DefaultTask()));
+		assertEquals(1, planner.getTilesNum());
+	}
+
+	@Test
+	public void testLargerBatch() {
+
+		final Img<FloatType> input = ArrayImgs.floats(64, 64, 10);
+		final Tiling.TilingAction[] actions = {
+			Tiling.TilingAction.TILE_WITH_PADDING,
+			Tiling.TilingAction.TILE_WITH_PADDING,
+			Tiling.TilingAction.TILE_WITHOUT_PADDING };
+
+		final TilingPlanner planner = new TilingPlanner(1, 1, 1, 32, 32);
+		planner.setNetworkMemory(1L << 40);
+		assertTrue(planner.plan(input, actions, 1, 4, 4, new DefaultTask()));
+		assertEquals(1, planner.getTilesNum());
+		// the batch size is adjusted to the size of the batch dimension
+		assertEquals(10, planner.getBatchSize());
+	}
+
+	@Test
+	public void testTilesOfTheRun() {
+
+		final AxisType[] axes = { Axes.Z, Axes.X, Axes.Y };
+		final Img<FloatType> input = new CellImgFactory<>(new FloatType(), 48)
+			.create(10, 200, 400);
+		final Tiling.TilingAction[] actions = new Tiling.TilingAction[3];
+		Arrays.fill(actions, Tiling.TilingAction.TILE_WITH_PADDING);
+
+		final TilingPlanner planner = new TilingPlanner(1, 1, 1, 32, 32);
+		planner.setNetworkMemory(64L * 1024 * 1024);
+		assertTrue(planner.plan(input, actions, 1, 4, 4, new DefaultTask()));
+		assertTrue(planner.getTilesNum() > 1);
+
+		// the planned tiles are aligned to the cells like the tiles of the run
+		final AdvancedTiledView<FloatType> tiledView = new DefaultTiling<FloatType>(
+			planner.getTilesNum(), planner.getBatchSize(), 32, 32).preprocess(input,
+				axes, actions, new DefaultTask());
+		final long[] expected = new long[axes.length];
+		for (int i = 0; i < expected.length; i++) {
+			expected[i] = tiledView.getBlockSize()[i] + 2 * tiledView
+				.getOverlap()[i];
+		}
+		assertArrayEquals(expected, planner.getTileSize());
+
+		tiledView.dispose();
+	}
+
+}
@@ -0,0 +1,60 @@
+
+package de.csbdresden.csbdeep.tasks;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+import de.csbdresden.csbdeep.network.DefaultModelLoader;
+import de.csbdresden.csbdeep.network.model.Network;
+import de.csbdresden.csbdeep.task.DefaultTask;
+import de.csbdresden.csbdeep.tiling.DefaultTiling;
+import de.csbdresden.csbdeep.tiling.TilingPlanner;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.type.numeric.real.FloatType;
+
+public class WarmUpTest {
+
+	@Test
+	public void testWarmUpShape() {
+		final PseudoNetwork<FloatType> network = new PseudoNetwork<>(
+			new DefaultTask());
+		network.loadInputNode(null);
+		network.getInputNode().initialize(new long[] { 100, 60, 2 },
+			new AxisType[] { Axes.X, Axes.Y, Axes.CHANNEL });
+		network.getInputNode().setNodeShape(new long[] { -1, -1, -1, 2 });
+		network.initMapping();
+
+		final TestModelLoader loader = new TestModelLoader();
+		loader.setWarmUp(true, tiling(8, 0), 4, 1, 1);
+		assertArrayEquals(new long[] { 1, 32, 56, 2 }, loader.getWarmUpShape(
+			network));
+
+		// a single tile is not padded
+		loader.setWarmUp(true, tiling(16, 4), 1, 1, 1);
+		assertArrayEquals(new long[] { 1, 64, 112, 2 }, loader.getWarmUpShape(
+			network));
+
+		// tiles of one network run are stacked along the batch dimension
+		loader.setWarmUp(true, tiling(8, 4), 4, 1, 3);
+		assertArrayEquals(new long[] { 3, 40, 64, 2 }, loader.getWarmUpShape(
+			network));
+	}
+
+	private static TilingPlanner.TilingFactory tiling(final int blockMultiple,
+		final int overlap)
+	{
+		return (tiles, batch) -> new DefaultTiling<FloatType>(tiles, batch,
+			blockMultiple, overlap);
+	}
+
+	private static class TestModelLoader extends DefaultModelLoader {
+
+		@Override
+		protected long[] getWarmUpShape(final Network network) {
+			return super.getWarmUpShape(network);
+		}
+	}
+
+}
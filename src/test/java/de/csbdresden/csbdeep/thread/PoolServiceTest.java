@@ -0,0 +1,82 @@
+package de.csbdresden.csbdeep.thread;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ExecutorService;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+
+public class PoolServiceTest {
+
+	private Context context;
+	private PoolService poolService;
+
+	@Before
+	public void setUp() {
+		context = new Context(PoolService.class);
+		poolService = context.service(PoolService.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testSizing() {
+		final PoolService.Pool pool = PoolService.Pool.SESSION;
+		assertEquals(1, poolService.getPoolSize(pool));
+		final PoolService.Reservation large = poolService.reserve(pool, 4);
+		final PoolService.Reservation small = poolService.reserve(pool, 2);
+		assertEquals(4, poolService.getPoolSize(pool));
+		large.close();
+		assertEquals(2, poolService.getPoolSize(pool));
+		// closing twice does not release another reservation
+		large.close();
+		assertEquals(2, poolService.getPoolSize(pool));
+		small.close();
+		assertEquals(1, poolService.getPoolSize(pool));
+
+		poolService.setPoolSize(pool, 3);
+		try (PoolService.Reservation reservation = poolService.reserve(pool, 2)) {
+			assertEquals(3, poolService.getPoolSize(pool));
+		}
+		assertEquals(3, poolService.getPoolSize(pool));
+	}
+
+	@Test
+	public void testNaming() throws Exception {
+		final String name = poolService.getPool(PoolService.Pool.COMPUTE).submit(
+			() -> Thread.currentThread().getName()).get();
+		assertTrue(name, name.startsWith("csbdeep-compute-"));
+	}
+
+	@Test
+	public void testBorrowerCannotShutDown() throws Exception {
+		final ExecutorService pool = poolService.getPool(
+			PoolService.Pool.COMMAND);
+		try {
+			pool.shutdown();
+			fail("Shared pool was shut down");
+		}
+		catch (final UnsupportedOperationException e) {
+			// expected
+		}
+		try {
+			pool.shutdownNow();
+			fail("Shared pool was shut down");
+		}
+		catch (final UnsupportedOperationException e) {
+			// expected
+		}
+		assertFalse(pool.isShutdown());
+		assertEquals(42, (int) pool.submit(() -> 42).get());
+	}
+
+}